@@ -2,8 +2,6 @@ package com.github.kjarosh.agh.pp;
 
 import com.github.kjarosh.agh.pp.cli.Cmd;
 import com.github.kjarosh.agh.pp.cli.utils.LogbackUtils;
-import com.github.kjarosh.agh.pp.graph.GraphLoader;
-import com.github.kjarosh.agh.pp.graph.model.Graph;
 import com.github.kjarosh.agh.pp.rest.client.ZoneClient;
 import com.github.kjarosh.agh.pp.test.RemoteGraphBuilder;
 import com.github.kjarosh.agh.pp.test.Tester;
@@ -68,9 +66,8 @@ public class Main {
                 String graphPath = args[2];
                 log.info("Loading graph {} into zone {}", graphPath, zone);
 
-                Graph graph = GraphLoader.loadGraph(graphPath);
-                ZoneClient client = new ZoneClient();
-                new RemoteGraphBuilder(graph, client).build(client);
+                ZoneClient client = ZoneClient.getInstance();
+                RemoteGraphBuilder.fromFile(graphPath, client).build(client);
 
                 log.info("Graph loaded");
                 break;
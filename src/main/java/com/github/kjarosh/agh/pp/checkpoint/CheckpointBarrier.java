@@ -0,0 +1,73 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Separates modifications of the local graph and index from checkpoints.
+ * Each modification, together with posting events it causes, is performed
+ * in a shared section, while the state of the zone is captured
+ * in an exclusive section, so that it is consistent.
+ * <p>
+ * Shared sections only count themselves while no exclusive section
+ * is pending, and fall back to a read lock otherwise, so that they
+ * are cheap when no checkpoint is being taken. An exclusive section
+ * waits for the counted shared sections to finish.
+ * <p>
+ * Shared sections must not wait for other zones, as checkpoints
+ * of different zones could then block each other, and must not be nested.
+ *
+ * @author Kamil Jarosz
+ */
+@Service
+@Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class CheckpointBarrier {
+    private static final long DRAIN_PAUSE_NANOS = 50_000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean pending = false;
+
+    public void shared(Runnable runnable) {
+        if (!pending) {
+            active.incrementAndGet();
+            try {
+                // checked again, as the exclusive section
+                // may have missed the increment
+                if (!pending) {
+                    runnable.run();
+                    return;
+                }
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        lock.readLock().lock();
+        try {
+            runnable.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public <T> T exclusive(Supplier<T> supplier) {
+        lock.writeLock().lock();
+        try {
+            pending = true;
+            while (active.get() > 0) {
+                LockSupport.parkNanos(DRAIN_PAUSE_NANOS);
+            }
+            return supplier.get();
+        } finally {
+            pending = false;
+            lock.writeLock().unlock();
+        }
+    }
+}
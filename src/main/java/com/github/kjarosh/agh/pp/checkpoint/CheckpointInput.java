@@ -0,0 +1,101 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads values written by {@link CheckpointOutput}.
+ *
+ * @author Kamil Jarosz
+ */
+public class CheckpointInput extends DataInputStream {
+    private static final EventType[] eventTypes = EventType.values();
+
+    private final List<VertexId> ids = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>();
+
+    public CheckpointInput(InputStream in) {
+        super(in);
+    }
+
+    public int readVarInt() throws IOException {
+        long value = readVarLong();
+        if (value >>> Integer.SIZE != 0) {
+            throw new IOException("Invalid varint: " + value);
+        }
+        return (int) value;
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    public String readNullableString() throws IOException {
+        return readBoolean() ? readUTF() : null;
+    }
+
+    public String readSharedString() throws IOException {
+        int index = readVarInt();
+        if (index == 0) {
+            return null;
+        } else if (index == 1) {
+            String value = readUTF();
+            strings.add(value);
+            return value;
+        }
+
+        if (index - 2 >= strings.size()) {
+            throw new IOException("Unknown string reference: " + index);
+        }
+        return strings.get(index - 2);
+    }
+
+    public VertexId readVertexId() throws IOException {
+        int index = readVarInt();
+        if (index == 0) {
+            VertexId id = VertexId.of(readUTF());
+            ids.add(id);
+            return id;
+        }
+
+        if (index > ids.size()) {
+            throw new IOException("Unknown vertex id reference: " + index);
+        }
+        return ids.get(index - 1);
+    }
+
+    public Permissions readPermissions() throws IOException {
+        return Permissions.fromMask(readVarLong());
+    }
+
+    public Event readEvent() throws IOException {
+        EventType type = eventTypes[readVarInt()];
+        String trace = readNullableString();
+        VertexId sender = readVertexId();
+        VertexId originalSender = readVertexId();
+        int count = readVarInt();
+        Set<VertexId> effectiveVertices = new HashSet<>();
+        for (int i = 0; i < count; ++i) {
+            effectiveVertices.add(readVertexId());
+        }
+        return new Event(type, trace, sender, originalSender, effectiveVertices);
+    }
+}
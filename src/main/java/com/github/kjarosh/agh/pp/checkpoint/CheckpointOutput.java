@@ -0,0 +1,94 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes values in the compact binary format of checkpoints.
+ * Numbers are written as variable-length integers and vertex ids
+ * are written only once, subsequent occurrences refer to them by
+ * the order of their first occurrence.
+ *
+ * @author Kamil Jarosz
+ * @see CheckpointInput
+ */
+public class CheckpointOutput extends DataOutputStream {
+    private final Map<VertexId, Integer> ids = new HashMap<>();
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    public CheckpointOutput(OutputStream out) {
+        super(out);
+    }
+
+    public void writeVarInt(int value) throws IOException {
+        writeVarLong(Integer.toUnsignedLong(value));
+    }
+
+    public void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    public void writeNullableString(String value) throws IOException {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeUTF(value);
+        }
+    }
+
+    /**
+     * Writes a nullable string which is likely to be repeated,
+     * in the same way as vertex ids.
+     */
+    public void writeSharedString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarInt(index + 2);
+        } else {
+            writeVarInt(1);
+            writeUTF(value);
+            strings.put(value, strings.size());
+        }
+    }
+
+    public void writeVertexId(VertexId id) throws IOException {
+        Integer index = ids.get(id);
+        if (index != null) {
+            writeVarInt(index + 1);
+        } else {
+            writeVarInt(0);
+            writeUTF(id.toString());
+            ids.put(id, ids.size());
+        }
+    }
+
+    public void writePermissions(Permissions permissions) throws IOException {
+        writeVarLong(permissions.mask());
+    }
+
+    public void writeEvent(Event event) throws IOException {
+        writeVarInt(event.getType().ordinal());
+        writeNullableString(event.getTrace());
+        writeVertexId(event.getSender());
+        writeVertexId(event.getOriginalSender());
+        writeVarInt(event.getEffectiveVertices().size());
+        for (VertexId id : event.getEffectiveVertices()) {
+            writeVertexId(id);
+        }
+    }
+}
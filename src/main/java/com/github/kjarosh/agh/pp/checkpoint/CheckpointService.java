@@ -0,0 +1,316 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.GraphModifier;
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.EffectiveVertex;
+import com.github.kjarosh.agh.pp.index.Inbox;
+import com.github.kjarosh.agh.pp.index.InboxProcessor;
+import com.github.kjarosh.agh.pp.index.Message;
+import com.github.kjarosh.agh.pp.index.Outbox;
+import com.github.kjarosh.agh.pp.index.TraceTracker;
+import com.github.kjarosh.agh.pp.index.VertexIndex;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.rest.dto.CheckpointDto;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes checkpoints of the local graph, its index and pending events,
+ * and restores them on startup.
+ * <p>
+ * The state is copied in memory in an exclusive section of the
+ * {@link CheckpointBarrier}, so that event processing is paused
+ * only for the time of copying it, and encoded and written to disk
+ * afterwards.
+ * The checkpoint replaces the previous one atomically.
+ * <p>
+ * When the {@link WriteAheadLog} is enabled, a new segment of it is started
+ * with each checkpoint, and segments which precede the checkpoint are deleted.
+ * On startup the log is replayed after restoring the checkpoint.
+ * <p>
+ * Events which are being sent to other zones when the checkpoint
+ * is taken are not included in it, and events from the outbox included
+ * in it may be delivered again after it is restored.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+@Service
+@Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class CheckpointService {
+    private static final byte[] MAGIC = {'A', 'G', 'H', 'C', 'K', 'P', 'T', '1'};
+    private static final Vertex.Type[] vertexTypes = Vertex.Type.values();
+
+    @Autowired
+    private CheckpointBarrier barrier;
+
+    @Autowired
+    private GraphLoader graphLoader;
+
+    @Autowired
+    private Inbox inbox;
+
+    /**
+     * Restored events are posted to the inbox,
+     * so the processor has to be listening already.
+     */
+    @Autowired
+    private InboxProcessor inboxProcessor;
+
+    @Autowired
+    private WriteAheadLog wal;
+
+    @Autowired
+    private GraphModifier graphModifier;
+
+    @Autowired
+    private TraceTracker traceTracker;
+
+    private Path path;
+
+    @PostConstruct
+    public void init() {
+        Config config = ConfigLoader.getConfig();
+        path = Paths.get(config.getCheckpointPath());
+        boolean restore = config.isCheckpointRestore();
+        int walSegment = 0;
+        if (restore && Files.exists(path)) {
+            walSegment = restore();
+        }
+
+        if (wal.isEnabled()) {
+            List<Integer> segments = wal.segments();
+            if (restore) {
+                wal.replay(walSegment, graphModifier::replay);
+            } else if (!segments.isEmpty()) {
+                log.warn("Discarding write-ahead log, as the checkpoint is not restored");
+                wal.deleteSegmentsBefore(Integer.MAX_VALUE);
+            }
+
+            int last = segments.isEmpty() ? walSegment - 1 : segments.get(segments.size() - 1);
+            wal.start(Math.max(last + 1, walSegment));
+        }
+    }
+
+    @SneakyThrows
+    public synchronized CheckpointDto checkpoint() {
+        Instant start = Instant.now();
+        Instant[] paused = new Instant[1];
+        State state = barrier.exclusive(() -> {
+            paused[0] = Instant.now();
+            int segment = wal.isEnabled() ? wal.rotate() : 0;
+            return capture(segment);
+        });
+        Duration pause = Duration.between(paused[0], Instant.now());
+
+        ChunkedOutputStream buffer = new ChunkedOutputStream();
+        encode(new CheckpointOutput(buffer), state);
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream os = Channels.newOutputStream(channel);
+            buffer.writeTo(os);
+            os.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (wal.isEnabled()) {
+            wal.deleteSegmentsBefore(state.walSegment);
+        }
+
+        Duration total = Duration.between(start, Instant.now());
+        log.info("Checkpoint of {} vertices, {} edges and {} events written to {} in {} (paused for {})",
+                state.vertices.size(), state.edges.size(), state.events.size(), path, total, pause);
+        return CheckpointDto.builder()
+                .path(path.toString())
+                .vertices(state.vertices.size())
+                .edges(state.edges.size())
+                .events(state.events.size())
+                .bytes(buffer.size())
+                .pauseMillis(pause.toMillis())
+                .totalMillis(total.toMillis())
+                .build();
+    }
+
+    /**
+     * Copies the state of the zone, so that it may be encoded
+     * while it is being modified. Indexes which have been paged out
+     * are copied without paging them in.
+     */
+    private State capture(int walSegment) {
+        Graph graph = graphLoader.getGraph();
+        State state = new State(walSegment);
+        for (Vertex vertex : graph.allVertices()) {
+            state.vertices.add(vertex);
+            state.indexes.add(vertex.index().snapshot());
+        }
+        for (Edge edge : graph.allEdges()) {
+            state.edges.add(new Edge(edge.src(), edge.dst(), edge.permissions()));
+        }
+        inbox.forEachQueued((id, event) -> state.events.add(new Message(id, event)));
+        Outbox.forEachQueued((id, event) -> state.events.add(new Message(id, event)));
+        return state;
+    }
+
+    private void encode(CheckpointOutput out, State state) throws IOException {
+        out.write(MAGIC);
+        out.writeUTF(Config.ZONE_ID.getId());
+        out.writeVarInt(Permissions.BITS);
+        out.writeVarInt(state.walSegment);
+
+        out.writeVarInt(state.vertices.size());
+        for (Vertex vertex : state.vertices) {
+            out.writeVertexId(vertex.id());
+            out.writeVarInt(vertex.type().ordinal());
+        }
+
+        out.writeVarInt(state.edges.size());
+        for (Edge edge : state.edges) {
+            out.writeVertexId(edge.src());
+            out.writeVertexId(edge.dst());
+            out.writePermissions(edge.permissions());
+        }
+
+        for (int i = 0; i < state.vertices.size(); ++i) {
+            VertexIndex.Snapshot index = state.indexes.get(i);
+            writeEffectiveVertices(out, index.getEffectiveChildren());
+            writeEffectiveVertices(out, index.getEffectiveParents());
+            // released, as pages are decoded when written
+            state.indexes.set(i, null);
+        }
+
+        out.writeVarInt(state.events.size());
+        for (Message message : state.events) {
+            out.writeVertexId(message.getId());
+            out.writeEvent(message.getEvent());
+        }
+        out.flush();
+    }
+
+    private void writeEffectiveVertices(CheckpointOutput out, Map<VertexId, EffectiveVertex> effectiveVertices) throws IOException {
+        out.writeVarInt(effectiveVertices.size());
+        for (Map.Entry<VertexId, EffectiveVertex> entry : effectiveVertices.entrySet()) {
+            out.writeVertexId(entry.getKey());
+            entry.getValue().encode(out);
+        }
+    }
+
+    /**
+     * @return the segment of the write-ahead log which follows the checkpoint
+     */
+    @SneakyThrows
+    private int restore() {
+        log.info("Restoring checkpoint {}", path);
+        Instant start = Instant.now();
+        List<Message> events = new ArrayList<>();
+        Graph graph = new Graph();
+        int walSegment;
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(path), 1024 * 1024)) {
+            CheckpointInput in = new CheckpointInput(is);
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a checkpoint: " + path);
+            }
+            ZoneId zone = ZoneId.of(in.readUTF());
+            if (!zone.equals(Config.ZONE_ID)) {
+                throw new IOException("Checkpoint of zone " + zone + " cannot be restored in " + Config.ZONE_ID);
+            }
+            int bits = in.readVarInt();
+            if (bits != Permissions.BITS) {
+                throw new IOException("Unsupported number of permissions: " + bits);
+            }
+            walSegment = in.readVarInt();
+
+            int vertexCount = in.readVarInt();
+            List<Vertex> vertices = new ArrayList<>(vertexCount);
+            for (int i = 0; i < vertexCount; ++i) {
+                Vertex vertex = new Vertex(in.readVertexId(), vertexTypes[in.readVarInt()]);
+                graph.addVertex(vertex);
+                vertices.add(vertex);
+            }
+
+            int edgeCount = in.readVarInt();
+            for (int i = 0; i < edgeCount; ++i) {
+                graph.addEdge(new Edge(in.readVertexId(), in.readVertexId(), in.readPermissions()));
+            }
+
+            for (Vertex vertex : vertices) {
+                readEffectiveVertices(in, vertex.index().getEffectiveChildren());
+                readEffectiveVertices(in, vertex.index().getEffectiveParents());
+            }
+
+            int eventCount = in.readVarInt();
+            for (int i = 0; i < eventCount; ++i) {
+                events.add(new Message(in.readVertexId(), in.readEvent()));
+            }
+        }
+
+        graphLoader.setGraph(graph);
+        events.forEach(m -> {
+            traceTracker.posted(m.getEvent().getTrace(), 1);
+            inbox.post(m.getId(), m.getEvent());
+        });
+        log.info("Checkpoint restored in {}: {}, {} pending events",
+                Duration.between(start, Instant.now()), graph, events.size());
+        return walSegment;
+    }
+
+    private void readEffectiveVertices(CheckpointInput in, Map<VertexId, EffectiveVertex> effectiveVertices) throws IOException {
+        int count = in.readVarInt();
+        for (int i = 0; i < count; ++i) {
+            VertexId id = in.readVertexId();
+            effectiveVertices.put(id, EffectiveVertex.decode(in));
+        }
+    }
+
+    /**
+     * State of the zone copied for a checkpoint, effective vertices
+     * are stored in the order of vertices.
+     */
+    private static class State {
+        private final int walSegment;
+        private final List<Vertex> vertices = new ArrayList<>();
+        private final List<VertexIndex.Snapshot> indexes = new ArrayList<>();
+        private final List<Edge> edges = new ArrayList<>();
+        private final List<Message> events = new ArrayList<>();
+
+        private State(int walSegment) {
+            this.walSegment = walSegment;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An in-memory output stream, which stores data in fixed-size
+ * chunks, so that it is not limited in size and never copies data.
+ *
+ * @author Kamil Jarosz
+ */
+class ChunkedOutputStream extends OutputStream {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] current = null;
+    private int position = CHUNK_SIZE;
+
+    @Override
+    public void write(int b) {
+        if (position == CHUNK_SIZE) {
+            nextChunk();
+        }
+        current[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (position == CHUNK_SIZE) {
+                nextChunk();
+            }
+            int length = Math.min(len, CHUNK_SIZE - position);
+            System.arraycopy(b, off, current, position, length);
+            position += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    private void nextChunk() {
+        current = new byte[CHUNK_SIZE];
+        chunks.add(current);
+        position = 0;
+    }
+
+    public long size() {
+        return chunks.isEmpty() ? 0 : (long) (chunks.size() - 1) * CHUNK_SIZE + position;
+    }
+
+    public void writeTo(OutputStream os) throws IOException {
+        for (int i = 0; i < chunks.size(); ++i) {
+            byte[] chunk = chunks.get(i);
+            os.write(chunk, 0, chunk == current ? position : CHUNK_SIZE);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import com.github.kjarosh.agh.pp.graph.model.EdgeId;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.IOException;
+
+/**
+ * A record of the {@link WriteAheadLog}: a modification of the local
+ * graph or an event received from another zone.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class WalRecord {
+    private static final Type[] types = Type.values();
+    private static final Vertex.Type[] vertexTypes = Vertex.Type.values();
+
+    private final Type type;
+    private final VertexId id;
+    private final Vertex.Type vertexType;
+    private final EdgeId edgeId;
+    private final Permissions permissions;
+    private final String trace;
+    private final boolean successive;
+    private final Event event;
+
+    public static WalRecord addVertex(VertexId id, Vertex.Type vertexType) {
+        return new WalRecord(Type.ADD_VERTEX, id, vertexType, null, null, null, false, null);
+    }
+
+    public static WalRecord addEdge(EdgeId edgeId, Permissions permissions, String trace, boolean successive) {
+        return new WalRecord(Type.ADD_EDGE, null, null, edgeId, permissions, trace, successive, null);
+    }
+
+    public static WalRecord setPermissions(EdgeId edgeId, Permissions permissions, String trace, boolean successive) {
+        return new WalRecord(Type.SET_PERMISSIONS, null, null, edgeId, permissions, trace, successive, null);
+    }
+
+    public static WalRecord removeEdge(EdgeId edgeId, String trace, boolean successive) {
+        return new WalRecord(Type.REMOVE_EDGE, null, null, edgeId, null, trace, successive, null);
+    }
+
+    public static WalRecord event(VertexId id, Event event) {
+        return new WalRecord(Type.EVENT, id, null, null, null, null, false, event);
+    }
+
+    public void encode(CheckpointOutput out) throws IOException {
+        out.writeVarInt(type.ordinal());
+        switch (type) {
+            case ADD_VERTEX:
+                out.writeVertexId(id);
+                out.writeVarInt(vertexType.ordinal());
+                break;
+            case ADD_EDGE:
+            case SET_PERMISSIONS:
+            case REMOVE_EDGE:
+                out.writeVertexId(edgeId.getFrom());
+                out.writeVertexId(edgeId.getTo());
+                out.writeBoolean(permissions != null);
+                if (permissions != null) {
+                    out.writePermissions(permissions);
+                }
+                out.writeNullableString(trace);
+                out.writeBoolean(successive);
+                break;
+            case EVENT:
+                out.writeVertexId(id);
+                out.writeEvent(event);
+                break;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    public static WalRecord decode(CheckpointInput in) throws IOException {
+        Type type = types[in.readVarInt()];
+        switch (type) {
+            case ADD_VERTEX:
+                return addVertex(in.readVertexId(), vertexTypes[in.readVarInt()]);
+            case ADD_EDGE:
+            case SET_PERMISSIONS:
+            case REMOVE_EDGE:
+                EdgeId edgeId = EdgeId.of(in.readVertexId(), in.readVertexId());
+                Permissions permissions = in.readBoolean() ? in.readPermissions() : null;
+                String trace = in.readNullableString();
+                boolean successive = in.readBoolean();
+                return new WalRecord(type, null, null, edgeId, permissions, trace, successive, null);
+            case EVENT:
+                return event(in.readVertexId(), in.readEvent());
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    public enum Type {
+        ADD_VERTEX,
+        ADD_EDGE,
+        SET_PERMISSIONS,
+        REMOVE_EDGE,
+        EVENT,
+    }
+}
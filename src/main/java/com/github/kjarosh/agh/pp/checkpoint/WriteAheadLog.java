@@ -0,0 +1,419 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.rest.dto.WalStatsDto;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of {@link WalRecord}s, split into segments.
+ * A new segment is started on every checkpoint, so that only
+ * segments written after the last checkpoint have to be replayed.
+ * <p>
+ * Records are committed in groups: a single writer thread writes
+ * all records appended since the previous commit and syncs them
+ * to disk at once, while threads which appended them wait for
+ * the commit, see {@link #log(List)}. Each record is framed with
+ * its length and checksum, so that a torn write at the end
+ * of a segment is detected and ignored on replay.
+ * <p>
+ * The writer thread is stopped by {@link #close()}, after it
+ * has committed all records appended before.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+@Service
+@Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class WriteAheadLog {
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FRAME_HEADER_SIZE = 8;
+    /**
+     * Maximum length of an encoded record, so that a corrupt length
+     * is not trusted on replay.
+     */
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private final Meter recordsMeter = new Meter();
+    private final Meter bytesMeter = new Meter();
+    private final Histogram groupSizes = new Histogram(new ExponentiallyDecayingReservoir());
+    private final Timer commitTimer = new Timer();
+    private final Timer waitTimer = new Timer();
+
+    private final Object lock = new Object();
+    private List<byte[]> pending = new ArrayList<>();
+    private long appended = 0;
+    private long committed = 0;
+    private IOException failure = null;
+    private FileChannel channel = null;
+    private int segment = -1;
+    private Thread writer = null;
+    private boolean closed = false;
+
+    private boolean enabled;
+    private boolean sync;
+    private long groupCommitNanos;
+    private Path directory;
+
+    @PostConstruct
+    public void init() {
+        Config config = ConfigLoader.getConfig();
+        enabled = config.isWalEnabled();
+        sync = config.isWalSync();
+        groupCommitNanos = TimeUnit.MICROSECONDS.toNanos(config.getWalGroupCommitMicros());
+        directory = Paths.get(config.getWalPath());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return numbers of existing segments in ascending order
+     */
+    @SneakyThrows
+    public List<Integer> segments() {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))
+                    .map(Integer::parseInt)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Starts logging to a new segment with the given number.
+     */
+    @SneakyThrows
+    public void start(int segment) {
+        Files.createDirectories(directory);
+        synchronized (lock) {
+            openSegment(segment);
+            writer = new Thread(this::writeLoop, Config.ZONE_ID + "-wal-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        log.info("Write-ahead log started at {}", segmentPath(segment));
+    }
+
+    private void openSegment(int segment) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+
+        channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        this.segment = segment;
+    }
+
+    /**
+     * Starts a new segment. May be called only when no records
+     * are being logged, e.g. in an exclusive section of the
+     * {@link CheckpointBarrier}.
+     *
+     * @return the number of the new segment
+     */
+    @SneakyThrows
+    public int rotate() {
+        synchronized (lock) {
+            if (committed != appended) {
+                throw new IllegalStateException("Records are being logged");
+            }
+
+            openSegment(segment + 1);
+            return segment;
+        }
+    }
+
+    @SneakyThrows
+    public void deleteSegmentsBefore(int segment) {
+        for (int s : segments()) {
+            if (s < segment) {
+                Files.delete(segmentPath(s));
+            }
+        }
+    }
+
+    /**
+     * Replays records of segments starting from the given one.
+     */
+    @SneakyThrows
+    public void replay(int fromSegment, Consumer<WalRecord> consumer) {
+        for (int s : segments()) {
+            if (s < fromSegment) {
+                continue;
+            }
+
+            Path path = segmentPath(s);
+            long remaining = Files.size(path);
+            int count = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1024 * 1024))) {
+                byte[] payload;
+                while ((payload = readFrame(in, remaining)) != null) {
+                    remaining -= FRAME_HEADER_SIZE + payload.length;
+                    consumer.accept(WalRecord.decode(new CheckpointInput(new ByteArrayInputStream(payload))));
+                    ++count;
+                }
+            }
+            log.info("Replayed {} records from {}", count, path);
+        }
+    }
+
+    /**
+     * @param remaining the number of bytes left in the segment
+     * @return the payload of the next record, {@code null} at the end
+     * of the segment or when the rest of it is torn or corrupt
+     */
+    private byte[] readFrame(DataInputStream in, long remaining) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > MAX_RECORD_SIZE || length > remaining - FRAME_HEADER_SIZE) {
+                log.warn("Invalid record length {}, ignoring the rest of the segment", length);
+                return null;
+            }
+
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Invalid record checksum, ignoring the rest of the segment");
+                return null;
+            }
+            return payload;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Logs the given records and waits until they are committed.
+     * Does nothing when the log is disabled.
+     */
+    public void log(List<WalRecord> records) {
+        if (!enabled || records.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> frames = new ArrayList<>(records.size());
+        for (WalRecord record : records) {
+            frames.add(frame(record));
+        }
+
+        long sequence;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log closed");
+            }
+            pending.addAll(frames);
+            appended += frames.size();
+            sequence = appended;
+            lock.notifyAll();
+        }
+
+        try (Timer.Context ignored = waitTimer.time()) {
+            awaitCommit(sequence);
+        }
+    }
+
+    @SneakyThrows
+    private byte[] frame(WalRecord record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[FRAME_HEADER_SIZE]);
+        CheckpointOutput out = new CheckpointOutput(bytes);
+        record.encode(out);
+        out.flush();
+
+        byte[] frame = bytes.toByteArray();
+        if (frame.length - FRAME_HEADER_SIZE > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Record too large: " + (frame.length - FRAME_HEADER_SIZE) + " bytes");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(frame, FRAME_HEADER_SIZE, frame.length - FRAME_HEADER_SIZE);
+        ByteBuffer.wrap(frame)
+                .putInt(frame.length - FRAME_HEADER_SIZE)
+                .putInt((int) crc.getValue());
+        return frame;
+    }
+
+    private void awaitCommit(long sequence) {
+        synchronized (lock) {
+            while (committed < sequence) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Write-ahead log failed", failure);
+                }
+
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for commit");
+                }
+            }
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                synchronized (lock) {
+                    while (pending.isEmpty()) {
+                        if (closed) {
+                            return;
+                        }
+                        lock.wait();
+                    }
+                }
+
+                if (groupCommitNanos > 0) {
+                    LockSupport.parkNanos(groupCommitNanos);
+                }
+
+                List<byte[]> group;
+                long sequence;
+                FileChannel target;
+                synchronized (lock) {
+                    group = pending;
+                    pending = new ArrayList<>();
+                    sequence = appended;
+                    target = channel;
+                }
+
+                commit(target, group);
+
+                synchronized (lock) {
+                    committed = sequence;
+                    lock.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            log.error("Write-ahead log failed", e);
+            synchronized (lock) {
+                failure = e;
+                lock.notifyAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(FileChannel target, List<byte[]> group) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer[] buffers = new ByteBuffer[group.size()];
+        long bytes = 0;
+        for (int i = 0; i < buffers.length; ++i) {
+            buffers[i] = ByteBuffer.wrap(group.get(i));
+            bytes += buffers[i].remaining();
+        }
+
+        long written = 0;
+        while (written < bytes) {
+            written += target.write(buffers);
+        }
+        if (sync) {
+            force(target);
+        }
+
+        commitTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        groupSizes.update(group.size());
+        recordsMeter.mark(group.size());
+        bytesMeter.mark(bytes);
+    }
+
+    void force(FileChannel target) throws IOException {
+        target.force(false);
+    }
+
+    /**
+     * Commits records which have been appended and stops the writer thread.
+     */
+    @PreDestroy
+    @SneakyThrows
+    public void close() {
+        Thread stopped;
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+            stopped = writer;
+        }
+
+        if (stopped != null) {
+            stopped.join();
+        }
+
+        synchronized (lock) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    public WalStatsDto stats() {
+        Snapshot commit = commitTimer.getSnapshot();
+        Snapshot wait = waitTimer.getSnapshot();
+        return WalStatsDto.builder()
+                .enabled(enabled)
+                .segment(segment)
+                .records(recordsMeter.getCount())
+                .bytes(bytesMeter.getCount())
+                .commits(commitTimer.getCount())
+                .recordsRate(recordsMeter.getOneMinuteRate())
+                .meanGroupSize(groupSizes.getSnapshot().getMean())
+                .commitMillisMean(toMillis(commit.getMean()))
+                .commitMillis99(toMillis(commit.get99thPercentile()))
+                .waitMillisMean(toMillis(wait.getMean()))
+                .waitMillis99(toMillis(wait.get99thPercentile()))
+                .build();
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
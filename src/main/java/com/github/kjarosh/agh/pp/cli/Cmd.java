@@ -23,7 +23,7 @@ import java.util.concurrent.Callable;
  * @author Kamil Jarosz
  */
 public class Cmd {
-    private static final ZoneClient client = new ZoneClient();
+    private static final ZoneClient client = ZoneClient.getInstance();
     private static ZoneId zone = null;
 
     static {
@@ -103,7 +103,7 @@ public class Cmd {
         private String zone;
 
         public Void call() {
-            Cmd.zone = new ZoneId(zone);
+            Cmd.zone = ZoneId.of(zone);
             return null;
         }
     }
@@ -119,7 +119,7 @@ public class Cmd {
         public Void call() {
             if (checkZone()) return null;
             System.out.println(client.isAdjacent(zone,
-                    EdgeId.of(new VertexId(from), new VertexId(to))));
+                    EdgeId.of(VertexId.of(from), VertexId.of(to))));
             return null;
         }
     }
@@ -131,7 +131,7 @@ public class Cmd {
 
         public Void call() {
             if (checkZone()) return null;
-            System.out.println(client.listAdjacent(zone, new VertexId(of)));
+            System.out.println(client.listAdjacent(zone, VertexId.of(of)));
             return null;
         }
     }
@@ -143,7 +143,7 @@ public class Cmd {
 
         public Void call() {
             if (checkZone()) return null;
-            System.out.println(client.listAdjacentReversed(zone, new VertexId(of)));
+            System.out.println(client.listAdjacentReversed(zone, VertexId.of(of)));
             return null;
         }
     }
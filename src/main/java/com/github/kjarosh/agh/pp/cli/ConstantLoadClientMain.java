@@ -80,7 +80,7 @@ public class ConstantLoadClientMain {
         }
 
 
-        baseOperationIssuer = new ConcurrentOperationIssuer(maxPoolSize, new ZoneClient());
+        baseOperationIssuer = new ConcurrentOperationIssuer(maxPoolSize, ZoneClient.getInstance());
         if (bulkSize >= 1) {
             operationIssuer = new BulkOperationIssuer(baseOperationIssuer, bulkSize, Duration.ZERO);
         } else {
@@ -97,7 +97,7 @@ public class ConstantLoadClientMain {
     }
 
     private static void loadGraph() {
-        ZoneClient client = new ZoneClient();
+        ZoneClient client = ZoneClient.getInstance();
         new RemoteGraphBuilder(graph, client).build(client);
     }
 
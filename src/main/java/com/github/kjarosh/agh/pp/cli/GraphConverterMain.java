@@ -0,0 +1,53 @@
+package com.github.kjarosh.agh.pp.cli;
+
+import com.github.kjarosh.agh.pp.cli.utils.LogbackUtils;
+import com.github.kjarosh.agh.pp.graph.io.BinaryGraphWriter;
+import com.github.kjarosh.agh.pp.graph.io.GraphFiles;
+import com.github.kjarosh.agh.pp.graph.io.GraphWriter;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts graphs between the JSON and the binary format.
+ * The format of the input is detected automatically.
+ *
+ * @author Kamil Jarosz
+ */
+public class GraphConverterMain {
+    static {
+        LogbackUtils.loadLogbackCli();
+    }
+
+    public static void main(String[] args) throws IOException, ParseException {
+        Options options = new Options();
+        options.addRequiredOption("i", "input", true, "path to input graph");
+        options.addRequiredOption("o", "output", true, "path to output graph");
+        options.addOption("j", "json", false, "write JSON instead of the binary format, " +
+                "compressed when the output ends with .gz");
+
+        CommandLineParser parser = new DefaultParser();
+        CommandLine cmd = parser.parse(options, args);
+
+        String input = cmd.getOptionValue("i");
+        Path output = Paths.get(cmd.getOptionValue("o"));
+
+        if (cmd.hasOption("j")) {
+            Graph graph = GraphFiles.readGraph(input);
+            try (GraphWriter writer = GraphWriter.open(output)) {
+                writer.write(graph);
+            }
+        } else {
+            BinaryGraphWriter writer = new BinaryGraphWriter();
+            GraphFiles.read(input, writer::addVertex, writer::addEdge);
+            writer.write(output);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.kjarosh.agh.pp.cli.utils.LogbackUtils;
 import com.github.kjarosh.agh.pp.graph.generator.GraphGenerator;
 import com.github.kjarosh.agh.pp.graph.generator.GraphGeneratorConfig;
+import com.github.kjarosh.agh.pp.graph.io.GraphWriter;
 import com.github.kjarosh.agh.pp.graph.model.Graph;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -13,7 +14,6 @@ import org.apache.commons.cli.ParseException;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 
 /**
@@ -27,7 +27,7 @@ public class GraphGeneratorMain {
     public static void main(String[] args) throws IOException, ParseException {
         Options options = new Options();
         options.addRequiredOption("c", "config", true, "path to config file");
-        options.addRequiredOption("o", "output", true, "path to output file");
+        options.addRequiredOption("o", "output", true, "path to output file, compressed when ending with .gz");
 
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd = parser.parse(options, args);
@@ -41,6 +41,8 @@ public class GraphGeneratorMain {
         Graph graph = g.generateGraph();
         System.out.println("Number of vertices: " + graph.allVertices().size());
         System.out.println("Number of edges: " + graph.allEdges().size());
-        graph.serialize(Files.newOutputStream(Paths.get(cmd.getOptionValue("o"))));
+        try (GraphWriter writer = GraphWriter.open(Paths.get(cmd.getOptionValue("o")))) {
+            writer.write(graph);
+        }
     }
 }
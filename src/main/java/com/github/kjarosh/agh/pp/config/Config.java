@@ -5,6 +5,8 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.IndexStorage;
+import com.github.kjarosh.agh.pp.index.ProcessingEngine;
 import com.google.common.base.Strings;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -33,7 +35,7 @@ public class Config {
     public static ZoneId ZONE_ID = Optional.ofNullable(System.getProperty("app.zone_id", null))
             .filter(Predicate.not(Strings::isNullOrEmpty))
             .or(() -> Optional.ofNullable(System.getenv("ZONE_ID")))
-            .map(ZoneId::new)
+            .map(ZoneId::of)
             .orElse(null);
 
     public static ObjectMapper MAPPER = new ObjectMapper()
@@ -46,6 +48,103 @@ public class Config {
 
     private boolean instrumentationEnabled = false;
     private String instrumentationReportPath = "instrumentation.csv";
+    private ProcessingEngine.Type processingEngine = ProcessingEngine.Type.POOL;
+    /**
+     * Number of event loops of the sharded processing engine,
+     * defaults to the number of available processors.
+     */
+    private int processingThreads = 0;
+    /**
+     * Limits of the number of workers of the pool processing engine,
+     * the maximum defaults to twice the number of available processors.
+     */
+    private int workerPoolMinSize = 2;
+    private int workerPoolMaxSize = 0;
+    private long workerPoolResizePeriodMillis = 1000;
+    /**
+     * When enabled, all events queued for a vertex (up to the limit)
+     * are processed together and result in a single propagation.
+     */
+    private boolean batchProcessing = false;
+    private int batchProcessingLimit = 1000;
+    /**
+     * Naive queries traverse a snapshot of the graph, which is rebuilt
+     * after modifications only when it is older than the given age.
+     */
+    private long graphSnapshotMaxAgeMillis = 1000;
+    /**
+     * Path of the checkpoint of the zone. When restoring is enabled,
+     * the checkpoint is restored on startup if it exists.
+     */
+    private String checkpointPath = "checkpoint.bin";
+    private boolean checkpointRestore = false;
+    /**
+     * Write-ahead log of graph modifications and events received from other
+     * zones, replayed after restoring the checkpoint. Commits are synced to
+     * disk when enabled, and a commit may wait for more records to be grouped.
+     */
+    private boolean walEnabled = false;
+    private String walPath = "wal";
+    private boolean walSync = true;
+    private long walGroupCommitMicros = 0;
+    /**
+     * Storage of indexes. The mapped storage keeps up to the given number
+     * of recently used indexes in memory and pages out the others.
+     */
+    private IndexStorage.Type indexStorage = IndexStorage.Type.MEMORY;
+    private String indexStoragePath = "index";
+    private int indexCacheSize = 100_000;
+    /**
+     * Maximum numbers of events kept in memory by the inbox and by the outbox
+     * of each zone, the others are spilled to disk in segments of the given
+     * number of events.
+     */
+    private int inboxMemoryLimit = 1_000_000;
+    private int outboxMemoryLimit = 1_000_000;
+    private String spillPath = "spill";
+    private int spillSegmentSize = 100_000;
+    /**
+     * Event bulks are sent to other zones in the binary format when enabled,
+     * falling back to JSON for zones which do not support it, and may be
+     * deflated.
+     */
+    private boolean eventsBinaryFormat = true;
+    private boolean eventsCompression = false;
+    /**
+     * Events sent to a zone are partitioned by their vertex into lanes,
+     * each of which has at most one bulk in flight. A lane is flushed
+     * after the linger period since an event has been posted to it.
+     */
+    private int outboxLanes = 4;
+    private long outboxLingerMillis = 5;
+    /**
+     * Requests to other zones reuse keep-alive connections, at most the given
+     * number of idle connections per zone ({@code 0} for no limit), and may be
+     * multiplexed over HTTP/2 connections when enabled.
+     */
+    private boolean zoneClientHttp2 = false;
+    private int zoneClientPoolSize = 0;
+    private int zoneClientKeepAliveSeconds = 60;
+    private int zoneClientConnectTimeoutMillis = 10_000;
+    /**
+     * Requests to other zones fail when there is no response in time
+     * ({@code 0} for no limit). Requests which wait in the zone, e.g. for
+     * quiescence, are given the time they wait in addition, and operations
+     * on whole zones, e.g. building the index or checkpoints, a separate limit.
+     */
+    private int zoneClientRequestTimeoutMillis = 30_000;
+    private int zoneClientOperationTimeoutMillis = 3_600_000;
+    /**
+     * Events of each trace are counted online, so that clients may wait
+     * for a trace to complete. Traces of modifications applied by the zone
+     * are checked periodically for completion, up to the given number
+     * at a time, to measure their latency. Counters of a trace are dropped
+     * after the retention period without events.
+     */
+    private boolean traceTracking = true;
+    private long traceCheckMillis = 200;
+    private int traceTrackingLimit = 10_000;
+    private long traceRetentionMillis = 60_000;
     private Map<String, ZoneConfig> zones;
 
     public static Config loadConfig(Path path) {
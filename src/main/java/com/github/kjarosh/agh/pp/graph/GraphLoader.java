@@ -1,16 +1,21 @@
 package com.github.kjarosh.agh.pp.graph;
 
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.graph.io.GraphFiles;
 import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.IndexStorage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UncheckedIOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A singleton that contains the service-wide graph representation.
@@ -25,27 +30,38 @@ public class GraphLoader {
 
     public static Graph loadGraph(String path) {
         log.debug("Loading graph");
-        try (InputStream is = open(path)) {
-            return Graph.deserialize(is);
+        try {
+            return GraphFiles.readGraph(path);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
-    private static InputStream open(String path) throws IOException {
-        InputStream is = GraphLoader.class.getClassLoader()
-                .getResourceAsStream(path);
-        if (is != null) return is;
-
-        return Files.newInputStream(Paths.get(path));
-    }
-
     @PostConstruct
     public void init() {
+        IndexStorage.configure(ConfigLoader.getConfig());
         graph = new Graph();
     }
 
     public Graph getGraph() {
         return graph;
     }
+
+    public void setGraph(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * @return all configured zones, zones of the local graph and this zone,
+     * as events may pass through zones which are not adjacent to this one
+     */
+    public Set<ZoneId> allZones() {
+        Set<ZoneId> zones = new HashSet<>(graph.allZones());
+        Map<String, ?> configured = ConfigLoader.getConfig().getZones();
+        if (configured != null) {
+            configured.keySet().forEach(zone -> zones.add(ZoneId.of(zone)));
+        }
+        zones.add(Config.ZONE_ID);
+        return zones;
+    }
 }
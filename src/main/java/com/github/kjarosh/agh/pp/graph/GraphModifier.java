@@ -0,0 +1,189 @@
+package com.github.kjarosh.agh.pp.graph;
+
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointBarrier;
+import com.github.kjarosh.agh.pp.checkpoint.WalRecord;
+import com.github.kjarosh.agh.pp.checkpoint.WriteAheadLog;
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.EdgeId;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.index.BulkIndexBuilder;
+import com.github.kjarosh.agh.pp.index.Inbox;
+import com.github.kjarosh.agh.pp.index.TraceTracker;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import com.github.kjarosh.agh.pp.rest.error.PropagationSuspendedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Applies modifications of the local graph, posting events which
+ * update the index, and events received from other zones.
+ * <p>
+ * Modifications are logged in the {@link WriteAheadLog} before being
+ * applied, both in a shared section of the {@link CheckpointBarrier},
+ * so that every modification is either in the checkpoint
+ * or in the log written after it.
+ * <p>
+ * Events posted by the index itself are not logged,
+ * as replaying modifications posts them again.
+ * <p>
+ * While propagation is suspended, no events are posted for added edges
+ * and changed permissions, as the index is built in bulk afterwards,
+ * see {@link BulkIndexBuilder}. Removed edges and events are rejected
+ * then, as their propagation would change the index during the build.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+@Service
+@Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class GraphModifier {
+    @Autowired
+    private GraphLoader graphLoader;
+
+    @Autowired
+    private Inbox inbox;
+
+    @Autowired
+    private CheckpointBarrier barrier;
+
+    @Autowired
+    private WriteAheadLog wal;
+
+    @Autowired
+    private TraceTracker traceTracker;
+
+    @Autowired
+    private BulkIndexBuilder bulkIndexBuilder;
+
+    public void modify(WalRecord record) {
+        modify(Collections.singletonList(record));
+    }
+
+    /**
+     * Logs and applies the given records in order.
+     *
+     * @throws PropagationSuspendedException when a record would propagate
+     *                                       events while propagation is suspended,
+     *                                       bulks of events are then sent again later
+     */
+    public void modify(List<WalRecord> records) {
+        if (bulkIndexBuilder.isSuspended()) {
+            for (WalRecord record : records) {
+                if (record.getType() == WalRecord.Type.REMOVE_EDGE ||
+                        record.getType() == WalRecord.Type.EVENT) {
+                    throw new PropagationSuspendedException(record.getType());
+                }
+            }
+        }
+
+        barrier.shared(() -> {
+            wal.log(records);
+            records.forEach(this::apply);
+        });
+    }
+
+    /**
+     * Applies a record which has already been logged.
+     */
+    public void replay(WalRecord record) {
+        barrier.shared(() -> {
+            try {
+                apply(record);
+            } catch (RuntimeException e) {
+                log.warn("Cannot replay {}", record, e);
+            }
+        });
+    }
+
+    private void apply(WalRecord record) {
+        Graph graph = graphLoader.getGraph();
+        switch (record.getType()) {
+            case ADD_VERTEX: {
+                graph.addVertex(new Vertex(record.getId(), record.getVertexType()));
+                break;
+            }
+
+            case ADD_EDGE: {
+                EdgeId edgeId = record.getEdgeId();
+                graph.addEdge(new Edge(edgeId.getFrom(), edgeId.getTo(), record.getPermissions()));
+                if (!bulkIndexBuilder.isSuspended()) {
+                    postChangeEvent(record.isSuccessive(), record.getTrace(), edgeId, false);
+                }
+                break;
+            }
+
+            case SET_PERMISSIONS: {
+                graph.setPermissions(record.getEdgeId(), record.getPermissions());
+                if (!bulkIndexBuilder.isSuspended()) {
+                    postChangeEvent(record.isSuccessive(), record.getTrace(), record.getEdgeId(), false);
+                }
+                break;
+            }
+
+            case REMOVE_EDGE: {
+                Edge edge = graph.getEdge(record.getEdgeId());
+                if (edge != null) {
+                    graph.removeEdge(edge);
+                }
+                postChangeEvent(record.isSuccessive(), record.getTrace(), record.getEdgeId(), true);
+                break;
+            }
+
+            case EVENT: {
+                inbox.post(record.getId(), record.getEvent());
+                break;
+            }
+
+            default: {
+                throw new AssertionError();
+            }
+        }
+    }
+
+    private void postChangeEvent(
+            boolean successive,
+            String trace,
+            EdgeId edgeId,
+            boolean delete) {
+        Objects.requireNonNull(trace);
+        Graph graph = graphLoader.getGraph();
+        traceTracker.posted(trace, 1);
+        if (successive) {
+            Set<VertexId> subjects = graph.getVertex(edgeId.getTo())
+                    .index()
+                    .getEffectiveParents()
+                    .keySet();
+            inbox.post(edgeId.getFrom(), Event.builder()
+                    .trace(trace)
+                    .type(delete ? EventType.PARENT_REMOVE : EventType.PARENT_CHANGE)
+                    .effectiveVertices(delete ? Collections.emptySet() : subjects)
+                    .sender(edgeId.getTo())
+                    .originalSender(edgeId.getTo())
+                    .build());
+        } else {
+            traceTracker.started(trace);
+            Set<VertexId> subjects = graph.getVertex(edgeId.getFrom())
+                    .index()
+                    .getEffectiveChildren()
+                    .keySet();
+            inbox.post(edgeId.getTo(), Event.builder()
+                    .trace(trace)
+                    .type(delete ? EventType.CHILD_REMOVE : EventType.CHILD_CHANGE)
+                    .effectiveVertices(delete ? Collections.emptySet() : subjects)
+                    .sender(edgeId.getFrom())
+                    .originalSender(edgeId.getFrom())
+                    .build());
+        }
+    }
+}
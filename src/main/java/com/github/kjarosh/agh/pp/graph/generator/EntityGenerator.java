@@ -34,13 +34,13 @@ public class EntityGenerator {
     private VertexId generateVertexId(ZoneId zone, Vertex.Type type) {
         switch (type) {
             case PROVIDER:
-                return new VertexId(zone, assertUniqueId(faker.address().city()));
+                return VertexId.of(zone, assertUniqueId(faker.address().city()));
             case SPACE:
-                return new VertexId(zone, assertUniqueId(faker.address().streetName()));
+                return VertexId.of(zone, assertUniqueId(faker.address().streetName()));
             case GROUP:
-                return new VertexId(zone, assertUniqueId(faker.internet().slug()));
+                return VertexId.of(zone, assertUniqueId(faker.internet().slug()));
             case USER:
-                return new VertexId(zone, assertUniqueId(faker.name().username()));
+                return VertexId.of(zone, assertUniqueId(faker.name().username()));
         }
 
         throw new AssertionError();
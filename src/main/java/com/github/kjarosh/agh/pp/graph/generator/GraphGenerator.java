@@ -30,7 +30,7 @@ public class GraphGenerator {
         this.entityGenerator = new EntityGenerator();
         this.zones = new ArrayList<>();
         for (int i = 0; i < config.getZones(); ++i) {
-            this.zones.add(new ZoneId("zone" + i));
+            this.zones.add(ZoneId.of("zone" + i));
         }
     }
 
@@ -0,0 +1,61 @@
+package com.github.kjarosh.agh.pp.graph.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * A compact binary graph format, which may be memory-mapped.
+ * All numbers are little-endian ints. The file consists of:
+ * <ol>
+ * <li>a header: magic bytes, the format version, the number
+ * of permission bits, and the numbers of strings, vertices and edges,</li>
+ * <li>a string table of vertex ids: offsets of strings
+ * (one more than there are strings) followed by their UTF-8 bytes,
+ * padded to a multiple of four bytes,</li>
+ * <li>vertex records: the index of the id in the string table
+ * and the ordinal of the vertex type,</li>
+ * <li>edge records: indices of the source and destination ids
+ * in the string table and the permission mask.</li>
+ * </ol>
+ *
+ * @author Kamil Jarosz
+ * @see BinaryGraphReader
+ * @see BinaryGraphWriter
+ */
+public class BinaryGraphFormat {
+    static final byte[] MAGIC = {'A', 'G', 'H', 'G', 'R', 'A', 'P', 'H'};
+    static final int VERSION = 1;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int HEADER_SIZE = 32;
+    static final int VERTEX_RECORD_SIZE = 8;
+    static final int EDGE_RECORD_SIZE = 12;
+
+    private BinaryGraphFormat() {
+    }
+
+    /**
+     * @return whether the given path points to a file in the binary format
+     */
+    public static boolean isBinary(String path) {
+        Path file = Paths.get(path);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+
+        try (InputStream is = Files.newInputStream(file)) {
+            return Arrays.equals(is.readNBytes(MAGIC.length), MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static long align(long position) {
+        return (position + 3) & ~3L;
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.kjarosh.agh.pp.graph.io;
+
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reads graphs in the {@link BinaryGraphFormat} by memory-mapping
+ * the file, so that no text is parsed. Ids are decoded lazily
+ * and only once. Not thread-safe.
+ *
+ * @author Kamil Jarosz
+ */
+public class BinaryGraphReader implements Closeable {
+    private static final Vertex.Type[] types = Vertex.Type.values();
+
+    private final FileChannel channel;
+    private final int stringCount;
+    private final int vertexCount;
+    private final int edgeCount;
+    private final ByteBuffer stringOffsets;
+    private final ByteBuffer stringData;
+    private final ByteBuffer vertices;
+    private final ByteBuffer edges;
+    private final VertexId[] ids;
+
+    private BinaryGraphReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer header = map(0, BinaryGraphFormat.HEADER_SIZE);
+        byte[] magic = new byte[BinaryGraphFormat.MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, BinaryGraphFormat.MAGIC)) {
+            throw new IOException("Not a binary graph file");
+        }
+        int version = header.getInt();
+        if (version != BinaryGraphFormat.VERSION) {
+            throw new IOException("Unsupported binary graph version: " + version);
+        }
+        int bits = header.getInt();
+        if (bits != Permissions.BITS) {
+            throw new IOException("Unsupported number of permissions: " + bits);
+        }
+        stringCount = header.getInt();
+        vertexCount = header.getInt();
+        edgeCount = header.getInt();
+
+        long position = BinaryGraphFormat.HEADER_SIZE;
+        stringOffsets = map(position, 4L * (stringCount + 1));
+        position += 4L * (stringCount + 1);
+        int stringBytes = stringOffsets.getInt(4 * stringCount);
+        stringData = map(position, stringBytes);
+        position = BinaryGraphFormat.align(position + stringBytes);
+        vertices = map(position, (long) BinaryGraphFormat.VERTEX_RECORD_SIZE * vertexCount);
+        position += (long) BinaryGraphFormat.VERTEX_RECORD_SIZE * vertexCount;
+        edges = map(position, (long) BinaryGraphFormat.EDGE_RECORD_SIZE * edgeCount);
+
+        ids = new VertexId[stringCount];
+    }
+
+    public static BinaryGraphReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new BinaryGraphReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer map(long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Section too large to be mapped: " + size);
+        }
+        if (position + size > channel.size()) {
+            throw new IOException("Truncated binary graph file");
+        }
+
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+                .order(BinaryGraphFormat.ORDER);
+    }
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public Vertex vertex(int index) {
+        int offset = index * BinaryGraphFormat.VERTEX_RECORD_SIZE;
+        return new Vertex(id(vertices.getInt(offset)), types[vertices.getInt(offset + 4)]);
+    }
+
+    public Edge edge(int index) {
+        int offset = index * BinaryGraphFormat.EDGE_RECORD_SIZE;
+        return new Edge(
+                id(edges.getInt(offset)),
+                id(edges.getInt(offset + 4)),
+                Permissions.fromMask(Integer.toUnsignedLong(edges.getInt(offset + 8))));
+    }
+
+    private VertexId id(int string) {
+        VertexId id = ids[string];
+        if (id != null) {
+            return id;
+        }
+
+        int start = stringOffsets.getInt(4 * string);
+        int end = stringOffsets.getInt(4 * string + 4);
+        byte[] bytes = new byte[end - start];
+        stringData.position(start);
+        stringData.get(bytes);
+        id = VertexId.of(new String(bytes, StandardCharsets.UTF_8));
+        ids[string] = id;
+        return id;
+    }
+
+    /**
+     * Reads all vertices and then all edges.
+     * Vertices or edges are skipped when their consumer is {@code null}.
+     */
+    public void read(Consumer<Vertex> vertexConsumer, Consumer<Edge> edgeConsumer) {
+        if (vertexConsumer != null) {
+            for (int i = 0; i < vertexCount; ++i) {
+                vertexConsumer.accept(vertex(i));
+            }
+        }
+        if (edgeConsumer != null) {
+            for (int i = 0; i < edgeCount; ++i) {
+                edgeConsumer.accept(edge(i));
+            }
+        }
+    }
+
+    public Graph readGraph() {
+        Graph graph = new Graph();
+        read(graph::addVertex, graph::addEdge);
+        return graph;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.kjarosh.agh.pp.graph.io;
+
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes graphs in the {@link BinaryGraphFormat}. Vertices and edges
+ * are collected as compact records first, as the string table has
+ * to precede them in the file, so that a graph may be converted
+ * without being loaded.
+ *
+ * @author Kamil Jarosz
+ */
+public class BinaryGraphWriter {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Map<VertexId, Integer> stringIndices = new HashMap<>();
+    private final List<byte[]> strings = new ArrayList<>();
+    private long stringBytes = 0;
+    private int[] vertexRecords = new int[1024];
+    private int vertexCount = 0;
+    private int[] edgeRecords = new int[1024];
+    private int edgeCount = 0;
+
+    public BinaryGraphWriter() {
+        if (Permissions.BITS > Integer.SIZE) {
+            throw new IllegalStateException("Too many permissions: " + Permissions.BITS);
+        }
+    }
+
+    public static void write(Graph graph, Path path) throws IOException {
+        BinaryGraphWriter writer = new BinaryGraphWriter();
+        graph.allVertices().forEach(writer::addVertex);
+        graph.allEdges().forEach(writer::addEdge);
+        writer.write(path);
+    }
+
+    public void addVertex(Vertex vertex) {
+        vertexRecords = ensureCapacity(vertexRecords, 2 * vertexCount + 2);
+        vertexRecords[2 * vertexCount] = stringIndex(vertex.id());
+        vertexRecords[2 * vertexCount + 1] = vertex.type().ordinal();
+        ++vertexCount;
+    }
+
+    public void addEdge(Edge edge) {
+        edgeRecords = ensureCapacity(edgeRecords, 3 * edgeCount + 3);
+        edgeRecords[3 * edgeCount] = stringIndex(edge.src());
+        edgeRecords[3 * edgeCount + 1] = stringIndex(edge.dst());
+        edgeRecords[3 * edgeCount + 2] = (int) edge.permissions().mask();
+        ++edgeCount;
+    }
+
+    private int stringIndex(VertexId id) {
+        Integer index = stringIndices.get(id);
+        if (index != null) {
+            return index;
+        }
+
+        byte[] bytes = id.toString().getBytes(StandardCharsets.UTF_8);
+        stringBytes += bytes.length;
+        if (stringBytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("String table too large");
+        }
+
+        strings.add(bytes);
+        stringIndices.put(id, strings.size() - 1);
+        return strings.size() - 1;
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        if (capacity <= array.length) {
+            return array;
+        }
+
+        return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    public void write(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+
+            out.putBytes(BinaryGraphFormat.MAGIC);
+            out.putInt(BinaryGraphFormat.VERSION);
+            out.putInt(Permissions.BITS);
+            out.putInt(strings.size());
+            out.putInt(vertexCount);
+            out.putInt(edgeCount);
+            out.putInt(0);
+
+            int offset = 0;
+            out.putInt(offset);
+            for (byte[] string : strings) {
+                offset += string.length;
+                out.putInt(offset);
+            }
+            for (byte[] string : strings) {
+                out.putBytes(string);
+            }
+            out.putBytes(new byte[(int) (BinaryGraphFormat.align(offset) - offset)]);
+
+            for (int i = 0; i < 2 * vertexCount; ++i) {
+                out.putInt(vertexRecords[i]);
+            }
+            for (int i = 0; i < 3 * edgeCount; ++i) {
+                out.putInt(edgeRecords[i]);
+            }
+            out.flush();
+        }
+    }
+
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+                .order(BinaryGraphFormat.ORDER);
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void putInt(int value) throws IOException {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            int written = 0;
+            while (written < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.kjarosh.agh.pp.graph.io;
+
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens graph files, which are compressed using gzip
+ * when their name ends with {@value #GZIP_EXTENSION}.
+ * Files in the {@link BinaryGraphFormat} are detected
+ * by their contents.
+ *
+ * @author Kamil Jarosz
+ */
+public class GraphFiles {
+    public static final String GZIP_EXTENSION = ".gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private GraphFiles() {
+    }
+
+    public static boolean isCompressed(String path) {
+        return path.endsWith(GZIP_EXTENSION);
+    }
+
+    /**
+     * Opens a classpath resource or a file with the given path.
+     */
+    public static InputStream openInput(String path) throws IOException {
+        InputStream is = GraphFiles.class.getClassLoader()
+                .getResourceAsStream(path);
+        if (is == null) {
+            is = Files.newInputStream(Paths.get(path));
+        }
+
+        if (isCompressed(path)) {
+            return new GZIPInputStream(is, BUFFER_SIZE);
+        } else {
+            return new BufferedInputStream(is, BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Reads vertices and edges of a graph in any supported format,
+     * see {@link GraphReader#read(Consumer, Consumer)}.
+     */
+    public static void read(String path, Consumer<Vertex> vertexConsumer, Consumer<Edge> edgeConsumer) throws IOException {
+        if (BinaryGraphFormat.isBinary(path)) {
+            try (BinaryGraphReader reader = BinaryGraphReader.open(Paths.get(path))) {
+                reader.read(vertexConsumer, edgeConsumer);
+            }
+        } else {
+            try (GraphReader reader = GraphReader.open(path)) {
+                reader.read(vertexConsumer, edgeConsumer);
+            }
+        }
+    }
+
+    /**
+     * Reads a graph in any supported format.
+     */
+    public static Graph readGraph(String path) throws IOException {
+        if (BinaryGraphFormat.isBinary(path)) {
+            try (BinaryGraphReader reader = BinaryGraphReader.open(Paths.get(path))) {
+                return reader.readGraph();
+            }
+        } else {
+            try (GraphReader reader = GraphReader.open(path)) {
+                return reader.readGraph();
+            }
+        }
+    }
+
+    public static OutputStream openOutput(Path path) throws IOException {
+        OutputStream os = Files.newOutputStream(path);
+        if (isCompressed(path.toString())) {
+            return new GZIPOutputStream(os, BUFFER_SIZE);
+        } else {
+            return new BufferedOutputStream(os, BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.kjarosh.agh.pp.graph.io;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads a graph in the JSON format one vertex or edge at a time,
+ * so that the whole file is never held in memory.
+ * <p>
+ * The format is an object with two arrays, {@code vertices}
+ * and {@code edges}, see {@link GraphWriter}.
+ *
+ * @author Kamil Jarosz
+ */
+public class GraphReader implements Closeable {
+    private static final ObjectReader vertexReader = Config.MAPPER.readerFor(Vertex.class);
+    private static final ObjectReader edgeReader = Config.MAPPER.readerFor(Edge.class);
+
+    private final JsonParser parser;
+
+    public GraphReader(InputStream is) throws IOException {
+        this.parser = Config.MAPPER.getFactory().createParser(is);
+    }
+
+    /**
+     * Opens a classpath resource or a file, see {@link GraphFiles#openInput(String)}.
+     */
+    public static GraphReader open(String path) throws IOException {
+        return new GraphReader(GraphFiles.openInput(path));
+    }
+
+    /**
+     * Reads vertices and edges in the order in which they appear in the file.
+     * Vertices or edges are skipped when their consumer is {@code null}.
+     * May be called only once.
+     */
+    public void read(Consumer<Vertex> vertexConsumer, Consumer<Edge> edgeConsumer) throws IOException {
+        expect(parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("vertices".equals(field) && token == JsonToken.START_ARRAY && vertexConsumer != null) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    vertexConsumer.accept(vertexReader.readValue(parser));
+                }
+            } else if ("edges".equals(field) && token == JsonToken.START_ARRAY && edgeConsumer != null) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    edgeConsumer.accept(edgeReader.readValue(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser.currentToken(), JsonToken.END_OBJECT);
+    }
+
+    /**
+     * Reads the whole graph. Edges which precede vertices in the file
+     * are added after all vertices have been read.
+     */
+    public Graph readGraph() throws IOException {
+        Graph graph = new Graph();
+        List<Edge> pendingEdges = new ArrayList<>();
+        boolean[] verticesRead = new boolean[]{false};
+        read(v -> {
+            verticesRead[0] = true;
+            graph.addVertex(v);
+        }, e -> {
+            if (verticesRead[0]) {
+                graph.addEdge(e);
+            } else {
+                pendingEdges.add(e);
+            }
+        });
+        pendingEdges.forEach(graph::addEdge);
+        return graph;
+    }
+
+    private void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Expected " + expected + " but got " + actual +
+                    " at " + parser.getCurrentLocation());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.kjarosh.agh.pp.graph.io;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Writes a graph in the JSON format one vertex or edge at a time,
+ * without indentation. Vertices are written before edges,
+ * so that the graph may be read by {@link GraphReader} in one pass.
+ *
+ * @author Kamil Jarosz
+ */
+public class GraphWriter implements Closeable {
+    private static final ObjectWriter writer = Config.MAPPER.writer()
+            .without(SerializationFeature.INDENT_OUTPUT)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private final JsonGenerator generator;
+
+    public GraphWriter(OutputStream os) throws IOException {
+        this.generator = Config.MAPPER.getFactory().createGenerator(os);
+    }
+
+    /**
+     * Opens a file, see {@link GraphFiles#openOutput(Path)}.
+     */
+    public static GraphWriter open(Path path) throws IOException {
+        return new GraphWriter(GraphFiles.openOutput(path));
+    }
+
+    public void write(Graph graph) throws IOException {
+        write(graph.allVertices(), graph.allEdges());
+    }
+
+    public void write(Iterable<Vertex> vertices, Iterable<Edge> edges) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("vertices");
+        for (Vertex vertex : vertices) {
+            writer.writeValue(generator, vertex);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("edges");
+        for (Edge edge : edges) {
+            writer.writeValue(generator, edge);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Flushes the written graph to the stream without closing it.
+     */
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
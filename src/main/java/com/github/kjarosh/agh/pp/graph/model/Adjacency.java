@@ -0,0 +1,215 @@
+package com.github.kjarosh.agh.pp.graph.model;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Edges adjacent to a vertex in one direction, stored as an array
+ * of handles of neighbours (see {@link VertexId#handle()}) and
+ * an array of the edges. Edges are shared between the adjacency
+ * of their source and destination, so that their permissions
+ * may be updated in place.
+ * <p>
+ * Reads are lock-free and operate on a consistent snapshot,
+ * writes are synchronized. Adding an edge appends it in place,
+ * which is invisible to existing snapshots, and removing
+ * an edge copies the arrays.
+ * <p>
+ * Neighbours of larger adjacencies are found using an open addressing
+ * table of their positions, so that looking up, adding and removing
+ * an edge of a hub vertex does not scan all its edges. The table is
+ * also updated in place when an edge is added, existing snapshots
+ * ignore positions beyond their size.
+ *
+ * @author Kamil Jarosz
+ */
+class Adjacency {
+    /**
+     * Adjacencies up to this size are scanned instead of using a table.
+     */
+    private static final int TABLE_THRESHOLD = 8;
+    private static final Snapshot EMPTY = new Snapshot(new int[0], new Edge[0], 0, null);
+
+    private volatile Snapshot snapshot = EMPTY;
+
+    int size() {
+        return snapshot.size;
+    }
+
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    Edge get(VertexId neighbour) {
+        Snapshot s = snapshot;
+        int index = s.indexOf(neighbour.handle());
+        return index >= 0 ? s.edges[index] : null;
+    }
+
+    /**
+     * Adds the edge unless an edge to the given neighbour exists.
+     *
+     * @return the existing edge, or {@code null} if the edge has been added
+     */
+    synchronized Edge putIfAbsent(VertexId neighbour, Edge edge) {
+        Snapshot s = snapshot;
+        int index = s.indexOf(neighbour.handle());
+        if (index >= 0) {
+            return s.edges[index];
+        }
+
+        int[] neighbours = s.neighbours;
+        Edge[] edges = s.edges;
+        if (s.size == neighbours.length) {
+            int capacity = Math.max(2, s.size + (s.size >> 1));
+            neighbours = Arrays.copyOf(neighbours, capacity);
+            edges = Arrays.copyOf(edges, capacity);
+        }
+        neighbours[s.size] = neighbour.handle();
+        edges[s.size] = edge;
+
+        int size = s.size + 1;
+        int[] table = s.table;
+        if (size <= TABLE_THRESHOLD) {
+            table = null;
+        } else if (table == null || size * 2 > table.length) {
+            table = buildTable(neighbours, size);
+        } else {
+            insert(table, neighbour.handle(), s.size);
+        }
+        snapshot = new Snapshot(neighbours, edges, size, table);
+        return null;
+    }
+
+    /**
+     * @return the removed edge, or {@code null} if there was no such edge
+     */
+    synchronized Edge remove(VertexId neighbour) {
+        Snapshot s = snapshot;
+        int index = s.indexOf(neighbour.handle());
+        if (index < 0) {
+            return null;
+        }
+
+        Edge removed = s.edges[index];
+        int[] neighbours = new int[s.size - 1];
+        Edge[] edges = new Edge[s.size - 1];
+        System.arraycopy(s.neighbours, 0, neighbours, 0, index);
+        System.arraycopy(s.neighbours, index + 1, neighbours, index, s.size - index - 1);
+        System.arraycopy(s.edges, 0, edges, 0, index);
+        System.arraycopy(s.edges, index + 1, edges, index, s.size - index - 1);
+        int size = s.size - 1;
+        snapshot = new Snapshot(neighbours, edges, size,
+                size <= TABLE_THRESHOLD ? null : buildTable(neighbours, size));
+        return removed;
+    }
+
+    private static int slot(int handle, int mask) {
+        int hash = handle * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * @return a table of positions of the given neighbours, filled
+     * at most to a quarter, so that it may grow in place to a half
+     */
+    private static int[] buildTable(int[] neighbours, int size) {
+        int[] table = new int[Integer.highestOneBit(size * 4 - 1) << 1];
+        for (int position = 0; position < size; ++position) {
+            insert(table, neighbours[position], position);
+        }
+        return table;
+    }
+
+    private static void insert(int[] table, int handle, int position) {
+        int mask = table.length - 1;
+        int slot = slot(handle, mask);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = position + 1;
+    }
+
+    /**
+     * @return a view of the current edges
+     */
+    EdgeView edges() {
+        return new EdgeView(snapshot);
+    }
+
+    static class Snapshot {
+        final int[] neighbours;
+        final Edge[] edges;
+        final int size;
+        /**
+         * Positions of neighbours plus one by their handles, zero marks
+         * an empty slot, {@code null} for small adjacencies.
+         */
+        final int[] table;
+
+        private Snapshot(int[] neighbours, Edge[] edges, int size, int[] table) {
+            this.neighbours = neighbours;
+            this.edges = edges;
+            this.size = size;
+            this.table = table;
+        }
+
+        private int indexOf(int handle) {
+            if (table == null) {
+                for (int i = 0; i < size; ++i) {
+                    if (neighbours[i] == handle) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            int mask = table.length - 1;
+            for (int slot = slot(handle, mask); ; slot = (slot + 1) & mask) {
+                int position = table[slot] - 1;
+                if (position < 0) {
+                    return -1;
+                }
+                if (position < size && neighbours[position] == handle) {
+                    return position;
+                }
+            }
+        }
+    }
+
+    static class EdgeView extends AbstractCollection<Edge> {
+        private final Snapshot snapshot;
+
+        private EdgeView(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Iterator<Edge> iterator() {
+            return new Iterator<>() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < snapshot.size;
+                }
+
+                @Override
+                public Edge next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return snapshot.edges[index++];
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return snapshot.size;
+        }
+    }
+}
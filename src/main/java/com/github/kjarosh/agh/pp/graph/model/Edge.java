@@ -6,6 +6,9 @@ import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
 /**
+ * An edge of the graph. Its permissions may be changed in place,
+ * see {@link Graph#setPermissions(EdgeId, Permissions)}.
+ *
  * @author Kamil Jarosz
  */
 @EqualsAndHashCode(exclude = "permissions")
@@ -16,7 +19,7 @@ public class Edge implements Comparable<Edge> {
     @JsonProperty("dst")
     private final VertexId dst;
     @JsonProperty("perms")
-    private final Permissions permissions;
+    private volatile Permissions permissions;
 
     public Edge(
             @JsonProperty("src") VertexId src,
@@ -45,14 +48,15 @@ public class Edge implements Comparable<Edge> {
         return permissions;
     }
 
+    void setPermissions(Permissions permissions) {
+        this.permissions = permissions != null ?
+                permissions : Permissions.NONE;
+    }
+
     @Override
     public int compareTo(Edge other) {
-        int cmp;
-        cmp = src.compareTo(other.src);
-        if (cmp != 0) return cmp;
-        cmp = dst.compareTo(other.dst);
+        int cmp = src.compareTo(other.src);
         if (cmp != 0) return cmp;
-
-        return permissions.compareTo(other.permissions);
+        return dst.compareTo(other.dst);
     }
 }
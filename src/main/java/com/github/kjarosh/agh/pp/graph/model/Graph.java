@@ -1,20 +1,22 @@
 package com.github.kjarosh.agh.pp.graph.model;
 
 import com.github.kjarosh.agh.pp.config.Config;
-import lombok.Getter;
-import lombok.Setter;
+import com.github.kjarosh.agh.pp.graph.io.GraphReader;
+import com.github.kjarosh.agh.pp.graph.io.GraphWriter;
 import lombok.SneakyThrows;
 
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,14 +25,24 @@ import static com.github.kjarosh.agh.pp.config.Config.ZONE_ID;
 /**
  * The local graph representation. It contains only the local portion of the
  * distributed graph. Thread-safe.
+ * <p>
+ * Edges are stored only in {@link Adjacency} lists of their source
+ * and destination, which share the {@link Edge} objects.
+ * <p>
+ * Traversals of the whole graph should use a {@link GraphSnapshot}
+ * instead, see {@link #snapshot(long)}.
  *
  * @author Kamil Jarosz
  */
 public class Graph {
     private final Map<VertexId, Vertex> vertices = new ConcurrentHashMap<>();
-    private final Map<EdgeId, Edge> edges = new ConcurrentHashMap<>();
-    private final Map<VertexId, Set<Edge>> edgesBySrc = new ConcurrentHashMap<>();
-    private final Map<VertexId, Set<Edge>> edgesByDst = new ConcurrentHashMap<>();
+    private final Map<VertexId, Adjacency> edgesBySrc = new ConcurrentHashMap<>();
+    private final Map<VertexId, Adjacency> edgesByDst = new ConcurrentHashMap<>();
+    private final AtomicInteger edgeCount = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong();
+    private volatile GraphSnapshot snapshot = null;
+    private final Lock snapshotLock = new ReentrantLock();
+    private final Collection<Edge> allEdges = new AllEdges();
 
     public Graph() {
 
@@ -38,16 +50,14 @@ public class Graph {
 
     @SneakyThrows
     public static Graph deserialize(InputStream serialized) {
-        Json value = Config.MAPPER.readValue(serialized, Json.class);
-        Graph graph = new Graph();
-        value.vertices.forEach(graph::addVertex);
-        value.edges.forEach(graph::addEdge);
-        return graph;
+        return new GraphReader(serialized).readGraph();
     }
 
     public void addVertex(Vertex v) {
         if (ZONE_ID == null || v.id().owner().equals(ZONE_ID)) {
-            vertices.putIfAbsent(v.id(), v);
+            if (vertices.putIfAbsent(v.id(), v) == null) {
+                version.incrementAndGet();
+            }
         } else {
             throw new IllegalStateException("Wrong vertex zone");
         }
@@ -58,7 +68,7 @@ public class Graph {
     }
 
     public boolean hasEdge(EdgeId edgeId) {
-        return edges.containsKey(edgeId);
+        return getEdge(edgeId) != null;
     }
 
     public Vertex getVertex(VertexId id) {
@@ -75,39 +85,115 @@ public class Graph {
             throw new IllegalStateException("No src or dst vertex: " + e);
         }
 
-        edges.put(e.id(), e);
-        edgesBySrc.computeIfAbsent(e.src(), i -> new ConcurrentSkipListSet<>()).add(e);
-        edgesByDst.computeIfAbsent(e.dst(), i -> new ConcurrentSkipListSet<>()).add(e);
+        Edge existing = edgesBySrc.computeIfAbsent(e.src(), i -> new Adjacency()).putIfAbsent(e.dst(), e);
+        if (existing != null) {
+            existing.setPermissions(e.permissions());
+        } else {
+            edgesByDst.computeIfAbsent(e.dst(), i -> new Adjacency()).putIfAbsent(e.src(), e);
+            edgeCount.incrementAndGet();
+        }
+        version.incrementAndGet();
     }
 
     public void removeEdge(Edge e) {
         if (e != null) {
-            edges.remove(e.id());
-            edgesBySrc.get(e.src()).remove(e);
-            edgesByDst.get(e.dst()).remove(e);
+            Adjacency bySrc = edgesBySrc.get(e.src());
+            if (bySrc != null && bySrc.remove(e.dst()) != null) {
+                // the reverse entry may be missing while the edge is being added
+                Adjacency byDst = edgesByDst.get(e.dst());
+                if (byDst != null) {
+                    byDst.remove(e.src());
+                }
+                edgeCount.decrementAndGet();
+            }
+            version.incrementAndGet();
         }
     }
 
     public Edge getEdge(EdgeId edgeId) {
-        return edges.get(edgeId);
+        Adjacency bySrc = edgesBySrc.get(edgeId.getFrom());
+        Adjacency byDst = edgesByDst.get(edgeId.getTo());
+        if (bySrc == null || byDst == null) {
+            return null;
+        }
+
+        // search the shorter list
+        return bySrc.size() <= byDst.size() ?
+                bySrc.get(edgeId.getTo()) :
+                byDst.get(edgeId.getFrom());
     }
 
+    /**
+     * Updates permissions of the edge in place, the edge
+     * is visible to concurrent readers all the time.
+     */
     public void setPermissions(EdgeId edgeId, Permissions permissions) {
         Edge edge = getEdge(edgeId);
         if (edge == null) {
             throw new IllegalStateException("Edge " + edgeId + " doesn't exist");
         }
 
-        removeEdge(edge);
-        addEdge(new Edge(edgeId.getFrom(), edgeId.getTo(), permissions));
+        edge.setPermissions(permissions);
+        version.incrementAndGet();
     }
 
-    public Set<Edge> getEdgesBySource(VertexId source) {
-        return edgesBySrc.getOrDefault(source, Collections.emptySet());
+    /**
+     * Returns an immutable snapshot of this graph. The snapshot is cached
+     * and rebuilt only when the graph has been modified since it was made.
+     */
+    public GraphSnapshot snapshot() {
+        return snapshot(0);
     }
 
-    public Set<Edge> getEdgesByDestination(VertexId destination) {
-        return edgesByDst.getOrDefault(destination, Collections.emptySet());
+    /**
+     * Returns an immutable snapshot of this graph, which may miss
+     * modifications made in the given time since it was made.
+     * When an outdated snapshot is being rebuilt by another thread,
+     * the previous snapshot is returned instead of waiting.
+     */
+    public GraphSnapshot snapshot(long maxAgeMillis) {
+        GraphSnapshot current = snapshot;
+        if (upToDate(current, maxAgeMillis)) {
+            return current;
+        }
+
+        if (current != null && maxAgeMillis > 0) {
+            if (!snapshotLock.tryLock()) {
+                return current;
+            }
+        } else {
+            snapshotLock.lock();
+        }
+
+        try {
+            current = snapshot;
+            if (!upToDate(current, maxAgeMillis)) {
+                current = GraphSnapshot.build(version.get(), vertices.keySet(), edgesBySrc);
+                snapshot = current;
+            }
+            return current;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private boolean upToDate(GraphSnapshot snapshot, long maxAgeMillis) {
+        return snapshot != null && (snapshot.version() == version.get() ||
+                System.currentTimeMillis() - snapshot.createdMillis() < maxAgeMillis);
+    }
+
+    public Collection<Edge> getEdgesBySource(VertexId source) {
+        Adjacency adjacency = edgesBySrc.get(source);
+        return adjacency != null ?
+                adjacency.edges() :
+                Collections.emptyList();
+    }
+
+    public Collection<Edge> getEdgesByDestination(VertexId destination) {
+        Adjacency adjacency = edgesByDst.get(destination);
+        return adjacency != null ?
+                adjacency.edges() :
+                Collections.emptyList();
     }
 
     public Collection<Vertex> allVertices() {
@@ -115,7 +201,7 @@ public class Graph {
     }
 
     public Collection<Edge> allEdges() {
-        return edges.values();
+        return allEdges;
     }
 
     public Collection<ZoneId> allZones() {
@@ -131,23 +217,33 @@ public class Graph {
                 .collect(Collectors.toUnmodifiableSet());
     }
 
+    /**
+     * Writes this graph to the stream, which is flushed but not closed.
+     */
     @SneakyThrows
     public void serialize(OutputStream os) {
-        Json json = new Json();
-        json.setEdges(new ArrayList<>(this.edges.values()));
-        json.setVertices(new ArrayList<>(this.vertices.values()));
-        Config.MAPPER.writeValue(os, json);
+        GraphWriter writer = new GraphWriter(os);
+        writer.write(this);
+        writer.flush();
     }
 
     @Override
     public String toString() {
-        return "Graph(" + edges.size() + " edges, " + vertices.size() + " vertices)";
+        return "Graph(" + edgeCount.get() + " edges, " + vertices.size() + " vertices)";
     }
 
-    @Getter
-    @Setter
-    private static class Json {
-        private List<Vertex> vertices;
-        private List<Edge> edges;
+    private class AllEdges extends AbstractCollection<Edge> {
+        @Override
+        public Iterator<Edge> iterator() {
+            return edgesBySrc.values()
+                    .stream()
+                    .flatMap(adjacency -> adjacency.edges().stream())
+                    .iterator();
+        }
+
+        @Override
+        public int size() {
+            return edgeCount.get();
+        }
     }
 }
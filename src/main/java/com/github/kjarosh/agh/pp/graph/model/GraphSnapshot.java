@@ -0,0 +1,211 @@
+package com.github.kjarosh.agh.pp.graph.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the local graph in the compressed sparse row
+ * format. Vertices are numbered densely from {@code 0} to {@code size() - 1},
+ * and edges of vertex {@code v} occupy positions from {@code outBegin(v)}
+ * (inclusive) to {@code outEnd(v)} (exclusive) of the out-edge arrays,
+ * analogously for in-edges.
+ * <p>
+ * Created by {@link Graph#snapshot()}.
+ *
+ * @author Kamil Jarosz
+ */
+public class GraphSnapshot {
+    private final long version;
+    private final long createdMillis = System.currentTimeMillis();
+    private final VertexId[] vertices;
+    private final int[] indexByHandle;
+
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final Permissions[] outPermissions;
+
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final Permissions[] inPermissions;
+
+    private GraphSnapshot(
+            long version,
+            VertexId[] vertices,
+            int[] indexByHandle,
+            int[] outOffsets,
+            int[] outTargets,
+            Permissions[] outPermissions,
+            int[] inOffsets,
+            int[] inSources,
+            Permissions[] inPermissions) {
+        this.version = version;
+        this.vertices = vertices;
+        this.indexByHandle = indexByHandle;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.outPermissions = outPermissions;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.inPermissions = inPermissions;
+    }
+
+    static GraphSnapshot build(
+            long version,
+            Collection<VertexId> localVertices,
+            Map<VertexId, Adjacency> edgesBySrc) {
+        List<VertexId> sources = new ArrayList<>(edgesBySrc.size());
+        List<Adjacency.Snapshot> adjacencies = new ArrayList<>(edgesBySrc.size());
+        edgesBySrc.forEach((src, adjacency) -> {
+            sources.add(src);
+            adjacencies.add(adjacency.snapshot());
+        });
+
+        // number the vertices
+        int maxHandle = -1;
+        for (VertexId id : localVertices) {
+            maxHandle = Math.max(maxHandle, id.handle());
+        }
+        for (int i = 0; i < sources.size(); ++i) {
+            maxHandle = Math.max(maxHandle, sources.get(i).handle());
+            Adjacency.Snapshot adjacency = adjacencies.get(i);
+            for (int j = 0; j < adjacency.size; ++j) {
+                maxHandle = Math.max(maxHandle, adjacency.neighbours[j]);
+            }
+        }
+
+        int[] indexByHandle = new int[maxHandle + 1];
+        Arrays.fill(indexByHandle, -1);
+        List<VertexId> vertices = new ArrayList<>();
+        for (VertexId id : localVertices) {
+            number(id.handle(), indexByHandle, vertices);
+        }
+        for (int i = 0; i < sources.size(); ++i) {
+            number(sources.get(i).handle(), indexByHandle, vertices);
+            Adjacency.Snapshot adjacency = adjacencies.get(i);
+            for (int j = 0; j < adjacency.size; ++j) {
+                number(adjacency.neighbours[j], indexByHandle, vertices);
+            }
+        }
+        int n = vertices.size();
+
+        // out-edges
+        int[] outOffsets = new int[n + 1];
+        for (int i = 0; i < sources.size(); ++i) {
+            outOffsets[indexByHandle[sources.get(i).handle()] + 1] = adjacencies.get(i).size;
+        }
+        for (int v = 0; v < n; ++v) {
+            outOffsets[v + 1] += outOffsets[v];
+        }
+        int m = outOffsets[n];
+        int[] outTargets = new int[m];
+        Permissions[] outPermissions = new Permissions[m];
+        int[] inOffsets = new int[n + 1];
+        for (int i = 0; i < sources.size(); ++i) {
+            int position = outOffsets[indexByHandle[sources.get(i).handle()]];
+            Adjacency.Snapshot adjacency = adjacencies.get(i);
+            for (int j = 0; j < adjacency.size; ++j) {
+                int target = indexByHandle[adjacency.neighbours[j]];
+                outTargets[position + j] = target;
+                outPermissions[position + j] = adjacency.edges[j].permissions();
+                ++inOffsets[target + 1];
+            }
+        }
+
+        // in-edges, the transposition of out-edges
+        for (int v = 0; v < n; ++v) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        int[] inSources = new int[m];
+        Permissions[] inPermissions = new Permissions[m];
+        int[] inPositions = Arrays.copyOf(inOffsets, n);
+        for (int v = 0; v < n; ++v) {
+            for (int e = outOffsets[v]; e < outOffsets[v + 1]; ++e) {
+                int position = inPositions[outTargets[e]]++;
+                inSources[position] = v;
+                inPermissions[position] = outPermissions[e];
+            }
+        }
+
+        return new GraphSnapshot(version, vertices.toArray(new VertexId[0]), indexByHandle,
+                outOffsets, outTargets, outPermissions, inOffsets, inSources, inPermissions);
+    }
+
+    private static void number(int handle, int[] indexByHandle, List<VertexId> vertices) {
+        if (indexByHandle[handle] < 0) {
+            indexByHandle[handle] = vertices.size();
+            vertices.add(VertexId.forHandle(handle));
+        }
+    }
+
+    /**
+     * @return the version of the graph this snapshot has been made of
+     */
+    public long version() {
+        return version;
+    }
+
+    public long createdMillis() {
+        return createdMillis;
+    }
+
+    public int size() {
+        return vertices.length;
+    }
+
+    public int edgeCount() {
+        return outTargets.length;
+    }
+
+    /**
+     * @return the index of the given vertex, or {@code -1}
+     * if it is not present in the snapshot
+     */
+    public int indexOf(VertexId id) {
+        int handle = id.handle();
+        return handle >= 0 && handle < indexByHandle.length ? indexByHandle[handle] : -1;
+    }
+
+    public VertexId vertex(int index) {
+        return vertices[index];
+    }
+
+    public int outBegin(int v) {
+        return outOffsets[v];
+    }
+
+    public int outEnd(int v) {
+        return outOffsets[v + 1];
+    }
+
+    public int outTarget(int e) {
+        return outTargets[e];
+    }
+
+    public Permissions outPermissions(int e) {
+        return outPermissions[e];
+    }
+
+    public int inBegin(int v) {
+        return inOffsets[v];
+    }
+
+    public int inEnd(int v) {
+        return inOffsets[v + 1];
+    }
+
+    public int inSource(int e) {
+        return inSources[e];
+    }
+
+    public Permissions inPermissions(int e) {
+        return inPermissions[e];
+    }
+
+    @Override
+    public String toString() {
+        return "GraphSnapshot(" + edgeCount() + " edges, " + size() + " vertices, version " + version + ")";
+    }
+}
@@ -2,29 +2,88 @@ package com.github.kjarosh.agh.pp.graph.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
-import lombok.EqualsAndHashCode;
 
 import java.util.Objects;
 import java.util.Random;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
+ * A set of {@link #BITS} permissions represented as a bit mask,
+ * serialized as a string of zeros and ones, the first permission
+ * being the most significant bit.
+ * <p>
+ * Instances are immutable. When the number of permissions is small,
+ * all possible values are interned, so that {@link #valueOf(String)}
+ * and {@link #combine(Permissions, Permissions)} do not allocate.
+ * The mask is a {@code long}, so that up to 64 permissions may be
+ * modeled by changing {@link #BITS}.
+ *
  * @author Kamil Jarosz
  */
-@EqualsAndHashCode
 public class Permissions implements Comparable<Permissions> {
-    public static final Permissions NONE = new Permissions("00000");
+    public static final int BITS = 5;
 
-    private final String value;
+    private static final int MAX_INTERNED_BITS = 10;
+    private static final long ALL = BITS == Long.SIZE ? -1L : (1L << BITS) - 1;
+    private static final Permissions[] interned = BITS <= MAX_INTERNED_BITS ? intern() : null;
 
-    @JsonCreator
+    public static final Permissions NONE = fromMask(0);
+
+    private final long mask;
+
+    /**
+     * Prefer {@link #valueOf(String)}, which returns interned instances.
+     */
     public Permissions(String value) {
-        this.value = Objects.requireNonNull(value);
+        this(parse(value));
+    }
+
+    private Permissions(long mask) {
+        this.mask = mask;
+    }
+
+    private static Permissions[] intern() {
+        Permissions[] values = new Permissions[1 << BITS];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = new Permissions(i);
+        }
+        return values;
+    }
+
+    private static long parse(String value) {
+        Objects.requireNonNull(value);
+        if (value.length() != BITS) {
+            throw new IllegalArgumentException();
+        }
+
+        long mask = 0;
+        for (int i = 0; i < BITS; ++i) {
+            char c = value.charAt(i);
+            if (c == '1') {
+                mask = (mask << 1) | 1;
+            } else if (c == '0') {
+                mask <<= 1;
+            } else {
+                throw new IllegalArgumentException();
+            }
+        }
+        return mask;
+    }
 
-        if (!value.matches("[01]{5}")) {
+    @JsonCreator
+    public static Permissions valueOf(String value) {
+        return fromMask(parse(value));
+    }
+
+    /**
+     * Creates permissions from a bit mask, the first permission
+     * is the most significant bit.
+     */
+    public static Permissions fromMask(long mask) {
+        if ((mask & ~ALL) != 0) {
             throw new IllegalArgumentException();
         }
+
+        return interned != null ? interned[(int) mask] : new Permissions(mask);
     }
 
     public static Permissions combine(Permissions a, Permissions b) {
@@ -32,11 +91,15 @@ public class Permissions implements Comparable<Permissions> {
         return a.combine(b);
     }
 
+    /**
+     * Draws each permission in order, as seeded graphs depend on the draws.
+     */
     public static Permissions random(Random random) {
-        return new Permissions(IntStream.range(0, 5)
-                .map(x -> random.nextBoolean() ? 1 : 0)
-                .mapToObj(Integer::toString)
-                .collect(Collectors.joining()));
+        long mask = 0;
+        for (int i = 0; i < BITS; ++i) {
+            mask = (mask << 1) | (random.nextBoolean() ? 1 : 0);
+        }
+        return fromMask(mask);
     }
 
     private Permissions combine(Permissions other) {
@@ -44,25 +107,39 @@ public class Permissions implements Comparable<Permissions> {
             return this;
         }
 
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < 5; ++i) {
-            if (other.value.charAt(i) == '1' ||
-                    value.charAt(i) == '1') {
-                result.append(1);
-            } else {
-                result.append(0);
-            }
-        }
-        return new Permissions(result.toString());
+        return fromMask(mask | other.mask);
+    }
+
+    /**
+     * @see #fromMask(long)
+     */
+    public long mask() {
+        return mask;
     }
 
     @JsonValue
     public String toString() {
-        return value;
+        char[] value = new char[BITS];
+        for (int i = 0; i < BITS; ++i) {
+            value[i] = (mask & (1L << (BITS - 1 - i))) != 0 ? '1' : '0';
+        }
+        return new String(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return mask == ((Permissions) o).mask;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(mask);
     }
 
     @Override
     public int compareTo(Permissions o) {
-        return value.compareTo(o.value);
+        return Long.compareUnsigned(mask, o.mask);
     }
 }
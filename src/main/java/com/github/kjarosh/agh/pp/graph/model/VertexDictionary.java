@@ -0,0 +1,45 @@
+package com.github.kjarosh.agh.pp.graph.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps vertex identifiers to their canonical {@link VertexId}
+ * instances and dense int handles. Lookups are lock-free,
+ * only interning a new vertex takes a lock.
+ *
+ * @author Kamil Jarosz
+ */
+class VertexDictionary {
+    private final Map<String, VertexId> byString = new ConcurrentHashMap<>();
+    private volatile VertexId[] byHandle = new VertexId[1024];
+    private int size = 0;
+
+    VertexId get(String string) {
+        return byString.get(string);
+    }
+
+    VertexId get(int handle) {
+        return byHandle[handle];
+    }
+
+    synchronized VertexId intern(ZoneId owner, String name, String string) {
+        VertexId existing = byString.get(string);
+        if (existing != null) {
+            return existing;
+        }
+
+        int handle = size++;
+        VertexId id = new VertexId(owner, name, string, handle);
+        VertexId[] array = byHandle;
+        if (handle >= array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[handle] = id;
+        // publish the handle before the identifier
+        byHandle = array;
+        byString.put(string, id);
+        return id;
+    }
+}
@@ -2,29 +2,84 @@ package com.github.kjarosh.agh.pp.graph.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
-import lombok.EqualsAndHashCode;
 
 /**
+ * Vertex identifiers are interned in the {@link VertexDictionary},
+ * there is exactly one instance for each vertex, see {@link #of(String)}.
+ * Each vertex is also assigned a dense int handle, which may be used
+ * instead of the identifier in internal data structures.
+ * <p>
+ * Identifiers given by clients in queries are not interned, as the
+ * dictionary never shrinks, see {@link #lookup(String)}.
+ *
  * @author Kamil Jarosz
  */
-@EqualsAndHashCode
 public class VertexId implements Comparable<VertexId> {
+    private static final VertexDictionary dictionary = new VertexDictionary();
+    private static final int NO_HANDLE = -1;
+
     private final ZoneId owner;
     private final String name;
+    private final String string;
+    private final int handle;
+    private final int hash;
+
+    VertexId(ZoneId owner, String name, String string, int handle) {
+        this.owner = owner;
+        this.name = name;
+        this.string = string;
+        this.handle = handle;
+        this.hash = string.hashCode();
+    }
 
     @JsonCreator
-    public VertexId(String string) {
+    public static VertexId of(String string) {
+        VertexId id = dictionary.get(string);
+        if (id != null) {
+            return id;
+        }
+
         String[] split = string.split(":", 2);
         if (split.length != 2) {
             throw new IllegalStateException("Invalid id string: " + string);
         }
-        this.owner = new ZoneId(split[0]);
-        this.name = split[1];
+        return dictionary.intern(ZoneId.of(split[0]), split[1], string);
     }
 
-    public VertexId(ZoneId owner, String name) {
-        this.owner = owner;
-        this.name = name;
+    /**
+     * Returns the identifier without interning it when it is unknown.
+     * Vertices known to this zone are interned, so an unknown identifier
+     * is equal to no vertex. It has no handle and must not be stored.
+     */
+    public static VertexId lookup(String string) {
+        VertexId id = dictionary.get(string);
+        if (id != null) {
+            return id;
+        }
+
+        String[] split = string.split(":", 2);
+        if (split.length != 2) {
+            throw new IllegalStateException("Invalid id string: " + string);
+        }
+        return new VertexId(ZoneId.lookup(split[0]), split[1], string, NO_HANDLE);
+    }
+
+    public static VertexId of(ZoneId owner, String name) {
+        String string = owner + ":" + name;
+        VertexId id = dictionary.get(string);
+        if (id != null) {
+            return id;
+        }
+
+        return dictionary.intern(owner, name, string);
+    }
+
+    /**
+     * @return the vertex with the given handle
+     * @see #handle()
+     */
+    public static VertexId forHandle(int handle) {
+        return dictionary.get(handle);
     }
 
     public String name() {
@@ -35,10 +90,32 @@ public class VertexId implements Comparable<VertexId> {
         return owner;
     }
 
+    /**
+     * @return a dense, non-negative int identifying this vertex
+     * within this process, negative when not interned
+     */
+    public int handle() {
+        return handle;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        VertexId other = (VertexId) o;
+        return handle == other.handle &&
+                (handle != NO_HANDLE || string.equals(other.string));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     @JsonValue
     @Override
     public String toString() {
-        return owner + ":" + name();
+        return string;
     }
 
     @Override
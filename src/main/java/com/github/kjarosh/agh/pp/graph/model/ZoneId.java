@@ -2,20 +2,46 @@ package com.github.kjarosh.agh.pp.graph.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
-import lombok.EqualsAndHashCode;
 
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Zone identifiers are interned, there is exactly one
+ * instance for each zone, see {@link #of(String)}.
+ *
  * @author Kamil Jarosz
  */
-@EqualsAndHashCode
 public class ZoneId implements Comparable<ZoneId> {
+    private static final Map<String, ZoneId> interned = new ConcurrentHashMap<>();
+
     private final String id;
+    private final int hash;
+
+    private ZoneId(String id) {
+        this.id = id;
+        this.hash = id.hashCode();
+    }
 
     @JsonCreator
-    public ZoneId(String id) {
-        this.id = Objects.requireNonNull(id);
+    public static ZoneId of(String id) {
+        Objects.requireNonNull(id);
+        ZoneId zone = interned.get(id);
+        if (zone != null) {
+            return zone;
+        }
+
+        return interned.computeIfAbsent(id, ZoneId::new);
+    }
+
+    /**
+     * Returns the zone without interning it when it is unknown.
+     */
+    public static ZoneId lookup(String id) {
+        Objects.requireNonNull(id);
+        ZoneId zone = interned.get(id);
+        return zone != null ? zone : new ZoneId(id);
     }
 
     @JsonValue
@@ -23,6 +49,18 @@ public class ZoneId implements Comparable<ZoneId> {
         return id;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return id.equals(((ZoneId) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     @Override
     public String toString() {
         return getId();
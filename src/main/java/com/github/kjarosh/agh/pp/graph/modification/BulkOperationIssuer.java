@@ -82,11 +82,11 @@ public class BulkOperationIssuer implements OperationIssuer {
     @Override
     public void addEdges(ZoneId zone, BulkEdgeCreationRequestDto bulkRequest) {
         bulkRequest.getEdges().forEach(e -> {
-            VertexId from = new VertexId(bulkRequest.getSourceZone(), e.getFromName());
-            VertexId to = new VertexId(bulkRequest.getDestinationZone(), e.getToName());
+            VertexId from = VertexId.of(bulkRequest.getSourceZone(), e.getFromName());
+            VertexId to = VertexId.of(bulkRequest.getDestinationZone(), e.getToName());
             addEdge(zone,
                     new EdgeId(from, to),
-                    new Permissions(e.getPermissions()),
+                    Permissions.valueOf(e.getPermissions()),
                     e.getTrace());
         });
     }
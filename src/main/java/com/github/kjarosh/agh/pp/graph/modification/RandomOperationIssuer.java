@@ -28,7 +28,7 @@ public class RandomOperationIssuer {
 
     // config
     private double permissionsProbability = 0.8;
-    private OperationIssuer operationIssuer = new ZoneClient();
+    private OperationIssuer operationIssuer = ZoneClient.getInstance();
 
     public RandomOperationIssuer(Graph graph) {
         this(new Random(), graph);
@@ -0,0 +1,87 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesDto;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers each sequenced bulk of events at most once, so that bulks which
+ * are sent again by an {@link Outbox}, e.g. after a timeout, are not
+ * processed twice.
+ * <p>
+ * A lane of the sender has at most one bulk in flight and sends it again
+ * until it is delivered, so it is enough to remember the last delivered
+ * sequence of each lane. A bulk of a new epoch, i.e. of a restarted sender,
+ * starts the sequence over. Bulks of older epochs and bulks which are not
+ * sequenced are delivered without deduplication. Delivered sequences are
+ * not persistent.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+@Service
+public class BulkDeduplicator {
+    private final ConcurrentMap<LaneKey, LaneState> lanes = new ConcurrentHashMap<>();
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * Delivers the bulk unless it has already been delivered. The bulk
+     * is marked as delivered only when the delivery succeeds.
+     *
+     * @return {@code false} when the bulk is a duplicate
+     */
+    public boolean deliver(BulkMessagesDto bulk, Runnable delivery) {
+        if (bulk.getSender() == null || bulk.getSequence() <= 0) {
+            delivery.run();
+            return true;
+        }
+
+        LaneState state = lanes.computeIfAbsent(new LaneKey(bulk.getSender(), bulk.getLane()), k -> new LaneState());
+        // bulks of a lane are not sent concurrently, except for a retry
+        // racing with the original request, which has to wait here
+        synchronized (state) {
+            if (bulk.getEpoch() < state.epoch) {
+                delivery.run();
+                return true;
+            }
+
+            if (bulk.getEpoch() == state.epoch && bulk.getSequence() <= state.sequence) {
+                duplicates.increment();
+                log.debug("Dropping duplicate bulk {} of {} lane {}",
+                        bulk.getSequence(), bulk.getSender(), bulk.getLane());
+                return false;
+            }
+
+            delivery.run();
+            state.epoch = bulk.getEpoch();
+            state.sequence = bulk.getSequence();
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of duplicate bulks which have been dropped
+     */
+    public long duplicates() {
+        return duplicates.sum();
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class LaneKey {
+        private final ZoneId zone;
+        private final int lane;
+    }
+
+    private static class LaneState {
+        private long epoch = Long.MIN_VALUE;
+        private long sequence = 0;
+    }
+}
@@ -0,0 +1,341 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointBarrier;
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.EdgeId;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.rest.client.ZoneClient;
+import com.github.kjarosh.agh.pp.rest.dto.BulkIndexExchangeDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the index of a freshly loaded graph in bulk, instead of
+ * propagating an event for each edge.
+ * <p>
+ * While propagation is suspended, added edges and changed permissions
+ * are only recorded, see {@link com.github.kjarosh.agh.pp.graph.GraphModifier}.
+ * The index is then built by all zones in rounds, coordinated by
+ * {@link #build(Collection)}. In each round, every vertex sends
+ * the effective vertices it has gained in the previous round to its
+ * neighbours, i.e. effective children to its parents and effective
+ * parents to its children. In the first round vertices send themselves
+ * and all effective vertices they already have. Vertices sent to other
+ * zones are exchanged in bulk once per round, and the build is finished
+ * when no zone has sent anything in a round, i.e. after as many rounds
+ * as the longest path in the graph.
+ * <p>
+ * Only vertices and edges may be added and permissions changed while
+ * the index is being built, other modifications are rejected, see
+ * {@link com.github.kjarosh.agh.pp.graph.GraphModifier}. Each vertex
+ * is updated in a shared section of the {@link CheckpointBarrier},
+ * so that a checkpoint never captures a partially updated index.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+@Service
+public class BulkIndexBuilder {
+    /**
+     * Maximum number of effective vertices sent to a zone in a request.
+     */
+    private static final int EXCHANGE_SIZE = 50_000;
+
+    private volatile boolean suspended = false;
+    /**
+     * Effective vertices received for each round, zones may send them
+     * before this zone has started the round in which they are sent.
+     * Cleared before a build, as a failed build may leave some behind.
+     */
+    private final ConcurrentMap<Integer, Received> received = new ConcurrentHashMap<>();
+
+    @Autowired
+    private GraphLoader graphLoader;
+
+    @Autowired
+    private CheckpointBarrier barrier;
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    public void suspend() {
+        log.info("Suspending propagation of the index");
+        suspended = true;
+    }
+
+    public void resume() {
+        log.info("Resuming propagation of the index");
+        suspended = false;
+    }
+
+    /**
+     * Drops effective vertices received in previous builds.
+     */
+    public synchronized void reset() {
+        log.debug("Resetting bulk index build");
+        received.clear();
+    }
+
+    /**
+     * Saves effective vertices sent by another zone for the next round.
+     */
+    public void receive(BulkIndexExchangeDto exchange) {
+        Received next = received(exchange.getRound() + 1);
+        next.add(next.children, exchange.getChildren());
+        next.add(next.parents, exchange.getParents());
+    }
+
+    private Received received(int round) {
+        return received.computeIfAbsent(round, r -> new Received());
+    }
+
+    /**
+     * Performs a round of building the index in this zone.
+     *
+     * @return the number of effective vertices which have been sent
+     */
+    public synchronized long step(int round) {
+        received.keySet().removeIf(r -> r < round);
+        Received current = received.remove(round);
+        Sender sender = new Sender(round);
+        Graph graph = graphLoader.getGraph();
+        if (round == 0) {
+            graph.allVertices()
+                    .parallelStream()
+                    .map(Vertex::id)
+                    .forEach(id -> barrier.shared(() -> seed(graph, sender, id)));
+        } else {
+            if (current == null) {
+                return sender.flush();
+            }
+
+            Set<VertexId> recipients = new HashSet<>(current.children.keySet());
+            recipients.addAll(current.parents.keySet());
+            recipients.parallelStream()
+                    .forEach(id -> barrier.shared(() -> apply(graph, sender, current, id)));
+        }
+        return sender.flush();
+    }
+
+    private void seed(Graph graph, Sender sender, VertexId id) {
+        VertexIndex index = graph.getVertex(id).index();
+        index.pin();
+        try {
+            Set<VertexId> children = new HashSet<>(index.getEffectiveChildren().keySet());
+            children.add(id);
+            sendChildren(graph, sender, id, children);
+
+            Set<VertexId> parents = new HashSet<>(index.getEffectiveParents().keySet());
+            parents.add(id);
+            sendParents(graph, sender, id, parents);
+        } finally {
+            index.unpin();
+        }
+    }
+
+    private void apply(Graph graph, Sender sender, Received current, VertexId id) {
+        VertexIndex index = graph.getVertex(id).index();
+        index.pin();
+        try {
+            Set<VertexId> addedChildren = new HashSet<>();
+            current.children.getOrDefault(id, Map.of()).forEach((child, subjects) -> {
+                Edge edge = graph.getEdge(EdgeId.of(child, id));
+                Permissions permissions = edge != null ? edge.permissions() : null;
+                for (VertexId subjectId : subjects) {
+                    EffectiveVertex effectiveVertex = index.getOrAddEffectiveChild(subjectId, () -> addedChildren.add(subjectId));
+                    effectiveVertex.addIntermediateVertex(child, () -> {});
+                    effectiveVertex.recalculatePermissions(child, permissions);
+                }
+            });
+
+            Set<VertexId> addedParents = new HashSet<>();
+            current.parents.getOrDefault(id, Map.of()).forEach((parent, subjects) -> {
+                for (VertexId subjectId : subjects) {
+                    EffectiveVertex effectiveVertex = index.getOrAddEffectiveParent(subjectId, () -> addedParents.add(subjectId));
+                    effectiveVertex.addIntermediateVertex(parent, () -> {});
+                }
+            });
+
+            if (!addedChildren.isEmpty()) {
+                sendChildren(graph, sender, id, addedChildren);
+            }
+            if (!addedParents.isEmpty()) {
+                sendParents(graph, sender, id, addedParents);
+            }
+        } finally {
+            index.unpin();
+        }
+    }
+
+    private void sendChildren(Graph graph, Sender sender, VertexId id, Set<VertexId> children) {
+        for (Edge edge : graph.getEdgesBySource(id)) {
+            sender.send(true, edge.dst(), id, children);
+        }
+    }
+
+    private void sendParents(Graph graph, Sender sender, VertexId id, Set<VertexId> parents) {
+        for (Edge edge : graph.getEdgesByDestination(id)) {
+            sender.send(false, edge.src(), id, parents);
+        }
+    }
+
+    /**
+     * Builds the index in all given zones, this zone coordinates the build.
+     *
+     * @return the number of rounds
+     */
+    public int build(Collection<ZoneId> zones) {
+        log.info("Building index in bulk: {}", zones);
+        Instant start = Instant.now();
+        // all zones are reset before any of them starts the first round,
+        // as zones which have already started it may send effective vertices
+        List<CompletableFuture<Void>> resets = new ArrayList<>();
+        for (ZoneId zone : zones) {
+            if (!zone.equals(Config.ZONE_ID)) {
+                resets.add(ZoneClient.getInstance().resetBulkIndexAsync(zone));
+            }
+        }
+        if (zones.contains(Config.ZONE_ID)) {
+            reset();
+        }
+        resets.forEach(ZoneClient::await);
+
+        int round = 0;
+        while (true) {
+            Map<ZoneId, CompletableFuture<Long>> futures = new HashMap<>();
+            for (ZoneId zone : zones) {
+                if (!zone.equals(Config.ZONE_ID)) {
+                    futures.put(zone, ZoneClient.getInstance().bulkIndexStepAsync(zone, round));
+                }
+            }
+
+            long sent = zones.contains(Config.ZONE_ID) ? step(round) : 0;
+            for (CompletableFuture<Long> future : futures.values()) {
+                sent += ZoneClient.await(future);
+            }
+
+            log.debug("Round {} of building index: {} effective vertices sent", round, sent);
+            if (sent == 0) {
+                break;
+            }
+            ++round;
+        }
+
+        log.info("Index built in bulk in {}, {} rounds", Duration.between(start, Instant.now()), round);
+        return round;
+    }
+
+    /**
+     * Effective vertices sent to local vertices, by the recipient and by the sender.
+     */
+    private static class Received {
+        private final ConcurrentMap<VertexId, ConcurrentMap<VertexId, Set<VertexId>>> children = new ConcurrentHashMap<>();
+        private final ConcurrentMap<VertexId, ConcurrentMap<VertexId, Set<VertexId>>> parents = new ConcurrentHashMap<>();
+
+        private static void add(
+                ConcurrentMap<VertexId, ConcurrentMap<VertexId, Set<VertexId>>> vertices,
+                VertexId recipient,
+                VertexId sender,
+                Collection<VertexId> subjects) {
+            vertices.computeIfAbsent(recipient, r -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(sender, s -> ConcurrentHashMap.newKeySet())
+                    .addAll(subjects);
+        }
+
+        private void add(
+                ConcurrentMap<VertexId, ConcurrentMap<VertexId, Set<VertexId>>> vertices,
+                Map<String, Map<String, List<String>>> exchanged) {
+            exchanged.forEach((recipient, bySender) -> bySender.forEach((sender, subjects) -> {
+                List<VertexId> ids = new ArrayList<>(subjects.size());
+                subjects.forEach(subject -> ids.add(VertexId.of(subject)));
+                add(vertices, VertexId.of(recipient), VertexId.of(sender), ids);
+            }));
+        }
+    }
+
+    /**
+     * Sends effective vertices of a round, saving the ones sent
+     * to local vertices and sending the others when flushed.
+     */
+    private class Sender {
+        private final int round;
+        private final ConcurrentMap<ZoneId, Received> remote = new ConcurrentHashMap<>();
+        private final AtomicLong sent = new AtomicLong();
+
+        private Sender(int round) {
+            this.round = round;
+        }
+
+        private void send(boolean children, VertexId recipient, VertexId sender, Set<VertexId> subjects) {
+            ZoneId zone = recipient.owner();
+            Received target = zone.equals(Config.ZONE_ID) ? received(round + 1) :
+                    remote.computeIfAbsent(zone, z -> new Received());
+            Received.add(children ? target.children : target.parents, recipient, sender, subjects);
+            sent.addAndGet(subjects.size());
+        }
+
+        private long flush() {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            remote.forEach((zone, vertices) -> {
+                for (BulkIndexExchangeDto exchange : split(vertices)) {
+                    futures.add(ZoneClient.getInstance().postBulkIndexExchangeAsync(zone, exchange));
+                }
+            });
+            futures.forEach(ZoneClient::await);
+            return sent.get();
+        }
+
+        private List<BulkIndexExchangeDto> split(Received vertices) {
+            List<BulkIndexExchangeDto> exchanges = new ArrayList<>();
+            BulkIndexExchangeDto[] exchange = {newExchange(exchanges)};
+            int[] size = {0};
+            for (boolean children : new boolean[]{true, false}) {
+                (children ? vertices.children : vertices.parents).forEach((recipient, bySender) ->
+                        bySender.forEach((sender, subjects) -> {
+                            if (size[0] >= EXCHANGE_SIZE) {
+                                exchange[0] = newExchange(exchanges);
+                                size[0] = 0;
+                            }
+
+                            List<String> ids = new ArrayList<>(subjects.size());
+                            subjects.forEach(subject -> ids.add(subject.toString()));
+                            (children ? exchange[0].getChildren() : exchange[0].getParents())
+                                    .computeIfAbsent(recipient.toString(), r -> new HashMap<>())
+                                    .put(sender.toString(), ids);
+                            size[0] += ids.size();
+                        }));
+            }
+            return exchanges;
+        }
+
+        private BulkIndexExchangeDto newExchange(List<BulkIndexExchangeDto> exchanges) {
+            BulkIndexExchangeDto exchange = BulkIndexExchangeDto.builder()
+                    .round(round)
+                    .build();
+            exchanges.add(exchange);
+            return exchange;
+        }
+    }
+}
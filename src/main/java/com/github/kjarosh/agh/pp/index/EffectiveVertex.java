@@ -2,36 +2,82 @@ package com.github.kjarosh.agh.pp.index;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointInput;
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointOutput;
 import com.github.kjarosh.agh.pp.graph.model.Permissions;
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
+ * Effective permissions are maintained incrementally. Each intermediate
+ * vertex contributes permissions of its edge to the owner of the index,
+ * and the number of intermediate vertices granting each permission
+ * is counted, so that updates take constant time.
+ * <p>
+ * The vertex is dirty when the edge from some intermediate vertex
+ * was missing the last time its permissions were recalculated.
+ * <p>
+ * Intermediate vertices are stored as a sorted array of their handles,
+ * see {@link VertexId#handle()}.
+ *
  * @author Kamil Jarosz
  */
-@Getter
-@Setter
 @NoArgsConstructor
-@AllArgsConstructor
-@Builder
 public class EffectiveVertex {
+    private static final int[] NO_INTERMEDIATE_VERTICES = new int[0];
+    private static final Permissions[] NO_PERMISSIONS = new Permissions[0];
+    /**
+     * Marks intermediate vertices whose edge is missing, compared by identity.
+     */
+    private static final Permissions MISSING = new Permissions(Permissions.NONE.toString());
+
+    private static final byte PERMISSIONS_UNKNOWN = 0;
+    private static final byte PERMISSIONS_MISSING = 1;
+    private static final byte PERMISSIONS_PRESENT = 2;
+
+    @Getter
     @JsonProperty("dirty")
     private boolean dirty = false;
+    @Getter
     @JsonProperty("effectivePermissions")
     private Permissions effectivePermissions = Permissions.NONE;
+
+    private int[] intermediateVertices = NO_INTERMEDIATE_VERTICES;
+    /**
+     * Permissions contributed by intermediate vertices,
+     * {@code null} when not calculated yet.
+     */
+    private Permissions[] intermediatePermissions = NO_PERMISSIONS;
+    private int size = 0;
+    /**
+     * Number of intermediate vertices granting each permission,
+     * allocated when permissions are calculated for the first time.
+     */
+    private int[] permissionCounts = null;
+    private int missingPermissions = 0;
+
     @JsonProperty("intermediateVertices")
-    private Set<VertexId> intermediateVertices = new HashSet<>();
+    public Set<VertexId> getIntermediateVertices() {
+        int[] handles = intermediateVertices;
+        int count = Math.min(size, handles.length);
+        Set<VertexId> ids = new HashSet<>();
+        for (int i = 0; i < count; ++i) {
+            ids.add(VertexId.forHandle(handles[i]));
+        }
+        return ids;
+    }
+
+    @JsonIgnore
+    public boolean hasIntermediateVertices() {
+        return size > 0;
+    }
 
     @JsonIgnore
     public void addIntermediateVertex(VertexId id, Runnable modifyListener) {
@@ -40,8 +86,16 @@ public class EffectiveVertex {
 
     @JsonIgnore
     public void addIntermediateVertices(Set<VertexId> ids, Runnable modifyListener) {
-        if (!intermediateVertices.containsAll(ids)) {
-            intermediateVertices.addAll(ids);
+        boolean modified = false;
+        for (VertexId id : ids) {
+            int index = indexOf(id.handle());
+            if (index < 0) {
+                insert(-index - 1, id.handle());
+                modified = true;
+            }
+        }
+
+        if (modified) {
             modifyListener.run();
         }
     }
@@ -53,23 +107,39 @@ public class EffectiveVertex {
 
     @JsonIgnore
     public void removeIntermediateVertices(Set<VertexId> ids, Runnable modifyListener) {
-        if (intermediateVertices.removeAll(ids)) {
+        boolean modified = false;
+        for (VertexId id : ids) {
+            int index = indexOf(id.handle());
+            if (index >= 0) {
+                setPermissions(index, null);
+                remove(index);
+                modified = true;
+            }
+        }
+
+        if (modified) {
+            updateEffectivePermissions();
             modifyListener.run();
         }
     }
 
+    /**
+     * Updates permissions contributed by the given intermediate vertex.
+     *
+     * @param permissions permissions of the edge from the intermediate
+     *                    vertex, {@code null} when the edge is missing
+     */
     @JsonIgnore
-    public RecalculationResult recalculatePermissions(Set<Edge> edgesToCalculate) {
-        Set<VertexId> intermediateVertices = getIntermediateVertices();
-        List<Permissions> perms = edgesToCalculate.stream()
-                .filter(x -> intermediateVertices.contains(x.src()))
-                .map(Edge::permissions)
-                .collect(Collectors.toList());
-
-        setEffectivePermissions(perms.stream()
-                .reduce(Permissions.NONE, Permissions::combine));
+    public RecalculationResult recalculatePermissions(VertexId intermediateVertex, Permissions permissions) {
+        int index = indexOf(intermediateVertex.handle());
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, intermediateVertex.handle());
+        }
+        setPermissions(index, permissions != null ? permissions : MISSING);
+        updateEffectivePermissions();
 
-        if (perms.size() != intermediateVertices.size()) {
+        if (missingPermissions > 0) {
             dirty = true;
             return RecalculationResult.DIRTY;
         } else if (dirty) {
@@ -80,10 +150,142 @@ public class EffectiveVertex {
         }
     }
 
+    /**
+     * @return a copy of this vertex, which is not affected by its later changes
+     */
+    public EffectiveVertex copy() {
+        EffectiveVertex copy = new EffectiveVertex();
+        copy.dirty = dirty;
+        copy.effectivePermissions = effectivePermissions;
+        copy.intermediateVertices = Arrays.copyOf(intermediateVertices, size);
+        copy.intermediatePermissions = Arrays.copyOf(intermediatePermissions, size);
+        copy.size = size;
+        copy.permissionCounts = permissionCounts != null ? permissionCounts.clone() : null;
+        copy.missingPermissions = missingPermissions;
+        return copy;
+    }
+
+    /**
+     * Writes this vertex to a checkpoint, see {@link #decode(CheckpointInput)}.
+     */
+    public void encode(CheckpointOutput out) throws IOException {
+        out.writeBoolean(dirty);
+        out.writeVarInt(size);
+        for (int i = 0; i < size; ++i) {
+            out.writeVertexId(VertexId.forHandle(intermediateVertices[i]));
+            Permissions permissions = intermediatePermissions[i];
+            if (permissions == null) {
+                out.writeByte(PERMISSIONS_UNKNOWN);
+            } else if (permissions == MISSING) {
+                out.writeByte(PERMISSIONS_MISSING);
+            } else {
+                out.writeByte(PERMISSIONS_PRESENT);
+                out.writePermissions(permissions);
+            }
+        }
+    }
+
+    public static EffectiveVertex decode(CheckpointInput in) throws IOException {
+        EffectiveVertex effectiveVertex = new EffectiveVertex();
+        boolean dirty = in.readBoolean();
+        int count = in.readVarInt();
+        for (int i = 0; i < count; ++i) {
+            int handle = in.readVertexId().handle();
+            int index = effectiveVertex.indexOf(handle);
+            if (index < 0) {
+                index = -index - 1;
+                effectiveVertex.insert(index, handle);
+            }
+
+            byte state = in.readByte();
+            if (state == PERMISSIONS_MISSING) {
+                effectiveVertex.setPermissions(index, MISSING);
+            } else if (state == PERMISSIONS_PRESENT) {
+                effectiveVertex.setPermissions(index, in.readPermissions());
+            } else if (state != PERMISSIONS_UNKNOWN) {
+                throw new IOException("Invalid permissions state: " + state);
+            }
+        }
+        effectiveVertex.updateEffectivePermissions();
+        effectiveVertex.dirty = dirty;
+        return effectiveVertex;
+    }
+
+    private int indexOf(int handle) {
+        return Arrays.binarySearch(intermediateVertices, 0, size, handle);
+    }
+
+    private void insert(int index, int handle) {
+        if (size == intermediateVertices.length) {
+            int capacity = Math.max(2, size * 2);
+            intermediateVertices = Arrays.copyOf(intermediateVertices, capacity);
+            intermediatePermissions = Arrays.copyOf(intermediatePermissions, capacity);
+        }
+
+        System.arraycopy(intermediateVertices, index, intermediateVertices, index + 1, size - index);
+        System.arraycopy(intermediatePermissions, index, intermediatePermissions, index + 1, size - index);
+        intermediateVertices[index] = handle;
+        intermediatePermissions[index] = null;
+        ++size;
+    }
+
+    private void remove(int index) {
+        System.arraycopy(intermediateVertices, index + 1, intermediateVertices, index, size - index - 1);
+        System.arraycopy(intermediatePermissions, index + 1, intermediatePermissions, index, size - index - 1);
+        --size;
+        intermediatePermissions[size] = null;
+    }
+
+    private void setPermissions(int index, Permissions permissions) {
+        Permissions previous = intermediatePermissions[index];
+        if (previous == MISSING) {
+            --missingPermissions;
+        } else if (previous != null) {
+            countPermissions(previous, -1);
+        }
+
+        intermediatePermissions[index] = permissions;
+        if (permissions == MISSING) {
+            ++missingPermissions;
+        } else if (permissions != null) {
+            countPermissions(permissions, 1);
+        }
+    }
+
+    private void countPermissions(Permissions permissions, int delta) {
+        if (permissionCounts == null) {
+            permissionCounts = new int[Permissions.BITS];
+        }
+
+        long mask = permissions.mask();
+        for (int i = 0; i < Permissions.BITS; ++i) {
+            if ((mask & (1L << i)) != 0) {
+                permissionCounts[i] += delta;
+            }
+        }
+    }
+
+    private void updateEffectivePermissions() {
+        if (permissionCounts == null) {
+            return;
+        }
+
+        long mask = 0;
+        for (int i = 0; i < Permissions.BITS; ++i) {
+            if (permissionCounts[i] > 0) {
+                mask |= 1L << i;
+            }
+        }
+
+        if (mask != effectivePermissions.mask()) {
+            effectivePermissions = Permissions.fromMask(mask);
+        }
+    }
+
     @Override
     public String toString() {
         return "EffectiveVertex(" + effectivePermissions +
-                " by " + intermediateVertices + ')';
+                " by " + getIntermediateVertices() + ')';
     }
 
     public enum RecalculationResult {
@@ -2,10 +2,13 @@ package com.github.kjarosh.agh.pp.index;
 
 import com.github.kjarosh.agh.pp.graph.GraphLoader;
 import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.EdgeId;
 import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
 import com.github.kjarosh.agh.pp.index.EffectiveVertex.RecalculationResult;
 import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
 import com.github.kjarosh.agh.pp.instrumentation.Instrumentation;
 import com.github.kjarosh.agh.pp.instrumentation.Notification;
 import lombok.extern.slf4j.Slf4j;
@@ -13,13 +16,33 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Class responsible for processing {@link Event}s and
  * potentially propagating them.
+ * <p>
+ * A batch of events of one vertex may be processed at once,
+ * in which case its consecutive events of the same type are merged:
+ * permissions are recalculated and dirtiness is reported once per subject,
+ * and each added effective vertex is propagated once. Traces are kept,
+ * as an effective vertex is propagated with the trace of the event
+ * which has added it, so that one event is propagated for each trace
+ * which has added some effective vertices.
+ * <p>
+ * Propagated events carry only the effective vertices which have
+ * been added at this vertex, and nothing is propagated when
+ * the set of effective vertices has not changed.
  *
  * @author Kamil Jarosz
  */
@@ -34,29 +57,67 @@ public class EventProcessor {
     @Autowired
     private Inbox inbox;
 
+    @Autowired
+    private TraceTracker traceTracker;
+
+    /**
+     * Processes events of the given vertex in order. Consecutive events
+     * of the same type are applied together and propagated at most once
+     * for each trace.
+     * <p>
+     * Events are completed in the {@link TraceTracker} after the events
+     * they cause have been posted, also when processing them fails,
+     * as failed events are not processed again.
+     */
+    public void process(VertexId id, List<Event> events) {
+        try {
+            int start = 0;
+            while (start < events.size()) {
+                EventType type = events.get(start).getType();
+                int end = start + 1;
+                while (end < events.size() && events.get(end).getType() == type) {
+                    ++end;
+                }
+
+                process(id, type, events.subList(start, end));
+                start = end;
+            }
+        } finally {
+            events.forEach(event -> traceTracker.completed(event.getTrace()));
+        }
+    }
+
     public void process(VertexId id, Event event) {
-        instrumentation.notify(Notification.startProcessing(id, event));
+        try {
+            process(id, event.getType(), Collections.singletonList(event));
+        } finally {
+            traceTracker.completed(event.getTrace());
+        }
+    }
+
+    private void process(VertexId id, EventType type, List<Event> events) {
+        events.forEach(event -> instrumentation.notify(Notification.startProcessing(id, event)));
         boolean successful = false;
 
         try {
-            switch (event.getType()) {
+            switch (type) {
                 case CHILD_CHANGE: {
-                    processChild(id, event, false);
+                    processChild(id, events, false);
                     break;
                 }
 
                 case PARENT_CHANGE: {
-                    processParent(id, event, false);
+                    processParent(id, events, false);
                     break;
                 }
 
                 case CHILD_REMOVE: {
-                    processChild(id, event, true);
+                    processChild(id, events, true);
                     break;
                 }
 
                 case PARENT_REMOVE: {
-                    processParent(id, event, true);
+                    processParent(id, events, true);
                     break;
                 }
 
@@ -67,65 +128,73 @@ public class EventProcessor {
             successful = true;
         } finally {
             if (successful) {
-                instrumentation.notify(Notification.endProcessing(id, event));
+                events.forEach(event -> instrumentation.notify(Notification.endProcessing(id, event)));
             } else {
-                instrumentation.notify(Notification.failProcessing(id, event));
+                events.forEach(event -> instrumentation.notify(Notification.failProcessing(id, event)));
             }
         }
     }
 
-    public void processParent(VertexId id, Event event, boolean delete) {
+    private void processParent(VertexId id, List<Event> events, boolean delete) {
         Graph graph = graphLoader.getGraph();
 
         VertexIndex index = graph.getVertex(id).index();
 
-        AtomicBoolean propagate = new AtomicBoolean(false);
+        Map<Event, Set<VertexId>> toPropagate;
         if (delete) {
-            VertexId toRemove = event.getOriginalSender();
-            index.getEffectiveParent(toRemove).ifPresent(effectiveVertex -> {
-                effectiveVertex.removeIntermediateVertex(event.getSender(), () -> propagate.set(true));
-                if (effectiveVertex.getIntermediateVertices().isEmpty()) {
-                    index.removeEffectiveParent(toRemove);
-                }
-            });
+            toPropagate = removeIntermediateVertices(events,
+                    index::getEffectiveParent, index::removeEffectiveParent);
         } else {
-            for (VertexId subjectId : event.getAllSubjects()) {
-                EffectiveVertex effectiveVertex = index.getOrAddEffectiveParent(subjectId, () -> propagate.set(true));
-                effectiveVertex.addIntermediateVertex(event.getSender(), () -> propagate.set(true));
+            Map<VertexId, Event> added = new LinkedHashMap<>();
+            for (Event event : events) {
+                for (VertexId subjectId : event.getAllSubjects()) {
+                    EffectiveVertex effectiveVertex = index.getOrAddEffectiveParent(subjectId, () -> added.put(subjectId, event));
+                    effectiveVertex.addIntermediateVertex(event.getSender(), () -> {});
+                }
             }
+            toPropagate = addedVertices(events, added);
         }
 
-        if (propagate.get()) {
-            Set<VertexId> effectiveParents = index.getEffectiveParents().keySet();
+        if (!toPropagate.isEmpty()) {
             Set<VertexId> recipients = graph.getEdgesByDestination(id)
                     .stream()
                     .map(Edge::src)
                     .collect(Collectors.toSet());
-            propagateEvent(id, recipients, event, effectiveParents);
+            toPropagate.forEach((event, delta) -> propagateEvent(id, recipients, event, delta));
         }
     }
 
-    public void processChild(VertexId id, Event event, boolean delete) {
+    private void processChild(VertexId id, List<Event> events, boolean delete) {
         Graph graph = graphLoader.getGraph();
 
         VertexIndex index = graph.getVertex(id).index();
-        Set<Edge> edgesToCalculate = graph.getEdgesByDestination(id);
 
-        AtomicBoolean propagate = new AtomicBoolean(false);
+        Map<Event, Set<VertexId>> toPropagate;
         if (delete) {
-            VertexId toRemove = event.getOriginalSender();
-            index.getEffectiveChild(toRemove).ifPresent(effectiveVertex -> {
-                effectiveVertex.removeIntermediateVertex(event.getSender(), () -> propagate.set(true));
-                if (effectiveVertex.getIntermediateVertices().isEmpty()) {
-                    index.removeEffectiveChild(toRemove);
-                }
-            });
+            toPropagate = removeIntermediateVertices(events,
+                    index::getEffectiveChild, index::removeEffectiveChild);
         } else {
-            for (VertexId subjectId : event.getAllSubjects()) {
-                EffectiveVertex effectiveVertex = index.getOrAddEffectiveChild(subjectId, () -> propagate.set(true));
-                effectiveVertex.addIntermediateVertex(event.getSender(), () -> propagate.set(true));
-                RecalculationResult result = effectiveVertex.recalculatePermissions(edgesToCalculate);
+            Map<VertexId, Event> added = new LinkedHashMap<>();
+            // the last change of dirtiness of each subject, with the event causing it
+            Map<VertexId, RecalculationResult> results = new LinkedHashMap<>();
+            Map<VertexId, Event> resultEvents = new HashMap<>();
+            for (Event event : events) {
+                VertexId sender = event.getSender();
+                Edge edge = graph.getEdge(EdgeId.of(sender, id));
+                Permissions permissions = edge != null ? edge.permissions() : null;
+                for (VertexId subjectId : event.getAllSubjects()) {
+                    EffectiveVertex effectiveVertex = index.getOrAddEffectiveChild(subjectId, () -> added.put(subjectId, event));
+                    effectiveVertex.addIntermediateVertex(sender, () -> {});
+                    RecalculationResult result = effectiveVertex.recalculatePermissions(sender, permissions);
+                    if (result != RecalculationResult.CLEAN || !results.containsKey(subjectId)) {
+                        results.put(subjectId, result);
+                        resultEvents.put(subjectId, event);
+                    }
+                }
+            }
 
+            results.forEach((subjectId, result) -> {
+                Event event = resultEvents.get(subjectId);
                 if (result == RecalculationResult.DIRTY) {
                     instrumentation.notify(Notification.markedDirty(id, event));
                     log.warn("Marking vertex {} as dirty", subjectId);
@@ -133,17 +202,69 @@ public class EventProcessor {
                     instrumentation.notify(Notification.markedClean(id, event));
                     log.info("Marking vertex {} as not dirty", subjectId);
                 }
-            }
+            });
+            toPropagate = addedVertices(events, added);
         }
 
-        if (propagate.get()) {
-            Set<VertexId> effectiveChildren = index.getEffectiveChildren().keySet();
+        if (!toPropagate.isEmpty()) {
             Set<VertexId> recipients = graph.getEdgesBySource(id)
                     .stream()
                     .map(Edge::dst)
                     .collect(Collectors.toSet());
-            propagateEvent(id, recipients, event, effectiveChildren);
+            toPropagate.forEach((event, delta) -> propagateEvent(id, recipients, event, delta));
+        }
+    }
+
+    /**
+     * Recipients already know about all effective vertices except
+     * the ones which have just been added, and new intermediate vertices
+     * are not visible to them, so only the added vertices are propagated.
+     * <p>
+     * Added vertices are grouped by the trace of the event which has
+     * added them, and each group is propagated as the latest event
+     * of its trace.
+     */
+    private Map<Event, Set<VertexId>> addedVertices(List<Event> events, Map<VertexId, Event> added) {
+        if (added.isEmpty()) {
+            return Collections.emptyMap();
         }
+
+        Map<String, Event> latestByTrace = new HashMap<>();
+        events.forEach(event -> latestByTrace.put(event.getTrace(), event));
+
+        Map<Event, Set<VertexId>> toPropagate = new LinkedHashMap<>();
+        added.forEach((subjectId, event) -> toPropagate
+                .computeIfAbsent(latestByTrace.get(event.getTrace()), e -> new HashSet<>())
+                .add(subjectId));
+        return toPropagate;
+    }
+
+    /**
+     * Applies removal events. A removal is propagated only when the
+     * effective vertex has been removed entirely, as otherwise it is
+     * still reachable through this vertex. Removals of different
+     * vertices cannot be merged, so one event is propagated
+     * for each removed vertex.
+     */
+    private Map<Event, Set<VertexId>> removeIntermediateVertices(
+            List<Event> events,
+            Function<VertexId, Optional<EffectiveVertex>> getter,
+            Consumer<VertexId> remover) {
+        Map<VertexId, Event> removed = new LinkedHashMap<>();
+        for (Event event : events) {
+            VertexId toRemove = event.getOriginalSender();
+            getter.apply(toRemove).ifPresent(effectiveVertex -> {
+                effectiveVertex.removeIntermediateVertex(event.getSender(), () -> {});
+                if (!effectiveVertex.hasIntermediateVertices()) {
+                    remover.accept(toRemove);
+                    removed.put(toRemove, event);
+                }
+            });
+        }
+
+        Map<Event, Set<VertexId>> toPropagate = new LinkedHashMap<>();
+        removed.values().forEach(event -> toPropagate.put(event, Collections.emptySet()));
+        return toPropagate;
     }
 
     private void propagateEvent(
@@ -154,6 +275,7 @@ public class EventProcessor {
         int size = recipients.size();
         if (size > 0) {
             instrumentation.notify(Notification.forkEvent(sender, event, size));
+            traceTracker.posted(event.getTrace(), size);
         }
         recipients.forEach(r -> {
             Event newEvent = Event.builder()
@@ -1,6 +1,7 @@
 package com.github.kjarosh.agh.pp.index;
 
 import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
 import com.github.kjarosh.agh.pp.index.events.Event;
 import com.github.kjarosh.agh.pp.instrumentation.Instrumentation;
@@ -11,21 +12,32 @@ import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
-import java.util.Deque;
+import javax.annotation.PostConstruct;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
  * Inbox for {@link Event}s. Contains inboxes for
  * each vertex and allows to post new events and
  * listen for new events.
+ * <p>
+ * Each vertex has its own {@link Mailbox} which is created
+ * when the first event arrives and removed when all its
+ * events have been processed. Posting and receiving events
+ * never locks the whole inbox.
+ * <p>
+ * The number of events in mailboxes is bounded. When the limit is reached,
+ * new events are spilled to disk (see {@link SpillQueue}) and all following
+ * events are spilled too, which preserves their order. Spilled events are
+ * moved to mailboxes when half of the limit has been processed.
  *
  * @author Kamil Jarosz
  */
@@ -34,17 +46,34 @@ import java.util.function.Consumer;
 @Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
 public class Inbox {
     private final AtomicInteger inboxSize = new AtomicInteger(0);
-    private final Map<VertexId, Deque<Event>> inboxes = new ConcurrentHashMap<>();
+    private final LongAdder posted = new LongAdder();
+    private final Map<VertexId, Mailbox> inboxes = new ConcurrentHashMap<>();
     private final List<Consumer<VertexId>> listeners = new CopyOnWriteArrayList<>();
 
     private final Instrumentation instrumentation = Instrumentation.getInstance();
 
+    private final ReentrantLock spillLock = new ReentrantLock();
+    private volatile boolean spilling = false;
+    private SpillQueue spill;
+    private int memoryLimit;
+
+    @PostConstruct
+    public void init() {
+        Config config = ConfigLoader.getConfig();
+        memoryLimit = Math.max(2, config.getInboxMemoryLimit());
+        spill = new SpillQueue(Paths.get(config.getSpillPath()), "inbox", 0, config.getSpillSegmentSize());
+    }
+
+    /**
+     * @return the number of events in mailboxes, without spilled events
+     */
     public int size() {
         return inboxSize.get();
     }
 
     @SneakyThrows
     public void post(VertexId id, Event event) {
+        posted.increment();
         if (!id.owner().equals(Config.ZONE_ID)) {
             Outbox.forZone(id.owner()).postEvent(id, event);
             return;
@@ -52,39 +81,164 @@ public class Inbox {
 
         instrumentation.notify(Notification.queued(id, event));
         log.trace("Event posted at " + id + ": " + event);
-        inboxes.computeIfAbsent(id, i -> new ConcurrentLinkedDeque<>()).addLast(event);
+        if (spilling || inboxSize.get() >= memoryLimit) {
+            spillLock.lock();
+            try {
+                if (spilling || inboxSize.get() >= memoryLimit) {
+                    spilling = true;
+                    spill.addLast(new Message(id, event));
+                    // events might have been processed before spilling was noticed
+                    if (inboxSize.get() <= memoryLimit / 2) {
+                        drainSpill();
+                    }
+                    return;
+                }
+            } finally {
+                spillLock.unlock();
+            }
+        }
+
+        enqueue(id, event);
+    }
+
+    private void enqueue(VertexId id, Event event) {
         inboxSize.incrementAndGet();
-        listeners.forEach(l -> l.accept(id));
+        while (true) {
+            Mailbox mailbox = inboxes.computeIfAbsent(id, i -> new Mailbox());
+            int pending = mailbox.post(event);
+            if (pending == Mailbox.RETIRED) {
+                inboxes.remove(id, mailbox);
+                continue;
+            }
+
+            if (pending == 0) {
+                listeners.forEach(l -> l.accept(id));
+            }
+            return;
+        }
     }
 
-    @SneakyThrows
-    public Optional<Event> receive(VertexId id) {
-        Deque<Event> queue = inboxes.get(id);
-        if (queue == null) {
-            return Optional.empty();
+    /**
+     * Moves spilled events to mailboxes until the limit is reached.
+     */
+    private void drainSpill() {
+        spillLock.lock();
+        try {
+            while (spilling && inboxSize.get() < memoryLimit) {
+                Message message = spill.poll();
+                if (message == null) {
+                    spilling = false;
+                    log.info("All spilled events have been moved back to the inbox");
+                } else {
+                    enqueue(message.getId(), message.getEvent());
+                }
+            }
+        } finally {
+            spillLock.unlock();
         }
+    }
+
+    /**
+     * Receives the next event of the given vertex. May be called only
+     * by the listener which has been notified about the vertex and only
+     * until {@link #release(VertexId)} returns {@code false}.
+     */
+    public Event receive(VertexId id) {
+        Event event = inboxes.get(id).receive();
+        inboxSize.decrementAndGet();
+        return event;
+    }
 
-        Event event = queue.pollFirst();
-        if (event != null) {
-            inboxSize.decrementAndGet();
+    /**
+     * Receives at most {@code max} next events of the given vertex.
+     * The same restrictions as for {@link #receive(VertexId)} apply.
+     */
+    public List<Event> receiveBatch(VertexId id, int max) {
+        List<Event> events = inboxes.get(id).receiveBatch(max);
+        inboxSize.addAndGet(-events.size());
+        return events;
+    }
+
+    /**
+     * Marks the last event received for the given vertex as processed.
+     *
+     * @return {@code true} when there are more events to be received
+     */
+    public boolean release(VertexId id) {
+        return release(id, 1);
+    }
+
+    /**
+     * Marks the last {@code count} events received for the given
+     * vertex as processed.
+     *
+     * @see #release(VertexId)
+     */
+    public boolean release(VertexId id, int count) {
+        Mailbox mailbox = inboxes.get(id);
+        boolean more = mailbox.release(count);
+        if (!more && mailbox.isRetired()) {
+            inboxes.remove(id, mailbox);
         }
-        return Optional.ofNullable(event);
+        if (spilling && inboxSize.get() <= memoryLimit / 2) {
+            drainSpill();
+        }
+        return more;
     }
 
+    /**
+     * Adds a listener which is notified when a vertex has new events
+     * and is not being processed, i.e. when its mailbox is scheduled.
+     * The listener becomes responsible for receiving and releasing
+     * events of that vertex.
+     */
     public void addInboxChangeListener(Consumer<VertexId> listener) {
         listeners.add(listener);
     }
 
+    /**
+     * Iterates over events which have not been received yet. May be called
+     * only when no events are being posted or received, e.g. in an exclusive
+     * section of the {@link com.github.kjarosh.agh.pp.checkpoint.CheckpointBarrier}.
+     */
+    public void forEachQueued(BiConsumer<VertexId, Event> consumer) {
+        inboxes.forEach((id, mailbox) -> mailbox.queued()
+                .forEach(event -> consumer.accept(id, event)));
+        spill.forEach(consumer);
+    }
+
     public boolean isEmpty() {
-        return inboxes.values()
-                .stream()
-                .allMatch(Collection::isEmpty);
+        return inboxSize.get() == 0 && !spilling;
     }
 
     public int queuedCount() {
-        return Math.toIntExact(inboxes.values()
-                .stream()
-                .mapToLong(Collection::size)
-                .sum());
+        return inboxSize.get() + spill.size();
+    }
+
+    /**
+     * Number of events which another zone may send, its share of the room
+     * left in mailboxes. Spilled events are counted, so that no credits
+     * are granted until they have been moved back to mailboxes.
+     */
+    public int credits() {
+        Map<String, ?> zones = ConfigLoader.getConfig().getZones();
+        int senders = Math.max(1, zones != null ? zones.size() - 1 : 1);
+        long room = (long) memoryLimit - queuedCount();
+        return (int) Math.max(0, room / senders);
+    }
+
+    /**
+     * @return the number of events which have ever been posted,
+     * including events for other zones
+     */
+    public long postedTotal() {
+        return posted.sum();
+    }
+
+    /**
+     * @return the number of events which have ever been spilled to disk
+     */
+    public long spilledTotal() {
+        return spill.spilledTotal();
     }
 }
@@ -2,14 +2,15 @@ package com.github.kjarosh.agh.pp.index;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.SlidingTimeWindowMovingAverages;
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointBarrier;
 import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
 import com.github.kjarosh.agh.pp.graph.GraphLoader;
 import com.github.kjarosh.agh.pp.graph.model.Vertex;
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
 import com.github.kjarosh.agh.pp.index.events.Event;
 import com.github.kjarosh.agh.pp.index.events.EventStats;
 import com.github.kjarosh.agh.pp.util.ClockX60;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
@@ -19,15 +20,11 @@ import org.springframework.stereotype.Service;
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Combines {@link Inbox} and {@link EventProcessor} together,
@@ -36,6 +33,12 @@ import java.util.concurrent.TimeUnit;
  * of processing events, i.e. events meant for one vertex are
  * to be executed sequentially and in the correct order.
  * <p>
+ * A vertex is submitted to the {@link ProcessingEngine} only when its mailbox
+ * in the {@link Inbox} becomes scheduled, so that at most one
+ * worker processes events of a vertex at a time. The worker
+ * processes one event (or a batch of events, when batch processing
+ * is enabled) and resubmits the vertex if there are more events pending.
+ * <p>
  * It also provides basic statistics about the events.
  *
  * @author Kamil Jarosz
@@ -44,16 +47,8 @@ import java.util.concurrent.TimeUnit;
 @Service
 @Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
 public class InboxProcessor {
-    private final ThreadFactory treadFactory = new ThreadFactoryBuilder()
-            .setNameFormat(Config.ZONE_ID + "-worker-%d")
-            .build();
-    private final ExecutorService executor = new ThreadPoolExecutor(
-            2, 20,
-            10L, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(),
-            treadFactory);
-
-    private final Set<VertexId> processing = new HashSet<>();
+    private final Set<VertexId> processing = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> idleListeners = new CopyOnWriteArrayList<>();
 
     private final Meter eventsMeter = new Meter(new SlidingTimeWindowMovingAverages(new ClockX60()));
 
@@ -66,54 +61,102 @@ public class InboxProcessor {
     @Autowired
     private EventProcessor eventProcessor;
 
+    @Autowired
+    private CheckpointBarrier barrier;
+
+    @Autowired
+    private BulkDeduplicator deduplicator;
+
+    private ProcessingEngine engine;
+
+    private int batchSize;
+
     @PostConstruct
     public void init() {
+        Config config = ConfigLoader.getConfig();
+        engine = ProcessingEngine.create(config, inbox::queuedCount);
+        batchSize = config.isBatchProcessing() ? Math.max(1, config.getBatchProcessingLimit()) : 1;
+        log.info("Using {} processing engine with {} threads",
+                config.getProcessingEngine(), engine.getThreads());
+        if (batchSize > 1) {
+            log.info("Processing events in batches of up to {}", batchSize);
+        }
         inbox.addInboxChangeListener(this::inboxChanged);
     }
 
     private void inboxChanged(VertexId id) {
-        synchronized (processing) {
-            if (processing.contains(id)) {
-                // cannot process one vertex concurrently
-                return;
-            }
+        engine.execute(id, () -> processNext(id));
+    }
 
-            Event event = inbox.receive(id).orElse(null);
-            if (event == null) {
-                // no event to process
-                return;
-            }
+    private void processNext(VertexId id) {
+        boolean[] more = new boolean[1];
+        barrier.shared(() -> more[0] = processNextShared(id));
+        if (more[0]) {
+            inboxChanged(id);
+        }
+    }
+
+    /**
+     * Events are received, processed and released in a shared section,
+     * so that a checkpoint never misses events being processed.
+     * The index of the vertex is pinned while its events are processed.
+     */
+    private boolean processNextShared(VertexId id) {
+        processing.add(id);
+        int received = 0;
+        boolean more;
+        try {
+            List<Event> events = inbox.receiveBatch(id, batchSize);
+            received = events.size();
+            log.trace("Processing events " + events + " at " + id);
 
-            processing.add(id);
-            executor.submit(() -> {
-                log.trace("Processing event " + event + " at " + id);
-
-                try {
-                    eventProcessor.process(id, event);
-                    eventsMeter.mark();
-                } catch (Exception e) {
-                    log.error("An exception occurred while processing an event", e);
-                } finally {
-                    synchronized (processing) {
-                        processing.remove(id);
-                    }
-                    inboxChanged(id);
+            Vertex vertex = graphLoader.getGraph().getVertex(id);
+            VertexIndex index = vertex != null ? vertex.index() : null;
+            if (index != null) {
+                index.pin();
+            }
+            try {
+                eventProcessor.process(id, events);
+                eventsMeter.mark(received);
+            } catch (Exception e) {
+                log.error("An exception occurred while processing events", e);
+            } finally {
+                if (index != null) {
+                    index.unpin();
                 }
-            });
+            }
+        } finally {
+            processing.remove(id);
+            more = inbox.release(id, received);
+        }
+        if (!more && inbox.isEmpty()) {
+            idleListeners.forEach(Runnable::run);
         }
+        return more;
+    }
+
+    /**
+     * Adds a listener called when the inbox may have become empty.
+     */
+    public void addIdleListener(Runnable listener) {
+        idleListeners.add(listener);
     }
 
     public boolean isStalled() {
-        synchronized (processing) {
-            return processing.isEmpty() && inbox.isEmpty() && Outbox.allEmpty();
-        }
+        return processing.isEmpty() && inbox.isEmpty() && Outbox.allEmpty();
+    }
+
+    /**
+     * The last scaling decision labelled with this zone,
+     * so that decisions of zones may be told apart when combined.
+     */
+    private String scaling() {
+        String decision = engine.getScalingDecision();
+        return decision == null || decision.isEmpty() ? "" : Config.ZONE_ID + ": " + decision;
     }
 
     public EventStats stats() {
-        List<VertexId> currentProcessing;
-        synchronized (processing) {
-            currentProcessing = new ArrayList<>(processing);
-        }
+        List<VertexId> currentProcessing = new ArrayList<>(processing);
 
         Map<Vertex.Type, Integer> processingByType = new HashMap<>();
         currentProcessing.forEach(id -> {
@@ -127,10 +170,15 @@ public class InboxProcessor {
                 .processingByType(processingByType)
                 .queued(inbox.queuedCount())
                 .outbox(Outbox.allCount())
+                .spilled(inbox.spilledTotal() + Outbox.allSpilledTotal())
+                .duplicates(deduplicator.duplicates())
+                .outboxes(Outbox.allStats())
                 .total(eventsMeter.getCount())
                 .load1(eventsMeter.getOneMinuteRate())
                 .load5(eventsMeter.getFiveMinuteRate() / 5)
                 .load15(eventsMeter.getFifteenMinuteRate() / 15)
+                .workers(engine.getThreads())
+                .scaling(scaling())
                 .build();
     }
 }
@@ -0,0 +1,110 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.rest.dto.IndexStorageStatsDto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps effective vertices of {@link VertexIndex}es. Indexes are bound
+ * to the storage which was configured when they were created, so
+ * the storage is configured before the graph is loaded.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+public abstract class IndexStorage {
+    private static volatile IndexStorage instance = new MemoryIndexStorage();
+
+    protected final LongAdder hits = new LongAdder();
+    protected final LongAdder misses = new LongAdder();
+
+    public static IndexStorage getInstance() {
+        return instance;
+    }
+
+    public static synchronized void configure(Config config) {
+        switch (config.getIndexStorage()) {
+            case MEMORY:
+                instance = new MemoryIndexStorage();
+                break;
+            case MAPPED:
+                instance = new MappedIndexStorage(
+                        Paths.get(config.getIndexStoragePath()),
+                        config.getIndexCacheSize());
+                break;
+            default:
+                throw new AssertionError();
+        }
+        log.info("Using {} index storage", config.getIndexStorage());
+    }
+
+    /**
+     * @return effective vertices of the index, loaded
+     * if they have been paged out
+     */
+    abstract VertexIndex.Entries load(VertexIndex index);
+
+    /**
+     * @return a copy of effective vertices of the index
+     */
+    VertexIndex.Snapshot snapshot(VertexIndex index) {
+        return VertexIndex.Snapshot.copyOf(load(index));
+    }
+
+    void pin(VertexIndex index) {
+
+    }
+
+    void unpin(VertexIndex index) {
+
+    }
+
+    public IndexStorageStatsDto stats() {
+        long hits = this.hits.sum();
+        long misses = this.misses.sum();
+        IndexStorageStatsDto stats = new IndexStorageStatsDto();
+        stats.setHits(hits);
+        stats.setMisses(misses);
+        stats.setHitRate(hits + misses > 0 ? (double) hits / (hits + misses) : 1);
+        stats.setMajorPageFaults(majorPageFaults());
+        return stats;
+    }
+
+    /**
+     * @return the number of page faults of the process which required
+     * reading from disk, {@code -1} when unknown
+     */
+    private static long majorPageFaults() {
+        try {
+            String stat = new String(Files.readAllBytes(Paths.get("/proc/self/stat")), StandardCharsets.US_ASCII);
+            // fields following the command name, which may contain spaces,
+            // majflt being the 12th field of the whole line
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Long.parseLong(fields[9]);
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    public enum Type {
+        /**
+         * All indexes are kept on the heap.
+         */
+        @JsonProperty("memory")
+        MEMORY,
+
+        /**
+         * Only recently used indexes are kept on the heap,
+         * see {@link MappedIndexStorage}.
+         */
+        @JsonProperty("mapped")
+        MAPPED,
+    }
+}
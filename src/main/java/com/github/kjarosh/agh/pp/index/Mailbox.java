@@ -0,0 +1,116 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.index.events.Event;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A queue of {@link Event}s of a single vertex together with its
+ * scheduling state.
+ * <p>
+ * The state is a counter of events which have been posted but not yet
+ * released. A mailbox with a positive counter is scheduled, i.e. exactly
+ * one worker is responsible for it, and a mailbox with no events is idle.
+ * Idle mailboxes are retired, so that they may be removed from the
+ * {@link Inbox}; a retired mailbox does not accept any events.
+ * All state transitions are lock-free.
+ *
+ * @author Kamil Jarosz
+ */
+class Mailbox {
+    static final int RETIRED = -1;
+
+    private final Deque<Event> events = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    /**
+     * Adds an event to this mailbox.
+     *
+     * @return {@link #RETIRED} when the mailbox has been retired and the
+     * event has not been added, the number of pending events before adding
+     * this one otherwise; {@code 0} means that the mailbox has just been
+     * scheduled and the caller is responsible for processing it
+     */
+    int post(Event event) {
+        while (true) {
+            int current = pending.get();
+            if (current == RETIRED) {
+                return RETIRED;
+            }
+
+            if (pending.compareAndSet(current, current + 1)) {
+                events.addLast(event);
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Removes the first event from this mailbox. May be called only by the
+     * worker responsible for this mailbox, i.e. when it is scheduled.
+     */
+    Event receive() {
+        Event event;
+        while ((event = events.pollFirst()) == null) {
+            // the event has been counted, but the poster
+            // has not added it to the queue yet
+            Thread.onSpinWait();
+        }
+        return event;
+    }
+
+    /**
+     * Removes at most {@code max} first events from this mailbox.
+     * The same restrictions as for {@link #receive()} apply.
+     */
+    List<Event> receiveBatch(int max) {
+        int count = Math.min(pending.get(), max);
+        List<Event> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            batch.add(receive());
+        }
+        return batch;
+    }
+
+    /**
+     * Marks the last received event as processed.
+     *
+     * @return {@code true} when there are more events pending
+     * and the caller should process this mailbox again
+     */
+    boolean release() {
+        return release(1);
+    }
+
+    /**
+     * Marks the last {@code count} received events as processed.
+     *
+     * @see #release()
+     */
+    boolean release(int count) {
+        if (pending.addAndGet(-count) > 0) {
+            return true;
+        }
+
+        // if an event has been posted in the meantime,
+        // its poster is responsible for scheduling
+        pending.compareAndSet(0, RETIRED);
+        return false;
+    }
+
+    /**
+     * @return events which have not been received yet, may be called
+     * only when no events are being posted or received
+     */
+    List<Event> queued() {
+        return new ArrayList<>(events);
+    }
+
+    boolean isRetired() {
+        return pending.get() == RETIRED;
+    }
+}
@@ -0,0 +1,455 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointInput;
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointOutput;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.rest.dto.IndexStorageStatsDto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a bounded number of recently used indexes on the heap and pages
+ * out the others to memory-mapped files, so that the zone is not limited
+ * by the size of the heap. The operating system decides which pages
+ * of the files stay in memory.
+ * <p>
+ * Resident indexes are evicted using the clock algorithm, an approximation
+ * of LRU which does not need to reorder anything on a hit. Pinned indexes
+ * are never evicted, so the number of resident indexes may temporarily
+ * exceed the capacity.
+ * <p>
+ * An index is paged in and out while holding its own monitor, so that
+ * pages are read, decoded, encoded and written concurrently. The lock
+ * of the storage only guards the clock, and the space lock guards
+ * allocation of pages.
+ * <p>
+ * Pages are allocated in segment files from free extents, best fit,
+ * and freed when loaded back, coalescing with adjacent free extents,
+ * so that the space of freed pages is reused. A segment is deleted when
+ * all of its pages are freed, unless it is the newest one. Pages are not
+ * persistent, the storage is cleared on startup.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+class MappedIndexStorage extends IndexStorage {
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String SEGMENT_GLOB = "index-*.pages";
+
+    private final Path directory;
+    private final int capacity;
+    private final int segmentSize;
+
+    private final Object lock = new Object();
+    private final List<VertexIndex> resident = new ArrayList<>();
+    private int hand = 0;
+
+    private final Object spaceLock = new Object();
+    private final List<Segment> segments = new ArrayList<>();
+    /**
+     * Free extents by their address, see {@link #address(int, int)},
+     * and by their length.
+     */
+    private final TreeMap<Long, Integer> freeByAddress = new TreeMap<>();
+    private final TreeSet<Extent> freeByLength = new TreeSet<>();
+    private long pagedOut = 0;
+    private long pageBytes = 0;
+
+    private final LongAdder pageIns = new LongAdder();
+    private final LongAdder pageOuts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    MappedIndexStorage(Path directory, int capacity) {
+        this(directory, capacity, SEGMENT_SIZE);
+    }
+
+    MappedIndexStorage(Path directory, int capacity, int segmentSize) {
+        this.directory = directory;
+        this.capacity = Math.max(1, capacity);
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_GLOB)) {
+                for (Path segment : stream) {
+                    Files.delete(segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Keeping up to {} indexes in memory, paging out to {}", this.capacity, directory);
+    }
+
+    @Override
+    VertexIndex.Entries load(VertexIndex index) {
+        VertexIndex.Entries entries = index.entries;
+        if (entries != null) {
+            // racy, but a lost reference only makes the clock less accurate
+            index.referenced = true;
+            hits.increment();
+            return entries;
+        }
+
+        synchronized (index) {
+            entries = index.entries;
+            if (entries != null) {
+                index.referenced = true;
+                hits.increment();
+                return entries;
+            }
+
+            misses.increment();
+            entries = index.page >= 0 ?
+                    readPage(index) :
+                    new VertexIndex.Entries();
+            index.entries = entries;
+            index.referenced = true;
+        }
+
+        List<VertexIndex> victims;
+        synchronized (lock) {
+            resident.add(index);
+            victims = victims(index);
+        }
+        victims.forEach(this::pageOut);
+        return entries;
+    }
+
+    /**
+     * Copies resident indexes, and pages of paged out indexes without
+     * decoding them, so that neither the clock nor resident indexes
+     * are affected.
+     */
+    @Override
+    VertexIndex.Snapshot snapshot(VertexIndex index) {
+        synchronized (index) {
+            VertexIndex.Entries entries = index.entries;
+            if (entries != null) {
+                return VertexIndex.Snapshot.copyOf(entries);
+            } else if (index.page >= 0) {
+                return VertexIndex.Snapshot.ofPage(copyPage(index));
+            } else {
+                return VertexIndex.Snapshot.copyOf(new VertexIndex.Entries());
+            }
+        }
+    }
+
+    @Override
+    void pin(VertexIndex index) {
+        synchronized (index) {
+            ++index.pins;
+        }
+    }
+
+    @Override
+    void unpin(VertexIndex index) {
+        synchronized (index) {
+            --index.pins;
+        }
+    }
+
+    /**
+     * Removes indexes to be evicted from resident ones,
+     * pinned indexes are checked again when paging them out.
+     *
+     * @param loaded the index which has just been loaded, which is never
+     *               evicted, as it is about to be used
+     */
+    private List<VertexIndex> victims(VertexIndex loaded) {
+        List<VertexIndex> victims = new ArrayList<>();
+        int scanned = 0;
+        while (resident.size() > capacity && scanned < 2 * resident.size()) {
+            if (hand >= resident.size()) {
+                hand = 0;
+            }
+
+            VertexIndex candidate = resident.get(hand);
+            if (candidate == loaded || candidate.pins > 0 || candidate.referenced) {
+                candidate.referenced = false;
+                ++hand;
+                ++scanned;
+                continue;
+            }
+
+            victims.add(candidate);
+            VertexIndex last = resident.remove(resident.size() - 1);
+            if (hand < resident.size()) {
+                resident.set(hand, last);
+            }
+        }
+        return victims;
+    }
+
+    private void pageOut(VertexIndex index) {
+        synchronized (index) {
+            VertexIndex.Entries entries = index.entries;
+            if (index.pins > 0 || index.referenced) {
+                // used since it has been chosen
+                synchronized (lock) {
+                    resident.add(index);
+                }
+                return;
+            }
+
+            if (!entries.isEmpty()) {
+                writePage(index, entries);
+                pageOuts.increment();
+            }
+            index.entries = null;
+        }
+        evictions.increment();
+    }
+
+    private void writePage(VertexIndex index, VertexIndex.Entries entries) {
+        byte[] page = encode(entries);
+        long address;
+        Segment segment;
+        synchronized (spaceLock) {
+            address = allocate(page.length);
+            segment = segments.get(segmentNumber(address));
+            ++pagedOut;
+            pageBytes += page.length;
+        }
+
+        // the extent belongs to the index until it is freed
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset(address));
+        buffer.put(page);
+        index.page = address;
+        index.pageLength = page.length;
+    }
+
+    private byte[] copyPage(VertexIndex index) {
+        long address = index.page;
+        byte[] page = new byte[index.pageLength];
+        Segment segment;
+        synchronized (spaceLock) {
+            segment = segments.get(segmentNumber(address));
+        }
+
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset(address));
+        buffer.get(page);
+        return page;
+    }
+
+    private VertexIndex.Entries readPage(VertexIndex index) {
+        long address = index.page;
+        byte[] page = copyPage(index);
+        // the page is kept when it cannot be decoded, as it is the only copy
+        VertexIndex.Entries entries = decode(page);
+        synchronized (spaceLock) {
+            free(address, page.length);
+            --pagedOut;
+            pageBytes -= page.length;
+        }
+
+        index.page = -1;
+        index.pageLength = 0;
+        pageIns.increment();
+        return entries;
+    }
+
+    private static long address(int segment, int offset) {
+        return ((long) segment << Integer.SIZE) | offset;
+    }
+
+    private static int segmentNumber(long address) {
+        return (int) (address >>> Integer.SIZE);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private long allocate(int length) {
+        Extent extent = freeByLength.ceiling(new Extent(Long.MIN_VALUE, length));
+        if (extent != null) {
+            removeFree(extent.address, extent.length);
+        } else {
+            Segment segment = newSegment(Math.max(segmentSize, length));
+            extent = new Extent(address(segment.number, 0), segment.size);
+        }
+
+        if (extent.length > length) {
+            addFree(extent.address + length, extent.length - length);
+        }
+        segments.get(segmentNumber(extent.address)).live += length;
+        return extent.address;
+    }
+
+    private void free(long address, int length) {
+        Segment segment = segments.get(segmentNumber(address));
+        segment.live -= length;
+
+        long start = address;
+        int merged = length;
+        Map.Entry<Long, Integer> previous = freeByAddress.lowerEntry(address);
+        if (previous != null && previous.getKey() + previous.getValue() == address) {
+            removeFree(previous.getKey(), previous.getValue());
+            start = previous.getKey();
+            merged += previous.getValue();
+        }
+        Integer next = freeByAddress.get(address + length);
+        if (next != null) {
+            removeFree(address + length, next);
+            merged += next;
+        }
+
+        if (segment.live == 0 && segment.number != segments.size() - 1) {
+            deleteSegment(segment);
+        } else {
+            addFree(start, merged);
+        }
+    }
+
+    private void addFree(long address, int length) {
+        freeByAddress.put(address, length);
+        freeByLength.add(new Extent(address, length));
+    }
+
+    private void removeFree(long address, int length) {
+        freeByAddress.remove(address);
+        freeByLength.remove(new Extent(address, length));
+    }
+
+    private Segment newSegment(int size) {
+        Segment previous = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        Segment segment = new Segment(segments.size(), size);
+        Path path = segmentPath(segment.number);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.add(segment);
+        if (previous != null && previous.live == 0) {
+            removeFree(address(previous.number, 0), previous.size);
+            deleteSegment(previous);
+        }
+        return segment;
+    }
+
+    private void deleteSegment(Segment segment) {
+        // the mapping is released when the buffer is collected
+        segments.set(segment.number, null);
+        try {
+            Files.delete(segmentPath(segment.number));
+        } catch (IOException e) {
+            log.warn("Cannot delete index segment {}", segment.number, e);
+        }
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("index-%08d.pages", number));
+    }
+
+    private static byte[] encode(VertexIndex.Entries entries) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (CheckpointOutput out = new CheckpointOutput(os)) {
+            writeEffectiveVertices(out, entries.effectiveChildren);
+            writeEffectiveVertices(out, entries.effectiveParents);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return os.toByteArray();
+    }
+
+    static VertexIndex.Entries decode(byte[] page) {
+        VertexIndex.Entries entries = new VertexIndex.Entries();
+        try (CheckpointInput in = new CheckpointInput(new ByteArrayInputStream(page))) {
+            readEffectiveVertices(in, entries.effectiveChildren);
+            readEffectiveVertices(in, entries.effectiveParents);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entries;
+    }
+
+    private static void writeEffectiveVertices(CheckpointOutput out, Map<VertexId, EffectiveVertex> effectiveVertices) throws IOException {
+        out.writeVarInt(effectiveVertices.size());
+        for (Map.Entry<VertexId, EffectiveVertex> entry : effectiveVertices.entrySet()) {
+            out.writeVertexId(entry.getKey());
+            entry.getValue().encode(out);
+        }
+    }
+
+    private static void readEffectiveVertices(CheckpointInput in, Map<VertexId, EffectiveVertex> effectiveVertices) throws IOException {
+        int count = in.readVarInt();
+        for (int i = 0; i < count; ++i) {
+            VertexId id = in.readVertexId();
+            effectiveVertices.put(id, EffectiveVertex.decode(in));
+        }
+    }
+
+    @Override
+    public IndexStorageStatsDto stats() {
+        IndexStorageStatsDto stats = super.stats();
+        stats.setType(Type.MAPPED);
+        stats.setCapacity(capacity);
+        stats.setPageIns(pageIns.sum());
+        stats.setPageOuts(pageOuts.sum());
+        stats.setEvictions(evictions.sum());
+        synchronized (lock) {
+            stats.setResident(resident.size());
+        }
+        synchronized (spaceLock) {
+            stats.setPagedOut(pagedOut);
+            stats.setPageBytes(pageBytes);
+            stats.setSegments((int) segments.stream().filter(s -> s != null).count());
+        }
+        return stats;
+    }
+
+    private static class Segment {
+        private final int number;
+        private final int size;
+        private MappedByteBuffer buffer;
+        private long live = 0;
+
+        private Segment(int number, int size) {
+            this.number = number;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A free extent of a segment, ordered by length and address.
+     */
+    private static class Extent implements Comparable<Extent> {
+        private final long address;
+        private final int length;
+
+        private Extent(long address, int length) {
+            this.address = address;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(Extent other) {
+            int cmp = Integer.compare(length, other.length);
+            if (cmp != 0) return cmp;
+            return Long.compare(address, other.address);
+        }
+    }
+}
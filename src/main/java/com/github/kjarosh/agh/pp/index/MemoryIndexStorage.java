@@ -0,0 +1,33 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.rest.dto.IndexStorageStatsDto;
+
+/**
+ * Keeps all indexes on the heap, so that every access is a hit.
+ *
+ * @author Kamil Jarosz
+ */
+class MemoryIndexStorage extends IndexStorage {
+    @Override
+    VertexIndex.Entries load(VertexIndex index) {
+        VertexIndex.Entries entries = index.entries;
+        if (entries == null) {
+            synchronized (index) {
+                entries = index.entries;
+                if (entries == null) {
+                    entries = new VertexIndex.Entries();
+                    index.entries = entries;
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public IndexStorageStatsDto stats() {
+        IndexStorageStatsDto stats = super.stats();
+        stats.setType(Type.MEMORY);
+        stats.setHitRate(1);
+        return stats;
+    }
+}
@@ -1,48 +1,115 @@
 package com.github.kjarosh.agh.pp.index;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
 import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
 import com.github.kjarosh.agh.pp.graph.model.ZoneId;
 import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.OutboxStats;
 import com.github.kjarosh.agh.pp.rest.client.ZoneClient;
 import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesDto;
+import com.github.kjarosh.agh.pp.rest.dto.CreditsDto;
 import com.github.kjarosh.agh.pp.rest.dto.MessageDto;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 /**
+ * Queues events for vertices of other zones and sends them in bulks.
+ * Events which do not fit in memory, e.g. when the zone is slow,
+ * are spilled to disk, see {@link SpillQueue}.
+ * <p>
+ * Events of each zone are partitioned into lanes by their vertex, and each
+ * lane has at most one bulk in flight, so that events of a vertex are
+ * delivered in order while up to the number of lanes bulks are sent to
+ * the zone concurrently. A lane is flushed when an event is posted to it,
+ * after a linger period which allows more events to join the bulk, and
+ * keeps sending as long as it has events. Idle lanes do not wake up.
+ * Bulks are prepared by a shared pool and sent asynchronously, the lane
+ * continues when the response arrives, so that no thread waits for it.
+ * <p>
+ * The zone grants credits in responses, i.e. the number of events which
+ * may be sent next, and bulks are limited by them and by a window adapted
+ * to them: it grows additively while the zone grants more than the window
+ * and is halved when the zone grants less or a bulk fails. When there are
+ * no credits and no bulk in flight, a small bulk is sent after a delay to
+ * obtain new credits, and the delay keeps growing while the zone grants
+ * none. Credits are shared by all lanes, and events which other lanes have
+ * in flight are subtracted from the granted credits, as the zone has not
+ * accounted for them yet.
+ * <p>
+ * Bulks are sequenced per lane, and a bulk which fails is sent again
+ * with the same events and sequence number, so that the zone may drop
+ * it when it has been delivered already, see {@link BulkDeduplicator}.
+ *
  * @author Kamil Jarosz
  */
+@Slf4j
 public class Outbox {
     private static final int INITIAL_DELAY = 10;
     private static final int MAX_DELAY = 1000;
     private static final double BACKOFF_COEFF = 1.2;
-    private static final int BULK_SIZE = 100_000;
+    private static final int MAX_WINDOW = 100_000;
+    private static final int MIN_WINDOW = 100;
+    private static final int INITIAL_WINDOW = 10_000;
+    private static final int WINDOW_INCREASE = 1_000;
+    /**
+     * Sequence numbers of bulks start over when the zone is restarted.
+     */
+    private static final long EPOCH = System.currentTimeMillis();
 
-    private static final ThreadFactory treadFactory = new ThreadFactoryBuilder()
+    private static final ExecutorService sender = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
             .setNameFormat(Config.ZONE_ID + "-outbox-%d")
-            .build();
-    private static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, treadFactory);
+            .build());
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat(Config.ZONE_ID + "-outbox-scheduler")
+            .build());
     private static final ConcurrentMap<ZoneId, Outbox> outboxes = new ConcurrentHashMap<>();
 
     private final ZoneId zone;
-    private final ConcurrentLinkedDeque<Message> queue = new ConcurrentLinkedDeque<>();
-    private long lastDelay;
+    private final Lane[] lanes;
+    private final long lingerMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final LongAdder posted = new LongAdder();
+    private int window = INITIAL_WINDOW;
+    private int credits = INITIAL_WINDOW;
+    private int eventsInFlight = 0;
+    private final Meter sentMeter = new Meter();
+    private final Meter failuresMeter = new Meter();
+    private final Timer sendTimer = new Timer();
 
     private Outbox(ZoneId zone) {
+        Config config = ConfigLoader.getConfig();
         this.zone = zone;
-        this.lastDelay = INITIAL_DELAY;
-        executor.schedule(this::flush, this.lastDelay, TimeUnit.MILLISECONDS);
+        this.lingerMillis = Math.max(0, config.getOutboxLingerMillis());
+        this.lanes = new Lane[Math.max(1, config.getOutboxLanes())];
+        int memoryLimit = config.getOutboxMemoryLimit() / lanes.length;
+        for (int i = 0; i < lanes.length; ++i) {
+            lanes[i] = new Lane(i, new SpillQueue(Paths.get(config.getSpillPath()), "outbox-" + zone.getId() + "-" + i,
+                    memoryLimit, config.getSpillSegmentSize()));
+        }
     }
 
     public static Outbox forZone(ZoneId zone) {
@@ -62,12 +129,52 @@ public class Outbox {
                 .sum();
     }
 
+    /**
+     * Iterates over events of all outboxes which have not been sent yet.
+     * Events which are being sent at the moment are omitted.
+     */
+    public static void forEachQueued(BiConsumer<VertexId, Event> consumer) {
+        outboxes.values().forEach(outbox -> Arrays.stream(outbox.lanes)
+                .forEach(lane -> lane.queue.forEach(consumer)));
+    }
+
+    /**
+     * @return the number of events of all outboxes which have ever been spilled to disk
+     */
+    public static long allSpilledTotal() {
+        return outboxes.values()
+                .stream()
+                .flatMap(outbox -> Arrays.stream(outbox.lanes))
+                .mapToLong(lane -> lane.queue.spilledTotal())
+                .sum();
+    }
+
+    /**
+     * @return the number of events which have ever been posted, by the zone
+     */
+    public static Map<String, Long> allPosted() {
+        Map<String, Long> posted = new HashMap<>();
+        outboxes.forEach((zone, outbox) -> posted.put(zone.getId(), outbox.posted.sum()));
+        return posted;
+    }
+
+    public static Map<String, OutboxStats> allStats() {
+        Map<String, OutboxStats> stats = new HashMap<>();
+        outboxes.forEach((zone, outbox) -> stats.put(zone.getId(), outbox.stats()));
+        return stats;
+    }
+
+    /**
+     * @return {@code true} when there are no events queued or being sent
+     */
     public boolean isEmpty() {
-        return queue.isEmpty();
+        return inFlight.get() == 0 && Arrays.stream(lanes).allMatch(lane -> lane.queue.isEmpty());
     }
 
     public int count() {
-        return queue.size();
+        return Arrays.stream(lanes)
+                .mapToInt(lane -> lane.queue.size())
+                .sum();
     }
 
     public void postEvent(VertexId id, Event event) {
@@ -75,50 +182,199 @@ public class Outbox {
             throw new IllegalArgumentException();
         }
 
-        queue.addLast(new Message(id, event));
+        Lane lane = lanes[Math.floorMod(id.hashCode(), lanes.length)];
+        lane.queue.addLast(new Message(id, event));
+        posted.increment();
+        if (lane.scheduled.compareAndSet(false, true)) {
+            lane.schedule(lingerMillis);
+        }
+    }
+
+    /**
+     * @return the number of events which may be sent in a bulk, {@code 0} when none
+     */
+    private synchronized int acquireCredits() {
+        int acquired = Math.min(window, credits);
+        credits -= acquired;
+        return acquired;
+    }
+
+    private synchronized void releaseCredits(int unused) {
+        credits += unused;
+    }
+
+    private synchronized void sending(int count) {
+        eventsInFlight += count;
+    }
+
+    /**
+     * @param granted credits granted by the zone, {@code null} when
+     *                the zone does not grant them
+     * @param sent    the number of events of the bulk
+     * @return whether the zone has granted no credits
+     */
+    private synchronized boolean granted(CreditsDto granted, int sent) {
+        eventsInFlight -= sent;
+        int value = granted != null ? granted.getCredits() : MAX_WINDOW;
+        if (value >= window) {
+            window = Math.min(MAX_WINDOW, window + WINDOW_INCREASE);
+        } else {
+            window = Math.max(MIN_WINDOW, window / 2);
+        }
+        credits = Math.max(0, value - eventsInFlight);
+        return value == 0;
+    }
+
+    private synchronized void failed(int acquired, int sent) {
+        eventsInFlight -= sent;
+        window = Math.max(MIN_WINDOW, window / 2);
+        credits += acquired;
+    }
+
+    public synchronized OutboxStats stats() {
+        Snapshot latency = sendTimer.getSnapshot();
+        return OutboxStats.builder()
+                .window(window)
+                .credits(credits)
+                .queued(count())
+                .inFlight(inFlight.get())
+                .sent(sentMeter.getCount())
+                .bulks(sendTimer.getCount())
+                .failures(failuresMeter.getCount())
+                .throughput(sentMeter.getOneMinuteRate())
+                .latencyMillisMean(latency.getMean() / 1e6)
+                .latencyMillis99(latency.get99thPercentile() / 1e6)
+                .build();
     }
 
-    private void flush() {
-        int sent = 0;
-        try {
-            List<Message> toSend = new ArrayList<>();
-            while (toSend.size() < BULK_SIZE && !queue.isEmpty()) {
-                toSend.add(queue.removeFirst());
+    private class Lane {
+        private final int index;
+        private final SpillQueue queue;
+        /**
+         * Whether the lane is waiting to be flushed or is being flushed,
+         * in which case posting an event does not schedule it.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private long delay = INITIAL_DELAY;
+        /**
+         * Whether the lane has waited for credits, after which it may probe the zone.
+         */
+        private boolean waited = false;
+        private long sequence = 0;
+        /**
+         * Size of the bulk which has failed and has to be sent again
+         * with the same sequence number, {@code 0} when none.
+         */
+        private int retrySize = 0;
+
+        private Lane(int index, SpillQueue queue) {
+            this.index = index;
+            this.queue = queue;
+        }
+
+        private void schedule(long delayMillis) {
+            if (delayMillis <= 0) {
+                sender.execute(this::flush);
+            } else {
+                scheduler.schedule(() -> sender.execute(this::flush), delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flush() {
+            // counted before polling, so that the events are never invisible
+            inFlight.incrementAndGet();
+            int acquired = acquireCredits();
+            if (acquired == 0 && !(waited && inFlight.get() == 1)) {
+                // wait for credits from a response, or probe the zone after a delay
+                inFlight.decrementAndGet();
+                waited = true;
+                retryLater();
+                return;
             }
 
+            waited = false;
+            // a failed bulk has been put back at the front of the queue
+            int max = retrySize > 0 ? retrySize : acquired > 0 ? acquired : MIN_WINDOW;
+            List<Message> toSend = queue.poll(max);
+            if (acquired > toSend.size()) {
+                releaseCredits(acquired - toSend.size());
+                acquired = toSend.size();
+            }
             if (toSend.isEmpty()) {
+                inFlight.decrementAndGet();
+                idle();
                 return;
             }
 
-            boolean success = false;
+            sending(toSend.size());
+            long start = System.nanoTime();
+            int bulkCredits = acquired;
+            if (retrySize == 0) {
+                ++sequence;
+            }
+            BulkMessagesDto bulk = BulkMessagesDto.builder()
+                    .sender(Config.ZONE_ID)
+                    .epoch(EPOCH)
+                    .lane(index)
+                    .sequence(sequence)
+                    .messages(toSend.stream()
+                            .map(m -> MessageDto.builder()
+                                    .vertexName(m.getId().name())
+                                    .event(m.getEvent())
+                                    .build())
+                            .collect(Collectors.toList()))
+                    .build();
+            CompletableFuture<CreditsDto> response;
             try {
-                new ZoneClient().postEvents(zone, BulkMessagesDto.builder()
-                        .messages(toSend.stream()
-                                .map(m -> MessageDto.builder()
-                                        .vertexName(m.getId().name())
-                                        .event(m.getEvent())
-                                        .build())
-                                .collect(Collectors.toList()))
-                        .build());
-                success = true;
-                sent = toSend.size();
-            } finally {
-                if (!success) {
-                    for (int i = toSend.size() - 1; i >= 0; --i) {
-                        queue.addFirst(toSend.get(i));
-                    }
-                }
+                response = ZoneClient.getInstance().postEventsAsync(zone, bulk);
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
             }
-        } finally {
-            if (sent != 0) {
-                this.lastDelay = INITIAL_DELAY;
+            // the lane continues when the response arrives, without blocking a thread
+            response.whenComplete((granted, e) -> sent(toSend, bulkCredits, start, granted, e));
+        }
+
+        private void sent(List<Message> toSend, int acquired, long start, CreditsDto granted, Throwable error) {
+            boolean success = error == null;
+            if (!success) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                log.warn("Cannot send {} events to {}: {}", toSend.size(), zone, cause.getMessage());
+                queue.addFirst(toSend);
+                retrySize = toSend.size();
             } else {
-                this.lastDelay *= BACKOFF_COEFF;
-                if (this.lastDelay > MAX_DELAY) {
-                    this.lastDelay = MAX_DELAY;
+                retrySize = 0;
+            }
+            inFlight.decrementAndGet();
+
+            if (success) {
+                sendTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                sentMeter.mark(toSend.size());
+                if (!granted(granted, toSend.size())) {
+                    delay = INITIAL_DELAY;
+                }
+                if (queue.isEmpty()) {
+                    idle();
+                } else {
+                    schedule(0);
                 }
+            } else {
+                failuresMeter.mark();
+                failed(acquired, toSend.size());
+                retryLater();
+            }
+        }
+
+        private void retryLater() {
+            schedule(delay);
+            delay = Math.min(MAX_DELAY, (long) (delay * BACKOFF_COEFF));
+        }
+
+        private void idle() {
+            scheduled.set(false);
+            // an event might have been posted before the flag was cleared
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                schedule(lingerMillis);
             }
-            executor.schedule(this::flush, this.lastDelay, TimeUnit.MILLISECONDS);
         }
     }
 }
@@ -0,0 +1,60 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Executes tasks processing events of vertices. {@link InboxProcessor}
+ * guarantees that tasks of one vertex are never submitted concurrently.
+ *
+ * @author Kamil Jarosz
+ */
+public interface ProcessingEngine {
+    /**
+     * @param backlog supplier of the number of events waiting to be processed
+     */
+    static ProcessingEngine create(Config config, IntSupplier backlog) {
+        switch (config.getProcessingEngine()) {
+            case POOL:
+                return new ThreadPoolProcessingEngine(config, backlog);
+            case SHARDED:
+                return new ShardedProcessingEngine(config.getProcessingThreads());
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    void execute(VertexId id, Runnable task);
+
+    /**
+     * @return the current number of worker threads
+     */
+    int getThreads();
+
+    /**
+     * @return a description of the last change of the number of
+     * worker threads, empty if the engine does not scale itself
+     */
+    default String getScalingDecision() {
+        return "";
+    }
+
+    enum Type {
+        /**
+         * Vertices are processed by a shared pool of workers,
+         * see {@link ThreadPoolProcessingEngine}.
+         */
+        @JsonProperty("pool")
+        POOL,
+
+        /**
+         * Vertices are partitioned among single-threaded event loops,
+         * see {@link ShardedProcessingEngine}.
+         */
+        @JsonProperty("sharded")
+        SHARDED,
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.rest.client.ZoneClient;
+import com.github.kjarosh.agh.pp.rest.dto.QuiescenceStateDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects whether all zones are quiescent, i.e. no events are queued,
+ * processed or sent anywhere, using the four counter method.
+ * <p>
+ * Each zone counts events sent to and received from other zones.
+ * A wave collects the counters and idleness of all zones, which is not
+ * a consistent snapshot, so the system is quiescent only when two
+ * consecutive waves find all zones idle, the same counters, and the
+ * number of events sent to each zone equal to the number of events it
+ * has received. The number of events posted in each zone is compared too,
+ * so that local activity between the waves is noticed.
+ * <p>
+ * A zone answers a wave when it is locally idle or when the wait time
+ * elapses, so that waves are not repeated while zones are busy.
+ *
+ * @author Kamil Jarosz
+ */
+@Service
+public class QuiescenceTracker {
+    private static final long IDLE_CHECK_MILLIS = 10;
+    private static final long WAVE_MILLIS = 1000;
+
+    private final ConcurrentMap<ZoneId, LongAdder> received = new ConcurrentHashMap<>();
+    private final Object idleMonitor = new Object();
+
+    @Autowired
+    private Inbox inbox;
+
+    @Autowired
+    private InboxProcessor inboxProcessor;
+
+    @PostConstruct
+    public void init() {
+        inboxProcessor.addIdleListener(this::maybeIdle);
+    }
+
+    public void received(ZoneId sender, int count) {
+        received.computeIfAbsent(sender, z -> new LongAdder()).add(count);
+    }
+
+    private void maybeIdle() {
+        synchronized (idleMonitor) {
+            idleMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the state of this zone, after waiting at most
+     * the given time for it to become idle.
+     */
+    public QuiescenceStateDto state(long waitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        long remaining;
+        while (!inboxProcessor.isStalled() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            synchronized (idleMonitor) {
+                // outboxes do not notify, hence the upper bound
+                idleMonitor.wait(Math.min(remaining, IDLE_CHECK_MILLIS));
+            }
+        }
+        return state();
+    }
+
+    private QuiescenceStateDto state() {
+        Map<String, Long> receivedNow = new HashMap<>();
+        received.forEach((zone, count) -> receivedNow.put(zone.getId(), count.sum()));
+        return QuiescenceStateDto.builder()
+                .idle(inboxProcessor.isStalled())
+                .posted(inbox.postedTotal())
+                .sent(Outbox.allPosted())
+                .received(receivedNow)
+                .build();
+    }
+
+    /**
+     * Waits until all given zones are quiescent.
+     *
+     * @return {@code false} when the zones have not become quiescent in time
+     */
+    public boolean awaitQuiescence(Collection<ZoneId> zones, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Map<ZoneId, QuiescenceStateDto> previous = null;
+        while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining < 0) {
+                return false;
+            }
+
+            Map<ZoneId, QuiescenceStateDto> wave = wave(zones, Math.min(remaining, WAVE_MILLIS));
+            boolean candidate = wave.values().stream().allMatch(QuiescenceStateDto::isIdle) && balanced(wave);
+            if (candidate && wave.equals(previous)) {
+                return true;
+            }
+
+            if (candidate) {
+                previous = wave;
+            } else {
+                previous = null;
+                if (wave.values().stream().allMatch(QuiescenceStateDto::isIdle)) {
+                    // counters of zones collected at different times
+                    Thread.sleep(IDLE_CHECK_MILLIS);
+                }
+            }
+        }
+    }
+
+    private Map<ZoneId, QuiescenceStateDto> wave(Collection<ZoneId> zones, long waitMillis) throws InterruptedException {
+        Map<ZoneId, CompletableFuture<QuiescenceStateDto>> futures = new HashMap<>();
+        for (ZoneId zone : zones) {
+            if (!zone.equals(Config.ZONE_ID)) {
+                futures.put(zone, ZoneClient.getInstance().quiescenceStateAsync(zone, waitMillis));
+            }
+        }
+
+        Map<ZoneId, QuiescenceStateDto> wave = new HashMap<>();
+        if (zones.contains(Config.ZONE_ID)) {
+            wave.put(Config.ZONE_ID, state(waitMillis));
+        }
+        futures.forEach((zone, future) -> wave.put(zone, ZoneClient.await(future)));
+        return wave;
+    }
+
+    /**
+     * @return whether each zone has received all events sent to it
+     */
+    static boolean balanced(Map<ZoneId, QuiescenceStateDto> wave) {
+        for (Map.Entry<ZoneId, QuiescenceStateDto> from : wave.entrySet()) {
+            for (Map.Entry<ZoneId, QuiescenceStateDto> to : wave.entrySet()) {
+                long sent = from.getValue().getSent().getOrDefault(to.getKey().getId(), 0L);
+                long received = to.getValue().getReceived().getOrDefault(from.getKey().getId(), 0L);
+                if (sent != received) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
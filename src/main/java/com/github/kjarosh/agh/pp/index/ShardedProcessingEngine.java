@@ -0,0 +1,47 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Processing engine which partitions vertices among a fixed number
+ * of single-threaded event loops by the hash of their IDs.
+ * <p>
+ * Each vertex is always processed by the same thread, so its events are
+ * naturally ordered and its index is never accessed by more than one
+ * worker thread.
+ *
+ * @author Kamil Jarosz
+ */
+public class ShardedProcessingEngine implements ProcessingEngine {
+    private final ThreadFactory treadFactory = new ThreadFactoryBuilder()
+            .setNameFormat(Config.ZONE_ID + "-loop-%d")
+            .build();
+    private final ExecutorService[] loops;
+
+    public ShardedProcessingEngine(int threads) {
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+
+        this.loops = new ExecutorService[threads];
+        for (int i = 0; i < threads; ++i) {
+            loops[i] = Executors.newSingleThreadExecutor(treadFactory);
+        }
+    }
+
+    @Override
+    public void execute(VertexId id, Runnable task) {
+        loops[Math.floorMod(id.hashCode(), loops.length)].execute(task);
+    }
+
+    @Override
+    public int getThreads() {
+        return loops.length;
+    }
+}
@@ -0,0 +1,243 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointInput;
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointOutput;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A FIFO queue of {@link Message}s which keeps at most a given number
+ * of messages in memory and spills the others to sequential segment files.
+ * <p>
+ * Once a message has been spilled, all following messages are spilled
+ * too, until the spilled messages are read back, so that the order is
+ * preserved. Segments are read back as a whole when there is room for
+ * them in memory and deleted afterwards. Spilled messages are not
+ * persistent, segments left by a previous run are deleted.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+class SpillQueue {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final String name;
+    private final int memoryLimit;
+    private final int segmentSize;
+
+    private final Deque<Message> memory = new ArrayDeque<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private Segment writing;
+    private int spilled = 0;
+    private int nextSegment = 0;
+    private long spilledTotal = 0;
+
+    /**
+     * @param memoryLimit maximum number of messages added to the queue
+     *                    which are kept in memory, {@code 0} to spill all of them
+     * @param segmentSize number of messages in a segment, segments
+     *                    which are read back are kept in memory regardless
+     *                    of the memory limit
+     */
+    SpillQueue(Path directory, String name, int memoryLimit, int segmentSize) {
+        this.directory = directory;
+        this.name = name;
+        this.memoryLimit = Math.max(0, memoryLimit);
+        this.segmentSize = Math.max(1, segmentSize);
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, name + "-*.spill")) {
+                for (Path segment : stream) {
+                    Files.delete(segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void addLast(Message message) {
+        if (spilled == 0 && memory.size() < memoryLimit) {
+            memory.addLast(message);
+        } else {
+            spill(message);
+        }
+    }
+
+    /**
+     * Puts back messages which have been polled, e.g. when
+     * they could not be sent. They are kept in memory.
+     */
+    synchronized void addFirst(List<Message> messages) {
+        for (int i = messages.size() - 1; i >= 0; --i) {
+            memory.addFirst(messages.get(i));
+        }
+    }
+
+    synchronized Message poll() {
+        readBack();
+        return memory.pollFirst();
+    }
+
+    synchronized List<Message> poll(int max) {
+        List<Message> messages = new ArrayList<>(Math.min(max, size()));
+        while (messages.size() < max) {
+            readBack();
+            Message message = memory.pollFirst();
+            if (message == null) {
+                break;
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    synchronized int size() {
+        return memory.size() + spilled;
+    }
+
+    synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of messages which are spilled at the moment
+     */
+    synchronized int spilled() {
+        return spilled;
+    }
+
+    /**
+     * @return the number of messages which have ever been spilled
+     */
+    synchronized long spilledTotal() {
+        return spilledTotal;
+    }
+
+    /**
+     * Iterates over all messages in order, including spilled ones.
+     */
+    synchronized void forEach(BiConsumer<VertexId, Event> consumer) {
+        memory.forEach(m -> consumer.accept(m.getId(), m.getEvent()));
+        for (Segment segment : segments) {
+            segment.read(m -> consumer.accept(m.getId(), m.getEvent()));
+        }
+        if (writing != null) {
+            writing.flush();
+            writing.read(m -> consumer.accept(m.getId(), m.getEvent()));
+        }
+    }
+
+    private void spill(Message message) {
+        if (writing == null || writing.count >= segmentSize) {
+            if (writing != null) {
+                writing.close();
+                segments.addLast(writing);
+            }
+            writing = new Segment(directory.resolve(String.format("%s-%08d.spill", name, nextSegment++)));
+            log.debug("Spilling {} to {}", name, writing.path);
+        }
+
+        writing.write(message);
+        ++spilled;
+        ++spilledTotal;
+    }
+
+    /**
+     * Reads back the oldest segment when memory is empty
+     * or when there is enough room for the whole segment.
+     */
+    private void readBack() {
+        if (spilled == 0 || !(memory.isEmpty() || memory.size() + segmentSize <= memoryLimit)) {
+            return;
+        }
+
+        if (segments.isEmpty()) {
+            writing.close();
+            segments.addLast(writing);
+            writing = null;
+        }
+
+        Segment segment = segments.removeFirst();
+        segment.read(memory::addLast);
+        spilled -= segment.count;
+        segment.delete();
+    }
+
+    private static class Segment {
+        private final Path path;
+        private CheckpointOutput out;
+        private int count = 0;
+
+        private Segment(Path path) {
+            this.path = path;
+            try {
+                out = new CheckpointOutput(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write(Message message) {
+            try {
+                out.writeVertexId(message.getId());
+                out.writeEvent(message.getEvent());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ++count;
+        }
+
+        private void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void read(Consumer<Message> consumer) {
+            try (InputStream is = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+                CheckpointInput in = new CheckpointInput(is);
+                for (int i = 0; i < count; ++i) {
+                    consumer.accept(new Message(in.readVertexId(), in.readEvent()));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void delete() {
+            try {
+                Files.delete(path);
+            } catch (IOException e) {
+                log.warn("Cannot delete spill segment {}", path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Processing engine which submits all vertices to a shared pool of workers.
+ * A vertex may be processed by a different worker each time it is scheduled.
+ * <p>
+ * The pool resizes itself periodically. The number of workers is the
+ * lowest of:
+ * <ul>
+ *     <li>the number of workers needed to process the inbox backlog
+ *     within one resize period, given the observed time of processing
+ *     an event,</li>
+ *     <li>the number of workers needed to saturate all processors,
+ *     given the observed fraction of time a worker spends on CPU,</li>
+ *     <li>the number of vertices which may be processed concurrently,</li>
+ * </ul>
+ * bounded by the limits from {@link Config}. The pool grows immediately
+ * and shrinks by at most a half per period.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+public class ThreadPoolProcessingEngine implements ProcessingEngine {
+    private static final int CPU_TIME_SAMPLING = 16;
+    private static final double SMOOTHING = 0.3;
+    private static final double MIN_CPU_RATIO = 0.05;
+
+    private final ThreadFactory treadFactory = new ThreadFactoryBuilder()
+            .setNameFormat(Config.ZONE_ID + "-worker-%d")
+            .build();
+    private final ThreadFactory resizerThreadFactory = new ThreadFactoryBuilder()
+            .setNameFormat(Config.ZONE_ID + "-worker-resizer")
+            .setDaemon(true)
+            .build();
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported = threadMXBean.isCurrentThreadCpuTimeSupported();
+    private final int processors = Runtime.getRuntime().availableProcessors();
+
+    private final ThreadPoolExecutor executor;
+    private final IntSupplier backlog;
+    private final int minSize;
+    private final int maxSize;
+    private final long periodNanos;
+
+    private final AtomicLong taskCounter = new AtomicLong();
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder wallTime = new LongAdder();
+    private final LongAdder sampledWallTime = new LongAdder();
+    private final LongAdder sampledCpuTime = new LongAdder();
+    private double eventTimeNanos = 0;
+    private double cpuRatio = 1;
+    private volatile String scalingDecision = "";
+
+    public ThreadPoolProcessingEngine(Config config, IntSupplier backlog) {
+        this.backlog = backlog;
+        this.minSize = Math.max(1, config.getWorkerPoolMinSize());
+        this.maxSize = Math.max(minSize, config.getWorkerPoolMaxSize() > 0 ?
+                config.getWorkerPoolMaxSize() : 2 * processors);
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(config.getWorkerPoolResizePeriodMillis());
+        this.executor = new ThreadPoolExecutor(
+                minSize, minSize,
+                10L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                treadFactory);
+
+        ScheduledExecutorService resizer = Executors.newSingleThreadScheduledExecutor(resizerThreadFactory);
+        resizer.scheduleWithFixedDelay(this::resize,
+                periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+        log.info("Worker pool limits: {}-{}", minSize, maxSize);
+    }
+
+    @Override
+    public void execute(VertexId id, Runnable task) {
+        executor.execute(() -> run(task));
+    }
+
+    private void run(Runnable task) {
+        boolean sampleCpuTime = cpuTimeSupported &&
+                taskCounter.incrementAndGet() % CPU_TIME_SAMPLING == 0;
+        long cpuStart = sampleCpuTime ? threadMXBean.getCurrentThreadCpuTime() : 0;
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            long wall = System.nanoTime() - start;
+            tasks.increment();
+            wallTime.add(wall);
+            if (sampleCpuTime) {
+                sampledCpuTime.add(threadMXBean.getCurrentThreadCpuTime() - cpuStart);
+                sampledWallTime.add(wall);
+            }
+        }
+    }
+
+    private void resize() {
+        try {
+            resize0();
+        } catch (Exception e) {
+            log.error("Error while resizing the worker pool", e);
+        }
+    }
+
+    private void resize0() {
+        long count = tasks.sumThenReset();
+        long wall = wallTime.sumThenReset();
+        long sampledWall = sampledWallTime.sumThenReset();
+        long sampledCpu = sampledCpuTime.sumThenReset();
+        if (count > 0) {
+            eventTimeNanos = smooth(eventTimeNanos, (double) wall / count);
+        }
+        if (sampledWall > 0) {
+            double ratio = Math.min(1, Math.max(MIN_CPU_RATIO, (double) sampledCpu / sampledWall));
+            cpuRatio = smooth(cpuRatio, ratio);
+        }
+
+        int queued = backlog.getAsInt();
+        int runnable = executor.getQueue().size() + executor.getActiveCount();
+        int forBacklog = (int) Math.ceil(queued * eventTimeNanos / periodNanos);
+        int forProcessors = (int) Math.ceil(processors / cpuRatio);
+
+        int current = executor.getCorePoolSize();
+        int target = Math.min(forBacklog, Math.min(forProcessors, runnable));
+        target = Math.max(minSize, Math.min(maxSize, target));
+        if (target < current) {
+            target = Math.max(target, current - Math.max(1, current / 2));
+        }
+
+        if (target == current) {
+            return;
+        }
+
+        if (target > current) {
+            executor.setMaximumPoolSize(target);
+            executor.setCorePoolSize(target);
+        } else {
+            executor.setCorePoolSize(target);
+            executor.setMaximumPoolSize(target);
+        }
+
+        scalingDecision = String.format("%d->%d (backlog %d, runnable %d, event %.0fus, cpu %.0f%%)",
+                current, target, queued, runnable, eventTimeNanos / 1000, cpuRatio * 100);
+        log.debug("Resizing worker pool: {}", scalingDecision);
+    }
+
+    private double smooth(double previous, double current) {
+        if (previous <= 0) {
+            return current;
+        }
+
+        return SMOOTHING * current + (1 - SMOOTHING) * previous;
+    }
+
+    @Override
+    public int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    @Override
+    public String getScalingDecision() {
+        return scalingDecision;
+    }
+}
@@ -0,0 +1,277 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.rest.client.ZoneClient;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStateDto;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStatesDto;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStatsDto;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks propagation of the events of each trace, i.e. of a modification,
+ * by counting events of the trace which have been posted and processed.
+ * <p>
+ * Events are counted as posted before they are posted, and as processed
+ * after the events they cause have been posted, so a trace is complete
+ * when the numbers of posted and processed events summed over all zones
+ * are equal. Counters of zones are not collected at the same time,
+ * therefore the trace is complete only when two consecutive collections
+ * give the same, equal numbers.
+ * <p>
+ * Traces of modifications applied by this zone are checked periodically,
+ * and the time of propagating them is measured when they complete.
+ *
+ * @author Kamil Jarosz
+ */
+@Slf4j
+@Service
+public class TraceTracker {
+    private static final long MIN_PAUSE_MILLIS = 5;
+    private static final long MAX_PAUSE_MILLIS = 200;
+    private static final TraceStateDto UNCHECKED = TraceStateDto.builder()
+            .posted(-1)
+            .completed(-1)
+            .build();
+
+    private final ConcurrentMap<String, Trace> traces = new ConcurrentHashMap<>();
+    /**
+     * Traces of modifications applied by this zone which have not
+     * completed yet, with their state collected by the previous check.
+     */
+    private final ConcurrentMap<String, TraceStateDto> pending = new ConcurrentHashMap<>();
+    private final Histogram latency = new Histogram(new ExponentiallyDecayingReservoir());
+    private final LongAdder completedTraces = new LongAdder();
+
+    private boolean enabled;
+    private int limit;
+    private long retentionMillis;
+
+    @Autowired
+    private GraphLoader graphLoader;
+
+    @PostConstruct
+    public void init() {
+        Config config = ConfigLoader.getConfig();
+        enabled = config.isTraceTracking();
+        limit = config.getTraceTrackingLimit();
+        retentionMillis = config.getTraceRetentionMillis();
+        if (!enabled) {
+            log.info("Trace tracking disabled");
+            return;
+        }
+
+        long checkMillis = Math.max(1, config.getTraceCheckMillis());
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(Config.ZONE_ID + "-traces")
+                .setDaemon(true)
+                .build())
+                .scheduleWithFixedDelay(this::check, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks the trace as a modification applied by this zone.
+     */
+    public void started(String trace) {
+        if (enabled && trace != null && pending.size() < limit) {
+            pending.putIfAbsent(trace, UNCHECKED);
+        }
+    }
+
+    public void posted(String trace, int count) {
+        if (enabled && trace != null) {
+            traces.computeIfAbsent(trace, t -> new Trace()).posted(count);
+        }
+    }
+
+    public void completed(String trace) {
+        if (enabled && trace != null) {
+            traces.computeIfAbsent(trace, t -> new Trace()).completed();
+        }
+    }
+
+    /**
+     * @return states of the given traces in this zone, unknown traces are omitted
+     */
+    public TraceStatesDto localStates(Collection<String> traceIds) {
+        TraceStatesDto states = new TraceStatesDto();
+        for (String traceId : traceIds) {
+            Trace trace = traces.get(traceId);
+            if (trace != null) {
+                states.put(traceId, trace.state());
+            }
+        }
+        return states;
+    }
+
+    /**
+     * @return states of the given traces combined from the given zones
+     */
+    private Map<String, TraceStateDto> states(Collection<String> traceIds, Collection<ZoneId> zones) {
+        Set<ZoneId> remote = new HashSet<>(zones);
+        remote.remove(Config.ZONE_ID);
+        List<CompletableFuture<TraceStatesDto>> futures = new ArrayList<>();
+        for (ZoneId zone : remote) {
+            futures.add(ZoneClient.getInstance().traceStatesAsync(zone, traceIds));
+        }
+
+        Map<String, TraceStateDto> states = new HashMap<>(localStates(traceIds));
+        for (CompletableFuture<TraceStatesDto> future : futures) {
+            ZoneClient.await(future).forEach((trace, state) -> states.merge(trace, state, TraceStateDto::combine));
+        }
+        return states;
+    }
+
+    /**
+     * @return whether all events of the trace have been processed,
+     * and no events have been counted since the previous collection
+     */
+    static boolean balanced(TraceStateDto state, TraceStateDto previous) {
+        return state.getPosted() == state.getCompleted() &&
+                previous.getPosted() == state.getPosted() &&
+                previous.getCompleted() == state.getCompleted();
+    }
+
+    /**
+     * Waits until all events of the trace have been processed in the given zones,
+     * which must include all zones the events of the trace may be posted to.
+     *
+     * @return state of the trace, which is not complete when
+     * the trace has not completed in time
+     */
+    public TraceStateDto await(String traceId, Collection<ZoneId> zones, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long pause = MIN_PAUSE_MILLIS;
+        TraceStateDto previous = UNCHECKED;
+        while (true) {
+            TraceStateDto state = states(List.of(traceId), zones).getOrDefault(traceId, new TraceStateDto());
+            if (balanced(state, previous)) {
+                state.setComplete(true);
+                return state;
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return state;
+            }
+
+            if (state.getPosted() == state.getCompleted()) {
+                // collect again at once to confirm
+                pause = MIN_PAUSE_MILLIS;
+            } else {
+                Thread.sleep(Math.min(pause, remaining));
+                pause = Math.min(MAX_PAUSE_MILLIS, pause * 2);
+            }
+            previous = state;
+        }
+    }
+
+    private void check() {
+        try {
+            long now = System.currentTimeMillis();
+            traces.entrySet().removeIf(e -> now - e.getValue().lastActivityMillis() > retentionMillis);
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            List<String> traceIds = new ArrayList<>(pending.keySet());
+            Map<String, TraceStateDto> states = states(traceIds, graphLoader.allZones());
+            for (Map.Entry<String, TraceStateDto> entry : states.entrySet()) {
+                String traceId = entry.getKey();
+                TraceStateDto state = entry.getValue();
+                TraceStateDto previous = pending.get(traceId);
+                if (previous == null) {
+                    continue;
+                }
+
+                if (!balanced(state, previous)) {
+                    pending.put(traceId, state);
+                } else if (pending.remove(traceId, previous)) {
+                    latency.update(state.getDurationMillis());
+                    completedTraces.increment();
+                }
+            }
+
+            // traces without events, e.g. dropped in the meantime
+            for (String traceId : traceIds) {
+                if (!states.containsKey(traceId)) {
+                    pending.remove(traceId);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Cannot check traces: {}", e.getMessage());
+        }
+    }
+
+    public TraceStatsDto stats() {
+        Snapshot snapshot = latency.getSnapshot();
+        return TraceStatsDto.builder()
+                .tracked(traces.size())
+                .pending(pending.size())
+                .completed(completedTraces.sum())
+                .latencyMillisMean(snapshot.getMean())
+                .latencyMillis50(snapshot.getMedian())
+                .latencyMillis90(snapshot.getValue(0.9))
+                .latencyMillis99(snapshot.get99thPercentile())
+                .latencyMillisMax(snapshot.getMax())
+                .build();
+    }
+
+    private static class Trace {
+        private long posted = 0;
+        private long completed = 0;
+        private long startMillis = Long.MAX_VALUE;
+        private long endMillis = 0;
+        private long lastActivityMillis = System.currentTimeMillis();
+
+        private synchronized void posted(int count) {
+            long now = System.currentTimeMillis();
+            posted += count;
+            startMillis = Math.min(startMillis, now);
+            lastActivityMillis = now;
+        }
+
+        private synchronized void completed() {
+            long now = System.currentTimeMillis();
+            ++completed;
+            endMillis = Math.max(endMillis, now);
+            lastActivityMillis = now;
+        }
+
+        private synchronized long lastActivityMillis() {
+            return lastActivityMillis;
+        }
+
+        private synchronized TraceStateDto state() {
+            return TraceStateDto.builder()
+                    .posted(posted)
+                    .completed(completed)
+                    .startMillis(startMillis)
+                    .endMillis(endMillis)
+                    .build();
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package com.github.kjarosh.agh.pp.index;
 
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
-import lombok.Getter;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
@@ -10,51 +10,151 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * The index for a vertex which contains pre-computed graph
  * information used for near-constant time queries.
+ * <p>
+ * Effective vertices are kept by an {@link IndexStorage}, which may page
+ * them out when the index is not used, so the maps returned here should
+ * not be held on to. Indexes of vertices whose events are being processed
+ * are pinned, so that they are not paged out while being modified.
  *
  * @author Kamil Jarosz
  */
-@Getter
 public class VertexIndex {
-    private final Map<VertexId, EffectiveVertex> effectiveChildren = new ConcurrentHashMap<>();
-    private final Map<VertexId, EffectiveVertex> effectiveParents = new ConcurrentHashMap<>();
+    private final IndexStorage storage;
+
+    /**
+     * Effective vertices, {@code null} when paged out or not created yet.
+     * The following fields are managed by the storage.
+     */
+    volatile Entries entries;
+    long page = -1;
+    int pageLength;
+    int pins;
+    boolean referenced;
+
+    public VertexIndex() {
+        this(IndexStorage.getInstance());
+    }
+
+    VertexIndex(IndexStorage storage) {
+        this.storage = storage;
+    }
+
+    public Map<VertexId, EffectiveVertex> getEffectiveChildren() {
+        return storage.load(this).effectiveChildren;
+    }
+
+    public Map<VertexId, EffectiveVertex> getEffectiveParents() {
+        return storage.load(this).effectiveParents;
+    }
+
+    /**
+     * Prevents the index from being paged out until {@link #unpin()} is called.
+     */
+    public void pin() {
+        storage.pin(this);
+    }
+
+    public void unpin() {
+        storage.unpin(this);
+    }
+
+    /**
+     * Copies effective vertices without paging the index in,
+     * so that they may be read while the index is being modified.
+     * The index must not be modified while it is being copied.
+     */
+    public Snapshot snapshot() {
+        return storage.snapshot(this);
+    }
 
     public EffectiveVertex getOrAddEffectiveParent(VertexId id, Runnable createListener) {
-        EffectiveVertex effectiveVertex;
-        if (!effectiveParents.containsKey(id)) {
-            effectiveVertex = new EffectiveVertex();
-            effectiveParents.put(id, effectiveVertex);
-            createListener.run();
-        } else {
-            effectiveVertex = effectiveParents.get(id);
-        }
-        return effectiveVertex;
+        return getOrAdd(getEffectiveParents(), id, createListener);
     }
 
     public Optional<EffectiveVertex> getEffectiveParent(VertexId id) {
-        return Optional.ofNullable(effectiveParents.get(id));
+        return Optional.ofNullable(getEffectiveParents().get(id));
     }
 
     public void removeEffectiveParent(VertexId subjectId) {
-        effectiveParents.remove(subjectId);
+        getEffectiveParents().remove(subjectId);
     }
 
     public EffectiveVertex getOrAddEffectiveChild(VertexId id, Runnable createListener) {
-        EffectiveVertex effectiveVertex;
-        if (!effectiveChildren.containsKey(id)) {
+        return getOrAdd(getEffectiveChildren(), id, createListener);
+    }
+
+    public Optional<EffectiveVertex> getEffectiveChild(VertexId id) {
+        return Optional.ofNullable(getEffectiveChildren().get(id));
+    }
+
+    public void removeEffectiveChild(VertexId subjectId) {
+        getEffectiveChildren().remove(subjectId);
+    }
+
+    private EffectiveVertex getOrAdd(Map<VertexId, EffectiveVertex> effectiveVertices, VertexId id, Runnable createListener) {
+        EffectiveVertex effectiveVertex = effectiveVertices.get(id);
+        if (effectiveVertex == null) {
             effectiveVertex = new EffectiveVertex();
-            effectiveChildren.put(id, effectiveVertex);
+            effectiveVertices.put(id, effectiveVertex);
             createListener.run();
-        } else {
-            effectiveVertex = effectiveChildren.get(id);
         }
         return effectiveVertex;
     }
 
-    public Optional<EffectiveVertex> getEffectiveChild(VertexId id) {
-        return Optional.ofNullable(effectiveChildren.get(id));
+    static class Entries {
+        final Map<VertexId, EffectiveVertex> effectiveChildren = new ConcurrentHashMap<>();
+        final Map<VertexId, EffectiveVertex> effectiveParents = new ConcurrentHashMap<>();
+
+        boolean isEmpty() {
+            return effectiveChildren.isEmpty() && effectiveParents.isEmpty();
+        }
     }
 
-    public void removeEffectiveChild(VertexId subjectId) {
-        effectiveChildren.remove(subjectId);
+    /**
+     * Effective vertices of an index at some point, either copied
+     * or as the page of a paged out index, decoded when first read.
+     */
+    public static class Snapshot {
+        private Map<VertexId, EffectiveVertex> effectiveChildren;
+        private Map<VertexId, EffectiveVertex> effectiveParents;
+        private byte[] page;
+
+        static Snapshot copyOf(Entries entries) {
+            Snapshot snapshot = new Snapshot();
+            snapshot.effectiveChildren = copy(entries.effectiveChildren);
+            snapshot.effectiveParents = copy(entries.effectiveParents);
+            return snapshot;
+        }
+
+        static Snapshot ofPage(byte[] page) {
+            Snapshot snapshot = new Snapshot();
+            snapshot.page = page;
+            return snapshot;
+        }
+
+        private static Map<VertexId, EffectiveVertex> copy(Map<VertexId, EffectiveVertex> effectiveVertices) {
+            Map<VertexId, EffectiveVertex> copy = new HashMap<>(effectiveVertices.size() * 4 / 3 + 1);
+            effectiveVertices.forEach((id, effectiveVertex) -> copy.put(id, effectiveVertex.copy()));
+            return copy;
+        }
+
+        public Map<VertexId, EffectiveVertex> getEffectiveChildren() {
+            decode();
+            return effectiveChildren;
+        }
+
+        public Map<VertexId, EffectiveVertex> getEffectiveParents() {
+            decode();
+            return effectiveParents;
+        }
+
+        private void decode() {
+            if (page != null) {
+                Entries entries = MappedIndexStorage.decode(page);
+                effectiveChildren = entries.effectiveChildren;
+                effectiveParents = entries.effectiveParents;
+                page = null;
+            }
+        }
     }
 }
@@ -40,6 +40,21 @@ public class EventStats {
      */
     private int outbox;
 
+    /**
+     * Total number of events spilled to disk by the inbox and outboxes.
+     */
+    private long spilled;
+
+    /**
+     * Number of duplicate bulks of events received and dropped.
+     */
+    private long duplicates;
+
+    /**
+     * Statistics of sending events, by the destination zone.
+     */
+    private Map<String, OutboxStats> outboxes;
+
     /**
      * Total number of events.
      */
@@ -60,6 +75,17 @@ public class EventStats {
      */
     private double load15;
 
+    /**
+     * Number of worker threads processing events.
+     */
+    private int workers;
+
+    /**
+     * Description of the last change of the number of workers,
+     * prefixed with the zone, separated by semicolons when combined.
+     */
+    private String scaling;
+
     public static EventStats empty() {
         return EventStats.builder()
                 .processing(0)
@@ -67,9 +93,14 @@ public class EventStats {
                 .total(0)
                 .queued(0)
                 .outbox(0)
+                .spilled(0)
+                .duplicates(0)
+                .outboxes(new HashMap<>())
                 .load1(0)
                 .load5(0)
                 .load15(0)
+                .workers(0)
+                .scaling("")
                 .build();
     }
 
@@ -78,24 +109,45 @@ public class EventStats {
         Map<Vertex.Type, Integer> processingByType2 = new HashMap<>(processingByType);
         other.processingByType.forEach((key, value) ->
                 processingByType2.merge(key, value, Integer::sum));
+        Map<String, OutboxStats> outboxes2 = new HashMap<>(outboxes != null ? outboxes : Map.of());
+        if (other.outboxes != null) {
+            other.outboxes.forEach((key, value) ->
+                    outboxes2.merge(key, value, OutboxStats::combine));
+        }
         return EventStats.builder()
                 .processing(processing + other.processing)
                 .processingByType(processingByType2)
                 .total(total + other.total)
                 .queued(queued + other.queued)
                 .outbox(outbox + other.outbox)
+                .spilled(spilled + other.spilled)
+                .duplicates(duplicates + other.duplicates)
+                .outboxes(outboxes2)
                 .load1(load1 + other.load1)
                 .load5(load5 + other.load5)
                 .load15(load15 + other.load15)
+                .workers(workers + other.workers)
+                .scaling(combineScaling(scaling, other.scaling))
                 .build();
     }
 
+    private static String combineScaling(String a, String b) {
+        if (a == null || a.isEmpty()) {
+            return b;
+        }
+        if (b == null || b.isEmpty()) {
+            return a;
+        }
+        return a + "; " + b;
+    }
+
     @Override
     public String toString() {
         return String.format("eq: %d/%d", processing, queued) +
                 String.format("  out: %d", outbox) +
                 String.format("  ld: %.0f/%.0f/%.0f", load1, load5, load15) +
                 String.format("  tot: %d", total) +
+                String.format("  wk: %d", workers) +
                 String.format("  %dp %ds %dg %du",
                         processingByType.getOrDefault(Vertex.Type.PROVIDER, 0),
                         processingByType.getOrDefault(Vertex.Type.SPACE, 0),
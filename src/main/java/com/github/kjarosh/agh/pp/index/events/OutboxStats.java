@@ -0,0 +1,84 @@
+package com.github.kjarosh.agh.pp.index.events;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Statistics of sending events to a zone.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxStats {
+    /**
+     * Number of events waiting to be sent.
+     */
+    private int queued;
+
+    /**
+     * Number of bulks being sent.
+     */
+    private int inFlight;
+
+    /**
+     * Total number of events sent.
+     */
+    private long sent;
+
+    /**
+     * Total number of bulks sent successfully.
+     */
+    private long bulks;
+
+    /**
+     * Total number of failed attempts to send a bulk.
+     */
+    private long failures;
+
+    /**
+     * Number of events sent per second, averaged over the last minute.
+     */
+    private double throughput;
+
+    /**
+     * Maximum size of a bulk and the number of events which may be sent,
+     * adapted to credits granted by the zone.
+     */
+    private int window;
+    private int credits;
+
+    /**
+     * Time of sending a bulk.
+     */
+    private double latencyMillisMean;
+    private double latencyMillis99;
+
+    /**
+     * Combines statistics of sending to the same zone from different zones.
+     */
+    @JsonIgnore
+    public OutboxStats combine(OutboxStats other) {
+        long bulks = this.bulks + other.bulks;
+        return OutboxStats.builder()
+                .queued(queued + other.queued)
+                .inFlight(inFlight + other.inFlight)
+                .sent(sent + other.sent)
+                .bulks(bulks)
+                .failures(failures + other.failures)
+                .throughput(throughput + other.throughput)
+                .window(window + other.window)
+                .credits(credits + other.credits)
+                .latencyMillisMean(bulks == 0 ? 0 :
+                        (latencyMillisMean * this.bulks + other.latencyMillisMean * other.bulks) / bulks)
+                .latencyMillis99(Math.max(latencyMillis99, other.latencyMillis99))
+                .build();
+    }
+}
@@ -16,6 +16,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static com.github.kjarosh.agh.pp.config.Config.ZONE_ID;
@@ -35,18 +36,15 @@ public class BasicQueriesController {
             @RequestParam("to") String toId) {
         Graph graph = graphLoader.getGraph();
         EdgeId edgeId = EdgeId.of(
-                new VertexId(fromId),
-                new VertexId(toId));
+                VertexId.lookup(fromId),
+                VertexId.lookup(toId));
         ZoneId fromOwner = edgeId.getFrom().owner();
 
         if (!fromOwner.equals(ZONE_ID)) {
-            return new ZoneClient().isAdjacent(fromOwner, edgeId);
+            return ZoneClient.getInstance().isAdjacent(fromOwner, edgeId);
         }
 
-        return graph.getEdgesBySource(edgeId.getFrom())
-                .stream()
-                .map(Edge::dst)
-                .anyMatch(edgeId.getTo()::equals);
+        return graph.hasEdge(edgeId);
     }
 
     @RequestMapping(method = RequestMethod.POST, path = "list_adjacent")
@@ -54,18 +52,19 @@ public class BasicQueriesController {
     public List<String> listAdjacent(
             @RequestParam("of") String ofId) {
         Graph graph = graphLoader.getGraph();
-        VertexId of = new VertexId(ofId);
+        VertexId of = VertexId.lookup(ofId);
         ZoneId ofOwner = of.owner();
 
         if (!ofOwner.equals(ZONE_ID)) {
-            return new ZoneClient().listAdjacent(ofOwner, of);
+            return ZoneClient.getInstance().listAdjacent(ofOwner, of);
         }
 
         return graph.getEdgesBySource(of)
                 .stream()
                 .map(Edge::dst)
-                .map(VertexId::toString)
                 .distinct()
+                .sorted()
+                .map(VertexId::toString)
                 .collect(Collectors.toList());
     }
 
@@ -74,18 +73,19 @@ public class BasicQueriesController {
     public List<String> listAdjacentReversed(
             @RequestParam("of") String ofId) {
         Graph graph = graphLoader.getGraph();
-        VertexId of = new VertexId(ofId);
+        VertexId of = VertexId.lookup(ofId);
         ZoneId ofOwner = of.owner();
 
         if (!ofOwner.equals(ZONE_ID)) {
-            return new ZoneClient().listAdjacentReversed(ofOwner, of);
+            return ZoneClient.getInstance().listAdjacentReversed(ofOwner, of);
         }
 
         return graph.getEdgesByDestination(of)
                 .stream()
                 .map(Edge::src)
-                .map(VertexId::toString)
                 .distinct()
+                .sorted()
+                .map(VertexId::toString)
                 .collect(Collectors.toList());
     }
 
@@ -96,18 +96,15 @@ public class BasicQueriesController {
             @RequestParam("to") String toId) {
         Graph graph = graphLoader.getGraph();
         EdgeId edgeId = EdgeId.of(
-                new VertexId(fromId),
-                new VertexId(toId));
+                VertexId.lookup(fromId),
+                VertexId.lookup(toId));
         ZoneId fromOwner = edgeId.getFrom().owner();
 
         if (!fromOwner.equals(ZONE_ID)) {
-            return new ZoneClient().permissions(fromOwner, edgeId);
+            return ZoneClient.getInstance().permissions(fromOwner, edgeId);
         }
 
-        return graph.getEdgesBySource(edgeId.getFrom())
-                .stream()
-                .filter(e -> e.dst().equals(edgeId.getTo()))
-                .findAny()
+        return Optional.ofNullable(graph.getEdge(edgeId))
                 .map(Edge::permissions)
                 .map(Permissions::toString)
                 .orElse("");
@@ -0,0 +1,77 @@
+package com.github.kjarosh.agh.pp.rest;
+
+import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.BulkIndexBuilder;
+import com.github.kjarosh.agh.pp.rest.dto.BulkIndexExchangeDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Kamil Jarosz
+ */
+@Controller
+public class BulkIndexController {
+    @Autowired
+    private BulkIndexBuilder bulkIndexBuilder;
+
+    @Autowired
+    private GraphLoader graphLoader;
+
+    @RequestMapping(method = RequestMethod.POST, path = "index/bulk/suspend")
+    @ResponseBody
+    public void suspend() {
+        bulkIndexBuilder.suspend();
+    }
+
+    @RequestMapping(method = RequestMethod.POST, path = "index/bulk/resume")
+    @ResponseBody
+    public void resume() {
+        bulkIndexBuilder.resume();
+    }
+
+    @RequestMapping(method = RequestMethod.POST, path = "index/bulk/reset")
+    @ResponseBody
+    public void reset() {
+        bulkIndexBuilder.reset();
+    }
+
+    @RequestMapping(method = RequestMethod.POST, path = "index/bulk/step")
+    @ResponseBody
+    public long step(@RequestParam("round") int round) {
+        return bulkIndexBuilder.step(round);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, path = "index/bulk/exchange")
+    @ResponseBody
+    public void exchange(@RequestBody BulkIndexExchangeDto exchange) {
+        bulkIndexBuilder.receive(exchange);
+    }
+
+    /**
+     * Builds the index in all zones in bulk, this zone coordinates the build.
+     *
+     * @param zones zones to build the index in, by default all known zones
+     * @return the number of rounds
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "index/bulk/build")
+    @ResponseBody
+    public int build(@RequestParam(value = "zones", required = false) List<String> zones) {
+        Set<ZoneId> buildIn = new HashSet<>();
+        if (zones != null) {
+            zones.forEach(zone -> buildIn.add(ZoneId.of(zone)));
+        } else {
+            buildIn.addAll(graphLoader.allZones());
+        }
+        return bulkIndexBuilder.build(buildIn);
+    }
+}
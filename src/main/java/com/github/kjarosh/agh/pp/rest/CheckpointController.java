@@ -0,0 +1,35 @@
+package com.github.kjarosh.agh.pp.rest;
+
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointService;
+import com.github.kjarosh.agh.pp.checkpoint.WriteAheadLog;
+import com.github.kjarosh.agh.pp.rest.dto.CheckpointDto;
+import com.github.kjarosh.agh.pp.rest.dto.WalStatsDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * @author Kamil Jarosz
+ */
+@Controller
+public class CheckpointController {
+    @Autowired
+    private CheckpointService checkpointService;
+
+    @Autowired
+    private WriteAheadLog wal;
+
+    @RequestMapping(method = RequestMethod.POST, path = "checkpoint")
+    @ResponseBody
+    public CheckpointDto checkpoint() {
+        return checkpointService.checkpoint();
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "wal/stats")
+    @ResponseBody
+    public WalStatsDto walStats() {
+        return wal.stats();
+    }
+}
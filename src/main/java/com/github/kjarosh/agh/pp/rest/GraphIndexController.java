@@ -5,9 +5,11 @@ import com.github.kjarosh.agh.pp.graph.model.Graph;
 import com.github.kjarosh.agh.pp.graph.model.Vertex;
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
 import com.github.kjarosh.agh.pp.index.EffectiveVertex;
+import com.github.kjarosh.agh.pp.index.IndexStorage;
 import com.github.kjarosh.agh.pp.index.VertexIndex;
 import com.github.kjarosh.agh.pp.rest.dto.IndexDto;
 import com.github.kjarosh.agh.pp.rest.dto.IndexDto.EffectiveVertexDto;
+import com.github.kjarosh.agh.pp.rest.dto.IndexStorageStatsDto;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -43,7 +45,7 @@ public class GraphIndexController {
         } else {
             indices = vertices.stream()
                     .sorted()
-                    .map(VertexId::new)
+                    .map(VertexId::lookup)
                     .map(graph::getVertex)
                     .map(Vertex::index);
         }
@@ -52,6 +54,12 @@ public class GraphIndexController {
                 .collect(Collectors.toList());
     }
 
+    @RequestMapping(method = RequestMethod.GET, path = "index/storage")
+    @ResponseBody
+    public IndexStorageStatsDto getStorageStats() {
+        return IndexStorage.getInstance().stats();
+    }
+
     private IndexDto mapIndex(VertexIndex vertexIndex) {
         return IndexDto.builder()
                 .children(mapEffectiveVertices(vertexIndex.getEffectiveChildren()))
@@ -1,6 +1,8 @@
 package com.github.kjarosh.agh.pp.rest;
 
+import com.github.kjarosh.agh.pp.checkpoint.WalRecord;
 import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.GraphModifier;
 import com.github.kjarosh.agh.pp.graph.model.Edge;
 import com.github.kjarosh.agh.pp.graph.model.EdgeId;
 import com.github.kjarosh.agh.pp.graph.model.Graph;
@@ -8,19 +10,16 @@ import com.github.kjarosh.agh.pp.graph.model.Permissions;
 import com.github.kjarosh.agh.pp.graph.model.Vertex;
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
 import com.github.kjarosh.agh.pp.graph.model.ZoneId;
-import com.github.kjarosh.agh.pp.index.Inbox;
-import com.github.kjarosh.agh.pp.index.events.Event;
-import com.github.kjarosh.agh.pp.index.events.EventType;
 import com.github.kjarosh.agh.pp.rest.client.ZoneClient;
 import com.github.kjarosh.agh.pp.rest.dto.BulkEdgeCreationRequestDto;
 import com.github.kjarosh.agh.pp.rest.dto.BulkVertexCreationRequestDto;
 import com.github.kjarosh.agh.pp.rest.dto.EdgeCreationRequestDto;
 import com.github.kjarosh.agh.pp.rest.dto.VertexCreationRequestDto;
 import com.github.kjarosh.agh.pp.rest.error.EdgeNotFoundException;
-import com.github.kjarosh.agh.pp.rest.error.OkException;
 import com.github.kjarosh.agh.pp.rest.error.VertexNotFoundException;
 import com.github.kjarosh.agh.pp.rest.utils.GraphOperationPropagator;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -30,14 +29,25 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import java.util.Collections;
-import java.util.Objects;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.github.kjarosh.agh.pp.config.Config.ZONE_ID;
 
 /**
+ * Modifications of edges are forwarded to the zone of the source vertex,
+ * which makes a successive request to the zone of the destination vertex
+ * before modifying its own graph. Requests to other zones do not block
+ * request threads, the response is sent when they complete.
+ * <p>
+ * Modifications wait for the write-ahead log, so after a request to another
+ * zone they are applied by an executor of this controller, not by threads
+ * of the HTTP client.
+ *
  * @author Kamil Jarosz
  */
 @Slf4j
@@ -47,11 +57,16 @@ public class GraphModificationController {
     private GraphLoader graphLoader;
 
     @Autowired
-    private Inbox inbox;
+    private GraphModifier graphModifier;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat(ZONE_ID + "-modification-%d")
+            .setDaemon(true)
+            .build());
 
     @RequestMapping(method = RequestMethod.POST, path = "graph/edges")
     @ResponseBody
-    public void addEdge(
+    public CompletableFuture<Void> addEdge(
             @RequestParam("from") String fromId,
             @RequestParam("to") String toId,
             @RequestParam("permissions") String permissionsString,
@@ -60,14 +75,17 @@ public class GraphModificationController {
         String trace = getTrace(traceParam);
         Graph graph = graphLoader.getGraph();
         EdgeId edgeId = EdgeId.of(
-                new VertexId(fromId),
-                new VertexId(toId));
+                VertexId.of(fromId),
+                VertexId.of(toId));
         Permissions permissions = Strings.isNullOrEmpty(permissionsString) ? null :
-                new Permissions(permissionsString);
-        GraphOperationPropagator propagator = (zone, s) -> new ZoneClient()
-                .addEdge(zone, edgeId, permissions, trace, s);
+                Permissions.valueOf(permissionsString);
+        GraphOperationPropagator propagator = (zone, s) -> ZoneClient.getInstance()
+                .addEdgeAsync(zone, edgeId, permissions, trace, s);
 
-        optionallyForwardRequest(successive, edgeId, propagator);
+        CompletableFuture<Void> forwarded = optionallyForwardRequest(successive, edgeId, propagator);
+        if (forwarded != null) {
+            return forwarded;
+        }
 
         if (!successive) {
             if (!graph.hasVertex(edgeId.getFrom())) {
@@ -79,23 +97,22 @@ public class GraphModificationController {
             }
         }
 
-        makeSuccessiveRequest(successive, edgeId, propagator);
-
-        Edge edge = new Edge(edgeId.getFrom(), edgeId.getTo(), permissions);
-        if (shouldLogOperation(successive, edgeId)) {
-            log.info("Adding edge {}", edge);
-        }
+        return thenModify(makeSuccessiveRequest(successive, edgeId, propagator), () -> {
+            Edge edge = new Edge(edgeId.getFrom(), edgeId.getTo(), permissions);
+            if (shouldLogOperation(successive, edgeId)) {
+                log.info("Adding edge {}", edge);
+            }
 
-        graph.addEdge(edge);
-        postChangeEvent(successive, trace, edgeId, false);
+            graphModifier.modify(WalRecord.addEdge(edgeId, permissions, trace, successive));
+        });
     }
 
     @RequestMapping(method = RequestMethod.POST, path = "graph/edges/bulk")
     @ResponseBody
-    public void addEdges(@RequestBody BulkEdgeCreationRequestDto bulkRequest) {
+    public CompletableFuture<Void> addEdges(@RequestBody BulkEdgeCreationRequestDto bulkRequest) {
         addTrace(bulkRequest);
-        Graph graph = graphLoader.getGraph();
 
+        CompletableFuture<Void> successive = CompletableFuture.completedFuture(null);
         if (!bulkRequest.isSuccessive()) {
             BulkEdgeCreationRequestDto successiveBulkRequest = BulkEdgeCreationRequestDto.builder()
                     .successive(true)
@@ -103,25 +120,29 @@ public class GraphModificationController {
                     .destinationZone(bulkRequest.getDestinationZone())
                     .edges(bulkRequest.getEdges())
                     .build();
-            new ZoneClient().addEdges(bulkRequest.getDestinationZone(), successiveBulkRequest);
+            successive = ZoneClient.getInstance().addEdgesAsync(bulkRequest.getDestinationZone(), successiveBulkRequest);
         }
 
-        if (!bulkRequest.isSuccessive() || !bulkRequest.getDestinationZone().equals(bulkRequest.getSourceZone())) {
-            log.info("Bulk adding {} edges", bulkRequest.getEdges().size());
-        }
+        return thenModify(successive, () -> {
+            if (!bulkRequest.isSuccessive() || !bulkRequest.getDestinationZone().equals(bulkRequest.getSourceZone())) {
+                log.info("Bulk adding {} edges", bulkRequest.getEdges().size());
+            }
 
-        for (EdgeCreationRequestDto request : bulkRequest.getEdges()) {
-            VertexId src = new VertexId(bulkRequest.getSourceZone(), request.getFromName());
-            VertexId dst = new VertexId(bulkRequest.getDestinationZone(), request.getToName());
-            Edge edge = new Edge(src, dst, new Permissions(request.getPermissions()));
-            graph.addEdge(edge);
-            postChangeEvent(bulkRequest.isSuccessive(), request.getTrace(), edge.id(), false);
-        }
+            List<WalRecord> records = new ArrayList<>();
+            for (EdgeCreationRequestDto request : bulkRequest.getEdges()) {
+                VertexId src = VertexId.of(bulkRequest.getSourceZone(), request.getFromName());
+                VertexId dst = VertexId.of(bulkRequest.getDestinationZone(), request.getToName());
+                records.add(WalRecord.addEdge(EdgeId.of(src, dst),
+                        Permissions.valueOf(request.getPermissions()),
+                        request.getTrace(), bulkRequest.isSuccessive()));
+            }
+            graphModifier.modify(records);
+        });
     }
 
     @RequestMapping(method = RequestMethod.POST, path = "graph/edges/permissions")
     @ResponseBody
-    public void setPermissions(
+    public CompletableFuture<Void> setPermissions(
             @RequestParam("from") String fromId,
             @RequestParam("to") String toId,
             @RequestParam("permissions") String permissionsString,
@@ -130,32 +151,34 @@ public class GraphModificationController {
         String trace = getTrace(traceParam);
         Graph graph = graphLoader.getGraph();
         EdgeId edgeId = EdgeId.of(
-                new VertexId(fromId),
-                new VertexId(toId));
+                VertexId.of(fromId),
+                VertexId.of(toId));
         Permissions permissions = Strings.isNullOrEmpty(permissionsString) ? null :
-                new Permissions(permissionsString);
-        GraphOperationPropagator propagator = (zone, s) -> new ZoneClient()
-                .setPermissions(zone, edgeId, permissions, trace, s);
+                Permissions.valueOf(permissionsString);
+        GraphOperationPropagator propagator = (zone, s) -> ZoneClient.getInstance()
+                .setPermissionsAsync(zone, edgeId, permissions, trace, s);
 
-        optionallyForwardRequest(successive, edgeId, propagator);
+        CompletableFuture<Void> forwarded = optionallyForwardRequest(successive, edgeId, propagator);
+        if (forwarded != null) {
+            return forwarded;
+        }
 
         if (!graph.hasEdge(edgeId)) {
             throw new EdgeNotFoundException(edgeId, "setting permissions");
         }
 
-        makeSuccessiveRequest(successive, edgeId, propagator);
-
-        if (shouldLogOperation(successive, edgeId)) {
-            log.info("Setting permissions of {} to {}", edgeId, permissions);
-        }
+        return thenModify(makeSuccessiveRequest(successive, edgeId, propagator), () -> {
+            if (shouldLogOperation(successive, edgeId)) {
+                log.info("Setting permissions of {} to {}", edgeId, permissions);
+            }
 
-        graph.setPermissions(edgeId, permissions);
-        postChangeEvent(successive, trace, edgeId, false);
+            graphModifier.modify(WalRecord.setPermissions(edgeId, permissions, trace, successive));
+        });
     }
 
     @RequestMapping(method = RequestMethod.POST, path = "graph/edges/delete")
     @ResponseBody
-    public void removeEdge(
+    public CompletableFuture<Void> removeEdge(
             @RequestParam("from") String fromId,
             @RequestParam("to") String toId,
             @RequestParam(value = "trace", required = false) String traceParam,
@@ -163,29 +186,44 @@ public class GraphModificationController {
         String trace = getTrace(traceParam);
         Graph graph = graphLoader.getGraph();
         EdgeId edgeId = EdgeId.of(
-                new VertexId(fromId),
-                new VertexId(toId));
+                VertexId.of(fromId),
+                VertexId.of(toId));
         GraphOperationPropagator propagator = (zone, s) ->
-                new ZoneClient().removeEdge(zone, edgeId, trace, s);
+                ZoneClient.getInstance().removeEdgeAsync(zone, edgeId, trace, s);
 
-        optionallyForwardRequest(successive, edgeId, propagator);
+        CompletableFuture<Void> forwarded = optionallyForwardRequest(successive, edgeId, propagator);
+        if (forwarded != null) {
+            return forwarded;
+        }
 
         Edge edge = graph.getEdge(edgeId);
         if (edge == null) {
             throw new EdgeNotFoundException(edgeId, "removing it");
         }
 
-        makeSuccessiveRequest(successive, edgeId, propagator);
+        return thenModify(makeSuccessiveRequest(successive, edgeId, propagator), () -> {
+            if (shouldLogOperation(successive, edgeId)) {
+                log.info("Removing edge {}", edge);
+            }
 
-        if (shouldLogOperation(successive, edgeId)) {
-            log.info("Removing edge {}", edge);
-        }
+            graphModifier.modify(WalRecord.removeEdge(edgeId, trace, successive));
+        });
+    }
 
-        graph.removeEdge(edge);
-        postChangeEvent(successive, trace, edgeId, true);
+    /**
+     * Applies the modification after the successive request, by the request
+     * thread when it has completed already.
+     */
+    private CompletableFuture<Void> thenModify(CompletableFuture<Void> successive, Runnable modification) {
+        return successive.isDone() ?
+                successive.thenRun(modification) :
+                successive.thenRunAsync(modification, executor);
     }
 
-    private void optionallyForwardRequest(
+    /**
+     * @return the forwarded request, {@code null} when it should be handled by this zone
+     */
+    private CompletableFuture<Void> optionallyForwardRequest(
             boolean successive,
             EdgeId edgeId,
             GraphOperationPropagator propagator) {
@@ -203,13 +241,13 @@ public class GraphModificationController {
             // if it's the wrong zone, forward the request
             if (!fromOwner.equals(ZONE_ID)) {
                 log.info("Propagating request to zone " + fromOwner);
-                propagator.propagate(fromOwner, false);
-                throw new OkException();
+                return propagator.propagate(fromOwner, false);
             }
         }
+        return null;
     }
 
-    private void makeSuccessiveRequest(
+    private CompletableFuture<Void> makeSuccessiveRequest(
             boolean successive,
             EdgeId edgeId,
             GraphOperationPropagator propagator) {
@@ -223,47 +261,14 @@ public class GraphModificationController {
                 throw new RuntimeException(String.format(
                         "Destination zone different than this zone (this=%s, dest=%s)", ZONE_ID, toOwner));
             }
+            return CompletableFuture.completedFuture(null);
         } else {
             if (!fromOwner.equals(ZONE_ID)) {
                 throw new RuntimeException(String.format(
                         "Source zone different than this zone (this=%s, src=%s)", ZONE_ID, fromOwner));
             }
 
-            propagator.propagate(toOwner, true);
-        }
-    }
-
-    private void postChangeEvent(
-            boolean successive,
-            String trace,
-            EdgeId edgeId,
-            boolean delete) {
-        Objects.requireNonNull(trace);
-        Graph graph = graphLoader.getGraph();
-        if (successive) {
-            Set<VertexId> subjects = graph.getVertex(edgeId.getTo())
-                    .index()
-                    .getEffectiveParents()
-                    .keySet();
-            inbox.post(edgeId.getFrom(), Event.builder()
-                    .trace(trace)
-                    .type(delete ? EventType.PARENT_REMOVE : EventType.PARENT_CHANGE)
-                    .effectiveVertices(delete ? Collections.emptySet() : subjects)
-                    .sender(edgeId.getTo())
-                    .originalSender(edgeId.getTo())
-                    .build());
-        } else {
-            Set<VertexId> subjects = graph.getVertex(edgeId.getFrom())
-                    .index()
-                    .getEffectiveChildren()
-                    .keySet();
-            inbox.post(edgeId.getTo(), Event.builder()
-                    .trace(trace)
-                    .type(delete ? EventType.CHILD_REMOVE : EventType.CHILD_CHANGE)
-                    .effectiveVertices(delete ? Collections.emptySet() : subjects)
-                    .sender(edgeId.getFrom())
-                    .originalSender(edgeId.getFrom())
-                    .build());
+            return propagator.propagate(toOwner, true);
         }
     }
 
@@ -279,25 +284,24 @@ public class GraphModificationController {
     public void addVertex(
             @RequestParam("name") String name,
             @RequestParam("type") Vertex.Type type) {
-        Graph graph = graphLoader.getGraph();
-        VertexId id = new VertexId(ZONE_ID, name);
+        VertexId id = VertexId.of(ZONE_ID, name);
         log.info("Adding vertex {}", id);
-        graph.addVertex(new Vertex(id, type));
+        graphModifier.modify(WalRecord.addVertex(id, type));
     }
 
     @RequestMapping(method = RequestMethod.POST, path = "graph/vertices/bulk")
     @ResponseBody
     public void addVertices(@RequestBody BulkVertexCreationRequestDto bulkRequest) {
-        Graph graph = graphLoader.getGraph();
-
         int count = bulkRequest.getVertices().size();
         log.info("Bulk adding {} vertices", count);
 
+        List<WalRecord> records = new ArrayList<>(count);
         for (VertexCreationRequestDto request : bulkRequest.getVertices()) {
-            VertexId id = new VertexId(ZONE_ID, request.getName());
+            VertexId id = VertexId.of(ZONE_ID, request.getName());
             log.trace("Adding vertex {}", id);
-            graph.addVertex(new Vertex(id, request.getType()));
+            records.add(WalRecord.addVertex(id, request.getType()));
         }
+        graphModifier.modify(records);
     }
 
     private String getTrace(String traceParam) {
@@ -1,13 +1,18 @@
 package com.github.kjarosh.agh.pp.rest;
 
+import com.github.kjarosh.agh.pp.checkpoint.WalRecord;
+import com.github.kjarosh.agh.pp.graph.GraphModifier;
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.index.BulkDeduplicator;
 import com.github.kjarosh.agh.pp.index.Inbox;
 import com.github.kjarosh.agh.pp.index.InboxProcessor;
+import com.github.kjarosh.agh.pp.index.QuiescenceTracker;
 import com.github.kjarosh.agh.pp.index.events.Event;
 import com.github.kjarosh.agh.pp.index.events.EventStats;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesCodec;
 import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesDto;
+import com.github.kjarosh.agh.pp.rest.dto.CreditsDto;
 import com.github.kjarosh.agh.pp.rest.dto.MessageDto;
-import com.github.kjarosh.agh.pp.rest.error.TooManyEventsException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -16,6 +21,9 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.github.kjarosh.agh.pp.config.Config.ZONE_ID;
 
 /**
@@ -29,35 +37,50 @@ public class InboxOutboxController {
     @Autowired
     private InboxProcessor inboxProcessor;
 
+    @Autowired
+    private GraphModifier graphModifier;
+
+    @Autowired
+    private BulkDeduplicator deduplicator;
+
+    @Autowired
+    private QuiescenceTracker quiescenceTracker;
+
     @RequestMapping(method = RequestMethod.POST, path = "events")
     @ResponseBody
     public void postEvent(
             @RequestParam("id") String idString,
             @RequestBody Event event) {
-        failIfInboxSizeTooBig();
-
-        VertexId id = new VertexId(idString);
+        VertexId id = VertexId.of(idString);
         if (!ZONE_ID.equals(id.owner())) {
             throw new IllegalArgumentException();
         }
-        inbox.post(id, event);
+        graphModifier.modify(WalRecord.event(id, event));
     }
 
+    /**
+     * Accepts bulks in JSON and in the binary format of {@link BulkMessagesCodec}.
+     * Bulks which have already been delivered are dropped, see {@link BulkDeduplicator}.
+     *
+     * @return credits for the next bulk of the sender, see {@link Inbox#credits()}
+     */
     @RequestMapping(method = RequestMethod.POST, path = "events/bulk")
     @ResponseBody
-    public void postEvents(@RequestBody BulkMessagesDto messages) {
-        failIfInboxSizeTooBig();
-
-        for (MessageDto message : messages.getMessages()) {
-            VertexId id = new VertexId(ZONE_ID, message.getVertexName());
-            inbox.post(id, message.getEvent());
-        }
-    }
-
-    private void failIfInboxSizeTooBig() {
-        if (inbox.size() > 1_000_000) {
-            throw new TooManyEventsException();
-        }
+    public CreditsDto postEvents(@RequestBody BulkMessagesDto messages) {
+        deduplicator.deliver(messages, () -> {
+            List<WalRecord> records = new ArrayList<>(messages.getMessages().size());
+            for (MessageDto message : messages.getMessages()) {
+                VertexId id = VertexId.of(ZONE_ID, message.getVertexName());
+                records.add(WalRecord.event(id, message.getEvent()));
+            }
+            graphModifier.modify(records);
+            if (messages.getSender() != null) {
+                quiescenceTracker.received(messages.getSender(), records.size());
+            }
+        });
+        return CreditsDto.builder()
+                .credits(inbox.credits())
+                .build();
     }
 
     @RequestMapping(method = RequestMethod.GET, path = "events/stats")
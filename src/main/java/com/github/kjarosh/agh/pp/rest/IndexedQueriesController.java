@@ -43,11 +43,11 @@ public class IndexedQueriesController {
     public List<String> members(
             @RequestParam("of") String ofId) {
         Graph graph = graphLoader.getGraph();
-        VertexId of = new VertexId(ofId);
+        VertexId of = VertexId.lookup(ofId);
         ZoneId ofOwner = of.owner();
 
         if (!ofOwner.equals(ZONE_ID)) {
-            return new ArrayList<>(new ZoneClient().naive().members(ofOwner, of));
+            return new ArrayList<>(ZoneClient.getInstance().naive().members(ofOwner, of));
         }
 
         Vertex ofVertex = graph.getVertex(of);
@@ -66,12 +66,12 @@ public class IndexedQueriesController {
             @RequestParam("to") String toId) {
         Graph graph = graphLoader.getGraph();
         EdgeId edgeId = EdgeId.of(
-                new VertexId(fromId),
-                new VertexId(toId));
+                VertexId.lookup(fromId),
+                VertexId.lookup(toId));
         ZoneId toOwner = edgeId.getTo().owner();
 
         if (!toOwner.equals(ZONE_ID)) {
-            return new ZoneClient().indexed().effectivePermissions(toOwner, edgeId);
+            return ZoneClient.getInstance().indexed().effectivePermissions(toOwner, edgeId);
         }
 
         Vertex toVertex = graph.getVertex(edgeId.getTo());
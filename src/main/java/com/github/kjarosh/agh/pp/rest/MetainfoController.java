@@ -3,14 +3,17 @@ package com.github.kjarosh.agh.pp.rest;
 import com.github.kjarosh.agh.pp.graph.GraphLoader;
 import com.github.kjarosh.agh.pp.graph.model.ZoneId;
 import com.github.kjarosh.agh.pp.index.InboxProcessor;
+import com.github.kjarosh.agh.pp.index.QuiescenceTracker;
 import com.github.kjarosh.agh.pp.instrumentation.Instrumentation;
 import com.github.kjarosh.agh.pp.rest.client.ZoneClient;
 import com.github.kjarosh.agh.pp.rest.dto.DependentZonesDto;
+import com.github.kjarosh.agh.pp.rest.dto.QuiescenceStateDto;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.util.ArrayList;
@@ -18,6 +21,8 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * @author Kamil Jarosz
@@ -30,18 +35,52 @@ public class MetainfoController {
     @Autowired
     private GraphLoader graphLoader;
 
+    @Autowired
+    private QuiescenceTracker quiescenceTracker;
+
     @RequestMapping(method = RequestMethod.GET, path = "healthcheck")
     @ResponseBody
     public void healthcheck() {
 
     }
 
+    /**
+     * A snapshot of this zone only, events may still be sent
+     * between zones, see {@link #awaitQuiescence}.
+     */
     @RequestMapping(method = RequestMethod.GET, path = "index_ready")
     @ResponseBody
     public boolean indexReady() {
         return inboxProcessor.isStalled();
     }
 
+    @RequestMapping(method = RequestMethod.GET, path = "quiescence/state")
+    @ResponseBody
+    public QuiescenceStateDto quiescenceState(
+            @RequestParam(value = "waitMillis", defaultValue = "0") long waitMillis) throws InterruptedException {
+        return quiescenceTracker.state(waitMillis);
+    }
+
+    /**
+     * Waits until all zones are quiescent, i.e. the index is ready everywhere.
+     *
+     * @param zones zones to wait for, by default all known zones
+     * @return {@code false} when the zones have not become quiescent in time
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "quiescence/wait")
+    @ResponseBody
+    public boolean awaitQuiescence(
+            @RequestParam(value = "zones", required = false) List<String> zones,
+            @RequestParam(value = "timeoutMillis", defaultValue = "60000") long timeoutMillis) throws InterruptedException {
+        Set<ZoneId> waitFor = new HashSet<>();
+        if (zones != null) {
+            zones.forEach(zone -> waitFor.add(ZoneId.of(zone)));
+        } else {
+            waitFor.addAll(graphLoader.allZones());
+        }
+        return quiescenceTracker.awaitQuiescence(waitFor, timeoutMillis);
+    }
+
     @RequestMapping(method = RequestMethod.POST, path = "dependent_zones")
     @ResponseBody
     public DependentZonesDto dependentZones(@RequestBody List<ZoneId> exclude) {
@@ -52,8 +91,12 @@ public class MetainfoController {
         newExclude.addAll(directlyDependent);
 
         Set<ZoneId> dependent = new HashSet<>(directlyDependent);
-        directlyDependent.stream()
-                .map(zone -> new ZoneClient().getDependentZones(zone, newExclude))
+        ZoneClient client = ZoneClient.getInstance();
+        List<CompletableFuture<DependentZonesDto>> results = directlyDependent.stream()
+                .map(zone -> client.getDependentZonesAsync(zone, newExclude))
+                .collect(Collectors.toList());
+        results.stream()
+                .map(ZoneClient::await)
                 .map(DependentZonesDto::getZones)
                 .flatMap(Collection::stream)
                 .forEach(dependent::add);
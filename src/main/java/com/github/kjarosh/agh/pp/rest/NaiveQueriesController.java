@@ -1,9 +1,10 @@
 package com.github.kjarosh.agh.pp.rest;
 
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
 import com.github.kjarosh.agh.pp.graph.GraphLoader;
-import com.github.kjarosh.agh.pp.graph.model.Edge;
 import com.github.kjarosh.agh.pp.graph.model.EdgeId;
 import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.GraphSnapshot;
 import com.github.kjarosh.agh.pp.graph.model.Permissions;
 import com.github.kjarosh.agh.pp.graph.model.VertexId;
 import com.github.kjarosh.agh.pp.graph.model.ZoneId;
@@ -16,22 +17,30 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import static com.github.kjarosh.agh.pp.config.Config.ZONE_ID;
 
 /**
+ * Queries computed by traversing the graph, without the index.
+ * The local part of the graph is traversed using its {@link GraphSnapshot},
+ * which may be slightly outdated, see {@link Graph#snapshot(long)},
+ * and queries about remote vertices are delegated to their zones.
+ *
  * @author Kamil Jarosz
  */
 @Controller
 public class NaiveQueriesController {
-    @Autowired
-    private GraphLoader graphLoader;
+    private final long snapshotMaxAgeMillis = ConfigLoader.getConfig().getGraphSnapshotMaxAgeMillis();
 
     @Autowired
-    private BasicQueriesController basicQueriesController;
+    private GraphLoader graphLoader;
 
     @RequestMapping(method = RequestMethod.POST, path = "naive/reaches")
     @ResponseBody
@@ -40,21 +49,54 @@ public class NaiveQueriesController {
             @RequestParam("to") String toId) {
         Graph graph = graphLoader.getGraph();
         EdgeId edgeId = EdgeId.of(
-                new VertexId(fromId),
-                new VertexId(toId));
+                VertexId.lookup(fromId),
+                VertexId.lookup(toId));
         ZoneId fromOwner = edgeId.getFrom().owner();
 
         if (!fromOwner.equals(ZONE_ID)) {
-            return new ZoneClient().naive().reaches(fromOwner, edgeId);
+            return ZoneClient.getInstance().naive().reaches(fromOwner, edgeId);
         }
 
-        if (basicQueriesController.isAdjacent(fromId, toId)) {
-            return true;
+        GraphSnapshot snapshot = graph.snapshot(snapshotMaxAgeMillis);
+        int from = snapshot.indexOf(edgeId.getFrom());
+        if (from < 0) {
+            return false;
+        }
+
+        int to = snapshot.indexOf(edgeId.getTo());
+        Set<VertexId> remote = new LinkedHashSet<>();
+        BitSet visited = new BitSet(snapshot.size());
+        int[] queue = new int[snapshot.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        visited.set(from);
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = snapshot.outBegin(v); e < snapshot.outEnd(v); ++e) {
+                int u = snapshot.outTarget(e);
+                if (u == to) {
+                    return true;
+                }
+
+                if (!visited.get(u)) {
+                    visited.set(u);
+                    VertexId id = snapshot.vertex(u);
+                    if (id.owner().equals(ZONE_ID)) {
+                        queue[tail++] = u;
+                    } else {
+                        remote.add(id);
+                    }
+                }
+            }
         }
 
-        return graph.getEdgesBySource(edgeId.getFrom())
-                .stream()
-                .anyMatch(e -> reaches(e.dst().toString(), toId));
+        // remote zones are queried concurrently
+        ZoneClient client = ZoneClient.getInstance();
+        List<CompletableFuture<Boolean>> results = remote.stream()
+                .map(id -> client.naive().reachesAsync(id.owner(), EdgeId.of(id, edgeId.getTo())))
+                .collect(Collectors.toList());
+        return results.stream().anyMatch(ZoneClient::await);
     }
 
     @RequestMapping(method = RequestMethod.POST, path = "naive/members")
@@ -62,18 +104,50 @@ public class NaiveQueriesController {
     public List<String> members(
             @RequestParam("of") String ofId) {
         Graph graph = graphLoader.getGraph();
-        VertexId of = new VertexId(ofId);
+        VertexId of = VertexId.lookup(ofId);
         ZoneId ofOwner = of.owner();
 
         if (!ofOwner.equals(ZONE_ID)) {
-            return new ArrayList<>(new ZoneClient().naive().members(ofOwner, of));
+            return new ArrayList<>(ZoneClient.getInstance().naive().members(ofOwner, of));
+        }
+
+        GraphSnapshot snapshot = graph.snapshot(snapshotMaxAgeMillis);
+        int start = snapshot.indexOf(of);
+        if (start < 0) {
+            return new ArrayList<>();
         }
 
         Set<String> result = new HashSet<>();
+        List<VertexId> remote = new ArrayList<>();
+        BitSet visited = new BitSet(snapshot.size());
+        int[] queue = new int[snapshot.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visited.set(start);
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = snapshot.inBegin(v); e < snapshot.inEnd(v); ++e) {
+                int u = snapshot.inSource(e);
+                if (!visited.get(u)) {
+                    visited.set(u);
+                    VertexId id = snapshot.vertex(u);
+                    result.add(id.toString());
+                    if (id.owner().equals(ZONE_ID)) {
+                        queue[tail++] = u;
+                    } else {
+                        remote.add(id);
+                    }
+                }
+            }
+        }
 
-        for (Edge edge : graph.getEdgesByDestination(of)) {
-            result.add(edge.src().toString());
-            result.addAll(members(edge.src().toString()));
+        ZoneClient client = ZoneClient.getInstance();
+        List<CompletableFuture<List<String>>> remoteMembers = remote.stream()
+                .map(id -> client.naive().membersAsync(id.owner(), id))
+                .collect(Collectors.toList());
+        for (CompletableFuture<List<String>> members : remoteMembers) {
+            result.addAll(ZoneClient.await(members));
         }
 
         return new ArrayList<>(result);
@@ -86,29 +160,67 @@ public class NaiveQueriesController {
             @RequestParam("to") String toId) {
         Graph graph = graphLoader.getGraph();
         EdgeId edgeId = EdgeId.of(
-                new VertexId(fromId),
-                new VertexId(toId));
+                VertexId.lookup(fromId),
+                VertexId.lookup(toId));
         ZoneId fromOwner = edgeId.getFrom().owner();
 
         if (!fromOwner.equals(ZONE_ID)) {
-            return new ZoneClient().naive().effectivePermissions(fromOwner, edgeId);
+            return ZoneClient.getInstance().naive().effectivePermissions(fromOwner, edgeId);
         }
 
-        Permissions permissions = null;
-
-        for (Edge edge : graph.getEdgesBySource(edgeId.getFrom())) {
-            if (edge.dst().equals(edgeId.getTo())) {
-                permissions = Permissions.combine(
-                        permissions,
-                        edge.permissions());
-            } else {
-                String other = effectivePermissions(edge.dst().toString(), toId);
-                permissions = Permissions.combine(
-                        permissions,
-                        other != null ? new Permissions(other) : null);
-            }
+        GraphSnapshot snapshot = graph.snapshot(snapshotMaxAgeMillis);
+        int from = snapshot.indexOf(edgeId.getFrom());
+        if (from < 0) {
+            return null;
         }
 
+        Permissions permissions = new EffectivePermissionsTraversal(snapshot, edgeId.getTo())
+                .effectivePermissions(from);
         return permissions == null ? null : permissions.toString();
     }
+
+    /**
+     * Combines permissions of all paths to the target vertex,
+     * remembering the result for each visited vertex.
+     */
+    private static class EffectivePermissionsTraversal {
+        private final GraphSnapshot snapshot;
+        private final VertexId to;
+        private final Permissions[] results;
+        private final BitSet visited;
+        private final ZoneClient client = ZoneClient.getInstance();
+
+        private EffectivePermissionsTraversal(GraphSnapshot snapshot, VertexId to) {
+            this.snapshot = snapshot;
+            this.to = to;
+            this.results = new Permissions[snapshot.size()];
+            this.visited = new BitSet(snapshot.size());
+        }
+
+        private Permissions effectivePermissions(int v) {
+            if (visited.get(v)) {
+                return results[v];
+            }
+            visited.set(v);
+
+            VertexId id = snapshot.vertex(v);
+            if (!id.owner().equals(ZONE_ID)) {
+                String remote = client.naive().effectivePermissions(id.owner(), EdgeId.of(id, to));
+                results[v] = remote != null ? Permissions.valueOf(remote) : null;
+                return results[v];
+            }
+
+            Permissions permissions = null;
+            for (int e = snapshot.outBegin(v); e < snapshot.outEnd(v); ++e) {
+                int u = snapshot.outTarget(e);
+                if (snapshot.vertex(u).equals(to)) {
+                    permissions = Permissions.combine(permissions, snapshot.outPermissions(e));
+                } else {
+                    permissions = Permissions.combine(permissions, effectivePermissions(u));
+                }
+            }
+            results[v] = permissions;
+            return permissions;
+        }
+    }
 }
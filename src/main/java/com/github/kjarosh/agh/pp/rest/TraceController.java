@@ -0,0 +1,69 @@
+package com.github.kjarosh.agh.pp.rest;
+
+import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.TraceTracker;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStateDto;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStatesDto;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStatsDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Kamil Jarosz
+ */
+@Controller
+public class TraceController {
+    @Autowired
+    private TraceTracker traceTracker;
+
+    @Autowired
+    private GraphLoader graphLoader;
+
+    /**
+     * Waits until all events of the trace have been processed in all zones,
+     * i.e. the modification with the given trace has been fully indexed.
+     *
+     * @param zones zones to collect events of the trace from,
+     *              by default all known zones
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "traces/{trace}/wait")
+    @ResponseBody
+    public TraceStateDto awaitTrace(
+            @PathVariable("trace") String trace,
+            @RequestParam(value = "zones", required = false) List<String> zones,
+            @RequestParam(value = "timeoutMillis", defaultValue = "60000") long timeoutMillis) throws InterruptedException {
+        Set<ZoneId> collectFrom = new HashSet<>();
+        if (zones != null) {
+            zones.forEach(zone -> collectFrom.add(ZoneId.of(zone)));
+        } else {
+            collectFrom.addAll(graphLoader.allZones());
+        }
+        return traceTracker.await(trace, collectFrom, timeoutMillis);
+    }
+
+    /**
+     * States of the given traces in this zone only.
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "traces/state")
+    @ResponseBody
+    public TraceStatesDto traceStates(@RequestBody List<String> traces) {
+        return traceTracker.localStates(traces);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "traces/stats")
+    @ResponseBody
+    public TraceStatsDto traceStats() {
+        return traceTracker.stats();
+    }
+}
@@ -5,14 +5,27 @@ import com.github.kjarosh.agh.pp.graph.model.VertexId;
 import com.github.kjarosh.agh.pp.graph.model.ZoneId;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Kamil Jarosz
  */
 public interface GraphQueryClient {
-    boolean reaches(ZoneId zone, EdgeId edgeId);
+    default boolean reaches(ZoneId zone, EdgeId edgeId) {
+        return ZoneClient.await(reachesAsync(zone, edgeId));
+    }
 
-    List<String> members(ZoneId zone, VertexId of);
+    default List<String> members(ZoneId zone, VertexId of) {
+        return ZoneClient.await(membersAsync(zone, of));
+    }
 
-    String effectivePermissions(ZoneId zone, EdgeId edgeId);
+    default String effectivePermissions(ZoneId zone, EdgeId edgeId) {
+        return ZoneClient.await(effectivePermissionsAsync(zone, edgeId));
+    }
+
+    CompletableFuture<Boolean> reachesAsync(ZoneId zone, EdgeId edgeId);
+
+    CompletableFuture<List<String>> membersAsync(ZoneId zone, VertexId of);
+
+    CompletableFuture<String> effectivePermissionsAsync(ZoneId zone, EdgeId edgeId);
 }
@@ -1,5 +1,8 @@
 package com.github.kjarosh.agh.pp.rest.client;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kjarosh.agh.pp.config.Config;
 import com.github.kjarosh.agh.pp.config.ConfigLoader;
 import com.github.kjarosh.agh.pp.graph.model.EdgeId;
 import com.github.kjarosh.agh.pp.graph.model.Permissions;
@@ -10,116 +13,349 @@ import com.github.kjarosh.agh.pp.graph.modification.OperationIssuer;
 import com.github.kjarosh.agh.pp.index.events.Event;
 import com.github.kjarosh.agh.pp.index.events.EventStats;
 import com.github.kjarosh.agh.pp.rest.dto.BulkEdgeCreationRequestDto;
+import com.github.kjarosh.agh.pp.rest.dto.BulkIndexExchangeDto;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesCodec;
 import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesDto;
 import com.github.kjarosh.agh.pp.rest.dto.BulkVertexCreationRequestDto;
+import com.github.kjarosh.agh.pp.rest.dto.CheckpointDto;
+import com.github.kjarosh.agh.pp.rest.dto.CreditsDto;
 import com.github.kjarosh.agh.pp.rest.dto.DependentZonesDto;
 import com.github.kjarosh.agh.pp.rest.dto.LoadSimulationRequestDto;
+import com.github.kjarosh.agh.pp.rest.dto.QuiescenceStateDto;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStateDto;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStatesDto;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStatsDto;
 import com.github.kjarosh.agh.pp.util.StringList;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
+ * Client of the REST API of zones.
+ * <p>
+ * Requests are sent asynchronously, methods with the {@code Async} suffix
+ * return futures which complete with the response, or exceptionally with
+ * {@link ZoneClientException}. The other methods wait for the response.
+ * Each zone has its own {@link HttpClient}, and therefore its own pool
+ * of keep-alive connections, and requests to a zone may be multiplexed
+ * over HTTP/2 connections when enabled. Requests time out as configured,
+ * so that a zone which does not respond does not stall its callers.
+ *
  * @author Kamil Jarosz
  */
+@Slf4j
 public class ZoneClient implements OperationIssuer {
-    private static final RestTemplate restTemplate = new RestTemplate();
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private static ZoneClient instance;
+
+    private final ExecutorService executor;
+    /**
+     * Settings read from the configuration when the first request is sent,
+     * as clients may be created before the configuration is loaded.
+     */
+    private volatile Settings settings;
+    private final ConcurrentMap<ZoneId, HttpClient> clients = new ConcurrentHashMap<>();
+    /**
+     * Zones which do not support the binary format of event bulks.
+     */
+    private final Set<ZoneId> jsonEventZones = ConcurrentHashMap.newKeySet();
 
     private final GraphQueryClient naiveGraphQueryClient;
     private final GraphQueryClient indexedGraphQueryClient;
 
     public ZoneClient() {
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat(Config.ZONE_ID + "-client-%d")
+                .setDaemon(true)
+                .build());
         this.naiveGraphQueryClient = new GraphQueryClientImpl("naive");
         this.indexedGraphQueryClient = new GraphQueryClientImpl("indexed");
     }
 
+    public static synchronized ZoneClient getInstance() {
+        if (instance == null) {
+            instance = new ZoneClient();
+        }
+        return instance;
+    }
+
+    private Settings settings() {
+        Settings settings = this.settings;
+        if (settings == null) {
+            synchronized (this) {
+                settings = this.settings;
+                if (settings == null) {
+                    settings = new Settings(ConfigLoader.getConfig());
+                    this.settings = settings;
+                }
+            }
+        }
+        return settings;
+    }
+
+    private Duration requestTimeout() {
+        return settings().requestTimeout;
+    }
+
+    private Duration operationTimeout() {
+        return settings().operationTimeout;
+    }
+
+    /**
+     * @return the timeout of a request which waits in the zone for the given time
+     */
+    private Duration waiting(long waitMillis) {
+        Duration requestTimeout = requestTimeout();
+        return requestTimeout != null ? requestTimeout.plusMillis(Math.max(0, waitMillis)) : null;
+    }
+
+    private static HttpRequest.Builder request(URI uri, Duration timeout) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        return builder;
+    }
+
+    private static void setPropertyIfAbsent(String name, int value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, Integer.toString(value));
+        }
+    }
+
+    /**
+     * Waits for the result of a request, rethrowing its failure.
+     */
+    public static <R> R await(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private HttpClient client(ZoneId zone) {
+        Settings settings = settings();
+        return clients.computeIfAbsent(zone, z -> HttpClient.newBuilder()
+                .version(settings.version)
+                .connectTimeout(settings.connectTimeout)
+                .executor(executor)
+                .build());
+    }
+
     private UriComponentsBuilder baseUri(ZoneId zone) {
         return UriComponentsBuilder.fromHttpUrl("http://" + ConfigLoader.getConfig().translateZoneToAddress(zone) + "/");
     }
 
-    private <R> R execute(String url, Class<R> cls) {
-        ResponseEntity<R> response = restTemplate.postForEntity(url, null, cls);
-        checkResponse(response);
+    private static URI uri(UriComponentsBuilder builder) {
+        return builder.encode().build().toUri();
+    }
+
+    private static HttpRequest.BodyPublisher json(Object body) {
+        if (body == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+
+        try {
+            return HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private CompletableFuture<byte[]> send(ZoneId zone, HttpRequest request) {
+        return client(zone).sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .handle((response, e) -> {
+                    if (e != null) {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        throw new ZoneClientException(zone, request.uri(), cause);
+                    }
+
+                    if (response.statusCode() / 100 != 2) {
+                        throw new ZoneClientException(zone, request.uri(), response.statusCode());
+                    }
+                    return response.body();
+                });
+    }
 
-        return response.getBody();
+    private CompletableFuture<byte[]> send(ZoneId zone, String method, URI uri, Object body) {
+        return send(zone, method, uri, body, requestTimeout());
     }
 
-    private void execute(String url) {
-        ResponseEntity<?> response = restTemplate.postForEntity(url, null, null);
-        checkResponse(response);
+    private CompletableFuture<byte[]> send(ZoneId zone, String method, URI uri, Object body, Duration timeout) {
+        HttpRequest request = request(uri, timeout)
+                .method(method, json(body))
+                .header(CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .build();
+        return send(zone, request);
     }
 
-    private void checkResponse(ResponseEntity<?> response) {
-        if (!response.getStatusCode().is2xxSuccessful()) {
-            throw new RuntimeException("Status: " + response.getStatusCode());
+    private <R> CompletableFuture<R> send(ZoneId zone, String method, URI uri, Object body, Class<R> cls) {
+        return send(zone, method, uri, body, requestTimeout(), cls);
+    }
+
+    private <R> CompletableFuture<R> send(ZoneId zone, String method, URI uri, Object body, Duration timeout, Class<R> cls) {
+        return send(zone, method, uri, body, timeout).thenApply(response -> parse(response, cls));
+    }
+
+    /**
+     * Parses a response, an empty response is {@code null}. Strings are
+     * sent by zones as plain text.
+     */
+    private static <R> R parse(byte[] response, Class<R> cls) {
+        if (response == null || response.length == 0) {
+            return null;
+        }
+
+        if (cls == String.class) {
+            return cls.cast(new String(response, StandardCharsets.UTF_8));
         }
+
+        try {
+            return MAPPER.readValue(response, cls);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private CompletableFuture<Void> execute(ZoneId zone, URI uri) {
+        return send(zone, "POST", uri, null).thenApply(response -> null);
+    }
+
+    private <R> CompletableFuture<R> execute(ZoneId zone, URI uri, Class<R> cls) {
+        return send(zone, "POST", uri, null, cls);
     }
 
     public boolean healthcheck(ZoneId zone) {
         try {
-            String url = baseUri(zone)
-                    .path("healthcheck")
-                    .build()
-                    .toUriString();
-            ResponseEntity<?> response = restTemplate.getForEntity(url, String.class);
-            return response.getStatusCode().is2xxSuccessful();
-        } catch (RestClientException e) {
+            await(send(zone, "GET", uri(baseUri(zone).path("healthcheck")), null));
+            return true;
+        } catch (ZoneClientException e) {
             return false;
         }
     }
 
     public boolean indexReady(ZoneId zone) {
-        String url = baseUri(zone)
-                .path("index_ready")
-                .build()
-                .toUriString();
-        ResponseEntity<Boolean> response = restTemplate.getForEntity(url, Boolean.class);
-        checkResponse(response);
-        Boolean body = response.getBody();
+        URI uri = uri(baseUri(zone)
+                .path("index_ready"));
+        Boolean body = await(send(zone, "GET", uri, null, Boolean.class));
         return body != null && body;
     }
 
+    public CompletableFuture<QuiescenceStateDto> quiescenceStateAsync(ZoneId zone, long waitMillis) {
+        URI uri = uri(baseUri(zone)
+                .path("quiescence/state")
+                .queryParam("waitMillis", waitMillis));
+        return send(zone, "GET", uri, null, waiting(waitMillis), QuiescenceStateDto.class);
+    }
+
+    /**
+     * Waits until the given zones are quiescent, the zone
+     * which is asked coordinates the detection.
+     *
+     * @return {@code false} when the zones have not become quiescent in time
+     */
+    public boolean awaitQuiescence(ZoneId zone, Collection<ZoneId> zones, long timeoutMillis) {
+        URI uri = uri(baseUri(zone)
+                .path("quiescence/wait")
+                .queryParam("zones", zones.stream().map(ZoneId::getId).toArray())
+                .queryParam("timeoutMillis", timeoutMillis));
+        Boolean body = await(send(zone, "GET", uri, null, waiting(timeoutMillis), Boolean.class));
+        return body != null && body;
+    }
+
+    public CompletableFuture<TraceStatesDto> traceStatesAsync(ZoneId zone, Collection<String> traces) {
+        URI uri = uri(baseUri(zone)
+                .path("traces/state"));
+        return send(zone, "POST", uri, traces, TraceStatesDto.class);
+    }
+
+    /**
+     * Waits until all events of the trace have been processed in all zones.
+     *
+     * @return state of the trace, which is not complete when
+     * the trace has not completed in time
+     */
+    public TraceStateDto awaitTrace(ZoneId zone, String trace, long timeoutMillis) {
+        return awaitTrace(zone, null, trace, timeoutMillis);
+    }
+
+    /**
+     * Waits until all events of the trace have been processed in the given zones,
+     * {@code null} for all zones known to the zone which is asked.
+     */
+    public TraceStateDto awaitTrace(ZoneId zone, Collection<ZoneId> zones, String trace, long timeoutMillis) {
+        UriComponentsBuilder builder = baseUri(zone)
+                .pathSegment("traces", trace, "wait")
+                .queryParam("timeoutMillis", timeoutMillis);
+        if (zones != null) {
+            builder.queryParam("zones", zones.stream().map(ZoneId::getId).toArray());
+        }
+        return await(send(zone, "GET", uri(builder), null, waiting(timeoutMillis), TraceStateDto.class));
+    }
+
+    public TraceStatsDto traceStats(ZoneId zone) {
+        URI uri = uri(baseUri(zone)
+                .path("traces/stats"));
+        return await(send(zone, "GET", uri, null, TraceStatsDto.class));
+    }
+
     public boolean isAdjacent(ZoneId zone, EdgeId edgeId) {
-        String url = baseUri(zone)
+        URI uri = uri(baseUri(zone)
                 .path("is_adjacent")
                 .queryParam("from", edgeId.getFrom())
-                .queryParam("to", edgeId.getTo())
-                .build()
-                .toUriString();
-        return execute(url, Boolean.class);
+                .queryParam("to", edgeId.getTo()));
+        return await(execute(zone, uri, Boolean.class));
     }
 
     public List<String> listAdjacent(ZoneId zone, VertexId of) {
-        String url = baseUri(zone)
+        URI uri = uri(baseUri(zone)
                 .path("list_adjacent")
-                .queryParam("of", of)
-                .build()
-                .toUriString();
-        return execute(url, StringList.class);
+                .queryParam("of", of));
+        return await(execute(zone, uri, StringList.class));
     }
 
     public List<String> listAdjacentReversed(ZoneId zone, VertexId of) {
-        String url = baseUri(zone)
+        URI uri = uri(baseUri(zone)
                 .path("list_adjacent_reversed")
-                .queryParam("of", of)
-                .build()
-                .toUriString();
-        return execute(url, StringList.class);
+                .queryParam("of", of));
+        return await(execute(zone, uri, StringList.class));
     }
 
     public String permissions(ZoneId zone, EdgeId edgeId) {
-        String url = baseUri(zone)
+        URI uri = uri(baseUri(zone)
                 .path("permissions")
                 .queryParam("from", edgeId.getFrom())
-                .queryParam("to", edgeId.getTo())
-                .build()
-                .toUriString();
-        return execute(url, String.class);
+                .queryParam("to", edgeId.getTo()));
+        return await(execute(zone, uri, String.class));
     }
 
     public GraphQueryClient naive() {
@@ -132,20 +368,25 @@ public class ZoneClient implements OperationIssuer {
 
     @Override
     public void addEdge(ZoneId zone, EdgeId edgeId, Permissions permissions, String trace) {
-        addEdge(zone, edgeId, permissions, trace, false);
+        await(addEdgeAsync(zone, edgeId, permissions, trace, false));
     }
 
     @Override
     public void addEdges(ZoneId zone, BulkEdgeCreationRequestDto bulkRequest) {
-        String url = baseUri(zone)
-                .path("graph/edges/bulk")
-                .build()
-                .toUriString();
-        ResponseEntity<?> response = restTemplate.postForEntity(url, bulkRequest, null);
-        checkResponse(response);
+        await(addEdgesAsync(zone, bulkRequest));
+    }
+
+    public CompletableFuture<Void> addEdgesAsync(ZoneId zone, BulkEdgeCreationRequestDto bulkRequest) {
+        URI uri = uri(baseUri(zone)
+                .path("graph/edges/bulk"));
+        return send(zone, "POST", uri, bulkRequest, operationTimeout()).thenApply(response -> null);
     }
 
     public void addEdge(ZoneId zone, EdgeId edgeId, Permissions permissions, String trace, boolean successive) {
+        await(addEdgeAsync(zone, edgeId, permissions, trace, successive));
+    }
+
+    public CompletableFuture<Void> addEdgeAsync(ZoneId zone, EdgeId edgeId, Permissions permissions, String trace, boolean successive) {
         UriComponentsBuilder builder = baseUri(zone)
                 .path("graph/edges")
                 .queryParam("from", edgeId.getFrom())
@@ -155,16 +396,19 @@ public class ZoneClient implements OperationIssuer {
         if (trace != null) {
             builder.queryParam("trace", trace);
         }
-        String url = builder.build().toUriString();
-        execute(url);
+        return execute(zone, uri(builder));
     }
 
     @Override
     public void removeEdge(ZoneId zone, EdgeId edgeId, String trace) {
-        removeEdge(zone, edgeId, trace, false);
+        await(removeEdgeAsync(zone, edgeId, trace, false));
     }
 
     public void removeEdge(ZoneId zone, EdgeId edgeId, String trace, boolean successive) {
+        await(removeEdgeAsync(zone, edgeId, trace, successive));
+    }
+
+    public CompletableFuture<Void> removeEdgeAsync(ZoneId zone, EdgeId edgeId, String trace, boolean successive) {
         UriComponentsBuilder builder = baseUri(zone)
                 .path("graph/edges/delete")
                 .queryParam("from", edgeId.getFrom())
@@ -173,16 +417,19 @@ public class ZoneClient implements OperationIssuer {
         if (trace != null) {
             builder.queryParam("trace", trace);
         }
-        String url = builder.build().toUriString();
-        execute(url);
+        return execute(zone, uri(builder));
     }
 
     @Override
     public void setPermissions(ZoneId zone, EdgeId edgeId, Permissions permissions, String trace) {
-        setPermissions(zone, edgeId, permissions, trace, false);
+        await(setPermissionsAsync(zone, edgeId, permissions, trace, false));
     }
 
     public void setPermissions(ZoneId zone, EdgeId edgeId, Permissions permissions, String trace, boolean successive) {
+        await(setPermissionsAsync(zone, edgeId, permissions, trace, successive));
+    }
+
+    public CompletableFuture<Void> setPermissionsAsync(ZoneId zone, EdgeId edgeId, Permissions permissions, String trace, boolean successive) {
         UriComponentsBuilder builder = baseUri(zone)
                 .path("graph/edges/permissions")
                 .queryParam("from", edgeId.getFrom())
@@ -192,59 +439,87 @@ public class ZoneClient implements OperationIssuer {
         if (trace != null) {
             builder.queryParam("trace", trace);
         }
-        String url = builder.build().toUriString();
-        execute(url);
+        return execute(zone, uri(builder));
     }
 
     @Override
     public void addVertex(VertexId id, Vertex.Type type) {
-        String url = baseUri(id.owner())
+        URI uri = uri(baseUri(id.owner())
                 .path("graph/vertices")
                 .queryParam("name", id.name())
-                .queryParam("type", type)
-                .build()
-                .toUriString();
-        execute(url);
+                .queryParam("type", type));
+        await(execute(id.owner(), uri));
     }
 
     @Override
     public void addVertices(ZoneId zone, BulkVertexCreationRequestDto bulkRequest) {
-        String url = baseUri(zone)
-                .path("graph/vertices/bulk")
-                .build()
-                .toUriString();
-        ResponseEntity<?> response = restTemplate.postForEntity(url, bulkRequest, null);
-        checkResponse(response);
+        URI uri = uri(baseUri(zone)
+                .path("graph/vertices/bulk"));
+        await(send(zone, "POST", uri, bulkRequest, operationTimeout()));
     }
 
     public void postEvent(VertexId id, Event event) {
-        String url = baseUri(id.owner())
+        URI uri = uri(baseUri(id.owner())
                 .path("events")
-                .queryParam("id", id.toString())
-                .build()
-                .toUriString();
-        ResponseEntity<?> response = restTemplate.postForEntity(url, event, null);
-        checkResponse(response);
+                .queryParam("id", id.toString()));
+        await(send(id.owner(), "POST", uri, event));
     }
 
-    public void postEvents(ZoneId zone, BulkMessagesDto messages) {
-        String url = baseUri(zone)
-                .path("events/bulk")
-                .build()
-                .toUriString();
-        ResponseEntity<?> response = restTemplate.postForEntity(url, messages, null);
-        checkResponse(response);
+    /**
+     * @return credits granted by the zone, {@code null} when it does not grant them
+     */
+    public CreditsDto postEvents(ZoneId zone, BulkMessagesDto messages) {
+        return await(postEventsAsync(zone, messages));
     }
 
-    public EventStats getEventStats(ZoneId zone) {
-        String url = baseUri(zone)
-                .path("events/stats")
-                .build()
-                .toUriString();
-        ResponseEntity<EventStats> response = restTemplate.getForEntity(url, EventStats.class);
-        checkResponse(response);
+    /**
+     * Sends a bulk of events in the binary format, when enabled,
+     * falling back to JSON when the zone does not support it.
+     *
+     * @return future credits granted by the zone, {@code null} when it does not grant them
+     */
+    public CompletableFuture<CreditsDto> postEventsAsync(ZoneId zone, BulkMessagesDto messages) {
+        URI uri = uri(baseUri(zone)
+                .path("events/bulk"));
+        if (!ConfigLoader.getConfig().isEventsBinaryFormat() || jsonEventZones.contains(zone)) {
+            return send(zone, "POST", uri, messages, CreditsDto.class);
+        }
+
+        return postBinaryEvents(zone, uri, messages)
+                .handle((credits, e) -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof ZoneClientException &&
+                            ((ZoneClientException) cause).getStatus() == UNSUPPORTED_MEDIA_TYPE) {
+                        log.warn("Zone {} does not support binary event bulks, falling back to JSON", zone);
+                        jsonEventZones.add(zone);
+                        return send(zone, "POST", uri, messages, CreditsDto.class);
+                    } else if (e != null) {
+                        return CompletableFuture.<CreditsDto>failedFuture(cause);
+                    }
+                    return CompletableFuture.completedFuture(credits);
+                })
+                .thenCompose(future -> future);
+    }
+
+    private CompletableFuture<CreditsDto> postBinaryEvents(ZoneId zone, URI uri, BulkMessagesDto messages) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try {
+            BulkMessagesCodec.encode(messages, body, ConfigLoader.getConfig().isEventsCompression());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
-        return response.getBody();
+        HttpRequest request = request(uri, requestTimeout())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .header(CONTENT_TYPE, BulkMessagesCodec.MEDIA_TYPE.toString())
+                .build();
+        return send(zone, request).thenApply(response -> parse(response, CreditsDto.class));
+    }
+
+    public EventStats getEventStats(ZoneId zone) {
+        URI uri = uri(baseUri(zone)
+                .path("events/stats"));
+        return await(send(zone, "GET", uri, null, EventStats.class));
     }
 
     public DependentZonesDto getDependentZones(ZoneId zone) {
@@ -252,42 +527,83 @@ public class ZoneClient implements OperationIssuer {
     }
 
     public DependentZonesDto getDependentZones(ZoneId zone, Collection<ZoneId> exclude) {
-        String url = baseUri(zone)
-                .path("dependent_zones")
-                .build()
-                .toUriString();
-        ResponseEntity<DependentZonesDto> response = restTemplate.postForEntity(url, exclude, DependentZonesDto.class);
-        if (!response.getStatusCode().is2xxSuccessful()) {
-            throw new RuntimeException("Status: " + response.getStatusCode());
-        }
+        return await(getDependentZonesAsync(zone, exclude));
+    }
+
+    public CompletableFuture<DependentZonesDto> getDependentZonesAsync(ZoneId zone, Collection<ZoneId> exclude) {
+        URI uri = uri(baseUri(zone)
+                .path("dependent_zones"));
+        return send(zone, "POST", uri, exclude, DependentZonesDto.class);
+    }
+
+    public void suspendPropagation(ZoneId zone) {
+        URI uri = uri(baseUri(zone)
+                .path("index/bulk/suspend"));
+        await(execute(zone, uri));
+    }
+
+    public void resumePropagation(ZoneId zone) {
+        URI uri = uri(baseUri(zone)
+                .path("index/bulk/resume"));
+        await(execute(zone, uri));
+    }
+
+    public CompletableFuture<Void> resetBulkIndexAsync(ZoneId zone) {
+        URI uri = uri(baseUri(zone)
+                .path("index/bulk/reset"));
+        return execute(zone, uri);
+    }
 
-        return response.getBody();
+    public CompletableFuture<Long> bulkIndexStepAsync(ZoneId zone, int round) {
+        URI uri = uri(baseUri(zone)
+                .path("index/bulk/step")
+                .queryParam("round", round));
+        return send(zone, "POST", uri, null, operationTimeout(), Long.class);
+    }
+
+    public CompletableFuture<Void> postBulkIndexExchangeAsync(ZoneId zone, BulkIndexExchangeDto exchange) {
+        URI uri = uri(baseUri(zone)
+                .path("index/bulk/exchange"));
+        return send(zone, "POST", uri, exchange).thenApply(response -> null);
+    }
+
+    /**
+     * Builds the index of the given zones in bulk, the zone
+     * which is asked coordinates the build.
+     *
+     * @return the number of rounds
+     */
+    public int buildIndex(ZoneId zone, Collection<ZoneId> zones) {
+        URI uri = uri(baseUri(zone)
+                .path("index/bulk/build")
+                .queryParam("zones", zones.stream().map(ZoneId::getId).toArray()));
+        return await(send(zone, "POST", uri, null, operationTimeout(), Integer.class));
+    }
+
+    public CheckpointDto checkpoint(ZoneId zone) {
+        URI uri = uri(baseUri(zone)
+                .path("checkpoint"));
+        return await(send(zone, "POST", uri, null, operationTimeout(), CheckpointDto.class));
     }
 
     public boolean isInstrumentationEnabled(ZoneId zone) {
-        String url = baseUri(zone)
-                .path("instrumentation")
-                .build()
-                .toUriString();
-        return restTemplate.getForObject(url, Boolean.class);
+        URI uri = uri(baseUri(zone)
+                .path("instrumentation"));
+        Boolean body = await(send(zone, "GET", uri, null, Boolean.class));
+        return body != null && body;
     }
 
     public void setInstrumentationEnabled(ZoneId zone, boolean enabled) {
-        String url = baseUri(zone)
-                .path("instrumentation")
-                .build()
-                .toUriString();
-        restTemplate.put(url, enabled);
+        URI uri = uri(baseUri(zone)
+                .path("instrumentation"));
+        await(send(zone, "PUT", uri, enabled));
     }
 
     @Override
     public void simulateLoad(ZoneId zone, LoadSimulationRequestDto request) {
-        String url = baseUri(zone)
-                .path("simulate_load")
-                .build()
-                .toUriString();
-        ResponseEntity<?> response = restTemplate.postForEntity(url, request, null);
-        checkResponse(response);
+        URI uri = uri(baseUri(zone)
+                .path("simulate_load"));
+        await(send(zone, "POST", uri, request, operationTimeout()));
     }
 
     private class GraphQueryClientImpl implements GraphQueryClient {
@@ -298,38 +614,32 @@ public class ZoneClient implements OperationIssuer {
         }
 
         @Override
-        public boolean reaches(ZoneId zone, EdgeId edgeId) {
-            String url = baseUri(zone)
+        public CompletableFuture<Boolean> reachesAsync(ZoneId zone, EdgeId edgeId) {
+            URI uri = uri(baseUri(zone)
                     .path(prefix)
                     .path("/reaches")
                     .queryParam("from", edgeId.getFrom())
-                    .queryParam("to", edgeId.getTo())
-                    .build()
-                    .toUriString();
-            return execute(url, Boolean.class);
+                    .queryParam("to", edgeId.getTo()));
+            return execute(zone, uri, Boolean.class);
         }
 
         @Override
-        public List<String> members(ZoneId zone, VertexId of) {
-            String url = baseUri(zone)
+        public CompletableFuture<List<String>> membersAsync(ZoneId zone, VertexId of) {
+            URI uri = uri(baseUri(zone)
                     .path(prefix)
                     .path("/members")
-                    .queryParam("of", of)
-                    .build()
-                    .toUriString();
-            return execute(url, StringList.class);
+                    .queryParam("of", of));
+            return execute(zone, uri, StringList.class).thenApply(members -> members);
         }
 
         @Override
-        public String effectivePermissions(ZoneId zone, EdgeId edgeId) {
-            String url = baseUri(zone)
+        public CompletableFuture<String> effectivePermissionsAsync(ZoneId zone, EdgeId edgeId) {
+            URI uri = uri(baseUri(zone)
                     .path(prefix)
                     .path("/effective_permissions")
                     .queryParam("from", edgeId.getFrom())
-                    .queryParam("to", edgeId.getTo())
-                    .build()
-                    .toUriString();
-            return execute(url, String.class);
+                    .queryParam("to", edgeId.getTo()));
+            return execute(zone, uri, String.class);
         }
 
         @Override
@@ -337,4 +647,28 @@ public class ZoneClient implements OperationIssuer {
             return "GraphQueryClient(" + prefix + ')';
         }
     }
+
+    private static class Settings {
+        private final HttpClient.Version version;
+        private final Duration connectTimeout;
+        /**
+         * Timeouts of requests, {@code null} for no limit.
+         */
+        private final Duration requestTimeout;
+        private final Duration operationTimeout;
+
+        private Settings(Config config) {
+            // read by the JDK when the first client is created
+            setPropertyIfAbsent("jdk.httpclient.connectionPoolSize", config.getZoneClientPoolSize());
+            setPropertyIfAbsent("jdk.httpclient.keepalive.timeout", config.getZoneClientKeepAliveSeconds());
+            this.version = config.isZoneClientHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+            this.connectTimeout = Duration.ofMillis(config.getZoneClientConnectTimeoutMillis());
+            this.requestTimeout = timeout(config.getZoneClientRequestTimeoutMillis());
+            this.operationTimeout = timeout(config.getZoneClientOperationTimeoutMillis());
+        }
+
+        private static Duration timeout(long millis) {
+            return millis > 0 ? Duration.ofMillis(millis) : null;
+        }
+    }
 }
@@ -0,0 +1,30 @@
+package com.github.kjarosh.agh.pp.rest.client;
+
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import lombok.Getter;
+
+import java.net.URI;
+
+/**
+ * Thrown when a request to a zone fails, either because the zone
+ * responded with an error status or because it could not be reached.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+public class ZoneClientException extends RuntimeException {
+    /**
+     * Status of the response, {@code 0} when there is no response.
+     */
+    private final int status;
+
+    public ZoneClientException(ZoneId zone, URI uri, int status) {
+        super("Request to " + zone + " failed with status " + status + ": " + uri);
+        this.status = status;
+    }
+
+    public ZoneClientException(ZoneId zone, URI uri, Throwable cause) {
+        super("Request to " + zone + " failed: " + uri + ": " + cause, cause);
+        this.status = 0;
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Effective vertices sent to vertices of another zone
+ * in a round of building the index in bulk.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkIndexExchangeDto {
+    /**
+     * Round in which the effective vertices have been sent.
+     */
+    @JsonProperty("round")
+    private int round;
+
+    /**
+     * Effective children by the recipient and by the sender,
+     * which is a child of the recipient.
+     */
+    @Builder.Default
+    @JsonProperty("children")
+    private Map<String, Map<String, List<String>>> children = new HashMap<>();
+
+    /**
+     * Effective parents by the recipient and by the sender,
+     * which is a parent of the recipient.
+     */
+    @Builder.Default
+    @JsonProperty("parents")
+    private Map<String, Map<String, List<String>>> parents = new HashMap<>();
+}
@@ -0,0 +1,167 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointInput;
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointOutput;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import org.springframework.http.MediaType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Binary encoding of {@link BulkMessagesDto}, an alternative to JSON
+ * for sending events between zones.
+ * <p>
+ * The bulk starts with a magic number, a version and flags, which are
+ * followed by the sequence of the bulk and the messages, deflated when
+ * the flag is set. Bulks of version 1 have no sequence. Vertex ids,
+ * vertex names and traces are written only once per bulk, see
+ * {@link CheckpointOutput}.
+ *
+ * @author Kamil Jarosz
+ */
+public class BulkMessagesCodec {
+    public static final MediaType MEDIA_TYPE = new MediaType("application", "x-agh-events");
+
+    private static final byte[] MAGIC = {'A', 'G', 'H', 'E'};
+    private static final int VERSION = 2;
+    private static final int VERSION_UNSEQUENCED = 1;
+    private static final int FLAG_DEFLATE = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Maximum capacity of collections allocated up front, as counts
+     * are read from the network and bulks may be malformed.
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+    private static final EventType[] eventTypes = EventType.values();
+
+    public static void encode(BulkMessagesDto bulk, OutputStream os, boolean deflate) throws IOException {
+        os.write(MAGIC);
+        os.write(VERSION);
+        os.write(deflate ? FLAG_DEFLATE : 0);
+
+        Deflater deflater = deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            OutputStream body = deflate ?
+                    new DeflaterOutputStream(os, deflater, BUFFER_SIZE) :
+                    new BufferedOutputStream(os, BUFFER_SIZE);
+            CheckpointOutput out = new CheckpointOutput(body);
+            ZoneId sender = bulk.getSender();
+            out.writeNullableString(sender != null ? sender.getId() : null);
+            if (sender != null) {
+                out.writeVarLong(bulk.getEpoch());
+                out.writeVarInt(bulk.getLane());
+                out.writeVarLong(bulk.getSequence());
+            }
+            List<MessageDto> messages = bulk.getMessages();
+            out.writeVarInt(messages.size());
+            for (MessageDto message : messages) {
+                out.writeSharedString(message.getVertexName());
+                writeEvent(out, message.getEvent());
+            }
+            if (deflate) {
+                ((DeflaterOutputStream) body).finish();
+            }
+            out.flush();
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    public static BulkMessagesDto decode(InputStream is) throws IOException {
+        DataInputStream header = new DataInputStream(is);
+        byte[] magic = new byte[MAGIC.length];
+        header.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not an event bulk");
+        }
+        int version = header.readUnsignedByte();
+        if (version != VERSION && version != VERSION_UNSEQUENCED) {
+            throw new IOException("Unsupported event bulk version: " + version);
+        }
+        int flags = header.readUnsignedByte();
+
+        Inflater inflater = (flags & FLAG_DEFLATE) != 0 ? new Inflater() : null;
+        try {
+            InputStream body = inflater != null ?
+                    new InflaterInputStream(is, inflater, BUFFER_SIZE) :
+                    new BufferedInputStream(is, BUFFER_SIZE);
+            CheckpointInput in = new CheckpointInput(body);
+            BulkMessagesDto bulk = new BulkMessagesDto();
+            if (version != VERSION_UNSEQUENCED) {
+                String sender = in.readNullableString();
+                if (sender != null) {
+                    bulk.setSender(ZoneId.of(sender));
+                    bulk.setEpoch(in.readVarLong());
+                    bulk.setLane(in.readVarInt());
+                    bulk.setSequence(in.readVarLong());
+                }
+            }
+            int count = readCount(in);
+            List<MessageDto> messages = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+            for (int i = 0; i < count; ++i) {
+                String vertexName = in.readSharedString();
+                messages.add(new MessageDto(vertexName, readEvent(in)));
+            }
+            bulk.setMessages(messages);
+            return bulk;
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static void writeEvent(CheckpointOutput out, Event event) throws IOException {
+        out.writeVarInt(event.getType().ordinal());
+        out.writeSharedString(event.getTrace());
+        out.writeVertexId(event.getSender());
+        out.writeVertexId(event.getOriginalSender());
+        out.writeVarInt(event.getEffectiveVertices().size());
+        for (VertexId id : event.getEffectiveVertices()) {
+            out.writeVertexId(id);
+        }
+    }
+
+    private static Event readEvent(CheckpointInput in) throws IOException {
+        int type = in.readVarInt();
+        if (type < 0 || type >= eventTypes.length) {
+            throw new IOException("Invalid event type: " + type);
+        }
+        String trace = in.readSharedString();
+        VertexId sender = in.readVertexId();
+        VertexId originalSender = in.readVertexId();
+        int count = readCount(in);
+        Set<VertexId> effectiveVertices = new HashSet<>(Math.min(count, MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < count; ++i) {
+            effectiveVertices.add(in.readVertexId());
+        }
+        return new Event(eventTypes[type], trace, sender, originalSender, effectiveVertices);
+    }
+
+    private static int readCount(CheckpointInput in) throws IOException {
+        int count = in.readVarInt();
+        if (count < 0) {
+            throw new IOException("Invalid count: " + count);
+        }
+        return count;
+    }
+}
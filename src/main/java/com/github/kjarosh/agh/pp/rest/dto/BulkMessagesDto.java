@@ -12,6 +12,10 @@ import lombok.Setter;
 import java.util.List;
 
 /**
+ * A bulk of events sent by a zone. Bulks sent by an outbox are sequenced
+ * per lane, so that a bulk which is sent again after a failure may be
+ * recognized as a duplicate by the receiver.
+ *
  * @author Kamil Jarosz
  */
 @Getter
@@ -21,6 +25,27 @@ import java.util.List;
 @NoArgsConstructor
 @EqualsAndHashCode
 public class BulkMessagesDto {
+    /**
+     * Zone which sent the bulk, {@code null} when the bulk is not sequenced.
+     */
+    @JsonProperty("sender")
+    private ZoneId sender;
+
+    /**
+     * Identifies the run of the sender, sequences start over in each run.
+     */
+    @JsonProperty("epoch")
+    private long epoch;
+
+    @JsonProperty("lane")
+    private int lane;
+
+    /**
+     * Sequence number of the bulk in the lane, starting from 1.
+     */
+    @JsonProperty("sequence")
+    private long sequence;
+
     @JsonProperty("messages")
     private List<MessageDto> messages;
 }
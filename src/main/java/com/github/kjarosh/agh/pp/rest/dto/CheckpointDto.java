@@ -0,0 +1,28 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * @author Kamil Jarosz
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CheckpointDto {
+    private String path;
+    private int vertices;
+    private int edges;
+    private int events;
+    private long bytes;
+    /**
+     * Time for which modifications have been blocked.
+     */
+    private long pauseMillis;
+    private long totalMillis;
+}
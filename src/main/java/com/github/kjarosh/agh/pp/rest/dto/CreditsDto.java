@@ -0,0 +1,23 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Number of events which the sender of a bulk may send next.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CreditsDto {
+    @JsonProperty("credits")
+    private int credits;
+}
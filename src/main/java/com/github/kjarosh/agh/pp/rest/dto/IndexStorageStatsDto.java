@@ -0,0 +1,36 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import com.github.kjarosh.agh.pp.index.IndexStorage;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Statistics of the storage of indexes. A miss is an access to an index
+ * which is not resident, a page-in is a miss which loads the index from
+ * a page, and major page faults are reported by the operating system.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IndexStorageStatsDto {
+    private IndexStorage.Type type;
+    private int capacity;
+    private int resident;
+    private long pagedOut;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long pageIns;
+    private long pageOuts;
+    private long evictions;
+    private long pageBytes;
+    private int segments;
+    private long majorPageFaults;
+}
@@ -0,0 +1,48 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Map;
+
+/**
+ * Local state of a zone used to detect whether all zones are quiescent.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+public class QuiescenceStateDto {
+    /**
+     * Whether the zone has no events queued, being processed or being sent.
+     */
+    @JsonProperty("idle")
+    private boolean idle;
+
+    /**
+     * Number of events which have ever been posted in the zone.
+     */
+    @JsonProperty("posted")
+    private long posted;
+
+    /**
+     * Number of events which have ever been sent, by the destination zone.
+     */
+    @JsonProperty("sent")
+    private Map<String, Long> sent;
+
+    /**
+     * Number of events which have ever been received, by the source zone.
+     */
+    @JsonProperty("received")
+    private Map<String, Long> received;
+}
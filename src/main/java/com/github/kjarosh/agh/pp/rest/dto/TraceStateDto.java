@@ -0,0 +1,66 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Progress of propagating the events of a trace, in a zone or in all zones.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TraceStateDto {
+    /**
+     * Number of events of the trace which have been posted.
+     */
+    @JsonProperty("posted")
+    private long posted;
+
+    /**
+     * Number of events of the trace which have been processed.
+     */
+    @JsonProperty("completed")
+    private long completed;
+
+    /**
+     * Time of posting the first event and of processing the last one,
+     * in milliseconds since the epoch.
+     */
+    @JsonProperty("startMillis")
+    private long startMillis;
+    @JsonProperty("endMillis")
+    private long endMillis;
+
+    /**
+     * Whether all events of the trace have been processed in all zones.
+     */
+    @JsonProperty("complete")
+    private boolean complete;
+
+    @JsonIgnore
+    public long getDurationMillis() {
+        return Math.max(0, endMillis - startMillis);
+    }
+
+    /**
+     * Combines states of the trace in different zones.
+     */
+    @JsonIgnore
+    public TraceStateDto combine(TraceStateDto other) {
+        return TraceStateDto.builder()
+                .posted(posted + other.posted)
+                .completed(completed + other.completed)
+                .startMillis(Math.min(startMillis, other.startMillis))
+                .endMillis(Math.max(endMillis, other.endMillis))
+                .build();
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import java.util.HashMap;
+
+/**
+ * States of traces, by the trace.
+ *
+ * @author Kamil Jarosz
+ */
+public class TraceStatesDto extends HashMap<String, TraceStateDto> {
+}
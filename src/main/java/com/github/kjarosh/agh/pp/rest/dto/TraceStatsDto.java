@@ -0,0 +1,50 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Latency of propagating modifications applied by a zone, i.e. the time
+ * between posting the first event of a trace and processing the last one.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TraceStatsDto {
+    /**
+     * Number of traces known to the zone.
+     */
+    @JsonProperty("tracked")
+    private int tracked;
+
+    /**
+     * Number of traces of the zone being checked for completion.
+     */
+    @JsonProperty("pending")
+    private int pending;
+
+    /**
+     * Number of traces of the zone which have completed.
+     */
+    @JsonProperty("completed")
+    private long completed;
+
+    @JsonProperty("latencyMillisMean")
+    private double latencyMillisMean;
+    @JsonProperty("latencyMillis50")
+    private double latencyMillis50;
+    @JsonProperty("latencyMillis90")
+    private double latencyMillis90;
+    @JsonProperty("latencyMillis99")
+    private double latencyMillis99;
+    @JsonProperty("latencyMillisMax")
+    private double latencyMillisMax;
+}
@@ -0,0 +1,32 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Statistics of the write-ahead log. The wait time is the overhead
+ * which logging adds to each modification.
+ *
+ * @author Kamil Jarosz
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalStatsDto {
+    private boolean enabled;
+    private int segment;
+    private long records;
+    private long bytes;
+    private long commits;
+    private double recordsRate;
+    private double meanGroupSize;
+    private double commitMillisMean;
+    private double commitMillis99;
+    private double waitMillisMean;
+    private double waitMillis99;
+}
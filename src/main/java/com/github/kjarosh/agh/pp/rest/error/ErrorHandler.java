@@ -34,4 +34,15 @@ public class ErrorHandler extends ResponseEntityExceptionHandler {
                         .message(ex.getMessage())
                         .build());
     }
+
+    @ExceptionHandler(PropagationSuspendedException.class)
+    protected ResponseEntity<Object> handlePropagationSuspended(PropagationSuspendedException ex) {
+        logger.warn(ex.getMessage());
+        return ResponseEntity.status(409)
+                .body(ErrorDto.builder()
+                        .errorType("propagation_suspended")
+                        .subject(ex.getType().toString())
+                        .message(ex.getMessage())
+                        .build());
+    }
 }
@@ -0,0 +1,20 @@
+package com.github.kjarosh.agh.pp.rest.error;
+
+import com.github.kjarosh.agh.pp.checkpoint.WalRecord;
+import lombok.Getter;
+
+/**
+ * Thrown when a modification which propagates events is requested
+ * while the index is being built in bulk.
+ *
+ * @author Kamil Jarosz
+ */
+public class PropagationSuspendedException extends RuntimeException {
+    @Getter
+    private final WalRecord.Type type;
+
+    public PropagationSuspendedException(WalRecord.Type type) {
+        super("Cannot apply " + type + " while propagation of the index is suspended");
+        this.type = type;
+    }
+}
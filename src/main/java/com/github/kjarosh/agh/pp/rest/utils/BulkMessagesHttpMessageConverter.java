@@ -0,0 +1,40 @@
+package com.github.kjarosh.agh.pp.rest.utils;
+
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesCodec;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesDto;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Converts {@link BulkMessagesDto} to and from {@link BulkMessagesCodec#MEDIA_TYPE}.
+ * It is registered in the server as a bean, the client uses the codec directly.
+ * Bulks are deflated when event compression is enabled.
+ *
+ * @author Kamil Jarosz
+ */
+@Component
+public class BulkMessagesHttpMessageConverter extends AbstractHttpMessageConverter<BulkMessagesDto> {
+    public BulkMessagesHttpMessageConverter() {
+        super(BulkMessagesCodec.MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return BulkMessagesDto.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected BulkMessagesDto readInternal(Class<? extends BulkMessagesDto> clazz, HttpInputMessage inputMessage) throws IOException {
+        return BulkMessagesCodec.decode(inputMessage.getBody());
+    }
+
+    @Override
+    protected void writeInternal(BulkMessagesDto bulk, HttpOutputMessage outputMessage) throws IOException {
+        BulkMessagesCodec.encode(bulk, outputMessage.getBody(), ConfigLoader.getConfig().isEventsCompression());
+    }
+}
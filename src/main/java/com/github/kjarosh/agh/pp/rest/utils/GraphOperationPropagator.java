@@ -2,10 +2,12 @@ package com.github.kjarosh.agh.pp.rest.utils;
 
 import com.github.kjarosh.agh.pp.graph.model.ZoneId;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author Kamil Jarosz
  */
 @FunctionalInterface
 public interface GraphOperationPropagator {
-    void propagate(ZoneId zone, boolean successive);
+    CompletableFuture<Void> propagate(ZoneId zone, boolean successive);
 }
@@ -13,7 +13,7 @@ import java.util.function.Supplier;
  */
 @Slf4j
 public class EventStatsGatherer implements Supplier<EventStats> {
-    private final ZoneClient client = new ZoneClient();
+    private final ZoneClient client = ZoneClient.getInstance();
     private final Collection<? extends ZoneId> allZones;
 
     public EventStatsGatherer(ZoneId zone) {
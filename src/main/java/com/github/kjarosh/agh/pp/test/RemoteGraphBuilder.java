@@ -1,5 +1,7 @@
 package com.github.kjarosh.agh.pp.test;
 
+import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.io.GraphFiles;
 import com.github.kjarosh.agh.pp.graph.model.Edge;
 import com.github.kjarosh.agh.pp.graph.model.Graph;
 import com.github.kjarosh.agh.pp.graph.model.Vertex;
@@ -9,36 +11,116 @@ import com.github.kjarosh.agh.pp.rest.dto.BulkEdgeCreationRequestDto;
 import com.github.kjarosh.agh.pp.rest.dto.BulkVertexCreationRequestDto;
 import com.github.kjarosh.agh.pp.rest.dto.EdgeCreationRequestDto;
 import com.github.kjarosh.agh.pp.rest.dto.VertexCreationRequestDto;
-import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
+ * Builds a graph in remote zones. The graph is either held in memory
+ * or streamed from a file, see {@link #fromFile(String, ZoneClient)},
+ * in which case edges and vertices are not held in memory, apart from
+ * the bulks being sent. Vertex ids read from the file are still interned,
+ * see {@link com.github.kjarosh.agh.pp.graph.model.VertexId}, so memory
+ * grows with the number of vertices, though far less than with the graph.
+ *
  * @author Kamil Jarosz
  */
 @Slf4j
 public class RemoteGraphBuilder {
     private static final int BULK_SIZE = 20_000;
-    private final Graph graph;
+    private static final long QUIESCENCE_TIMEOUT_MILLIS = 60_000;
+    private final String graphPath;
     private final ZoneClient client;
+    private final Collection<ZoneId> allZones;
+    private final int vertexCount;
+    private final int edgeCount;
+    private Graph graph;
     private final AtomicInteger verticesBuilt = new AtomicInteger(0);
     private final AtomicInteger edgesBuilt = new AtomicInteger(0);
 
     public RemoteGraphBuilder(Graph graph, ZoneClient client) {
         this.graph = graph;
+        this.graphPath = null;
         this.client = client;
+        this.allZones = graph.allZones();
+        this.vertexCount = graph.allVertices().size();
+        this.edgeCount = graph.allEdges().size();
+    }
+
+    private RemoteGraphBuilder(String graphPath, ZoneClient client, GraphSummary summary) {
+        this.graph = null;
+        this.graphPath = graphPath;
+        this.client = client;
+        this.allZones = summary.zones;
+        this.vertexCount = summary.vertices;
+        this.edgeCount = summary.edges;
+    }
+
+    /**
+     * Creates a builder which streams the graph from the given file.
+     * The file is read once up front in order to count vertices and edges,
+     * and then once for vertices and once for edges. Every vertex id read
+     * is interned and never released, so memory is not bounded by the size
+     * of bulks alone.
+     */
+    public static RemoteGraphBuilder fromFile(String graphPath, ZoneClient client) {
+        GraphSummary summary = new GraphSummary();
+        readGraph(graphPath, summary::addVertex, summary::addEdge);
+        return new RemoteGraphBuilder(graphPath, client, summary);
+    }
+
+    private static void readGraph(String graphPath, Consumer<Vertex> vertexConsumer, Consumer<Edge> edgeConsumer) {
+        try {
+            GraphFiles.read(graphPath, vertexConsumer, edgeConsumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void forEachVertex(Consumer<Vertex> consumer) {
+        if (graphPath != null) {
+            readGraph(graphPath, consumer, null);
+        } else {
+            graph.allVertices().forEach(consumer);
+        }
+    }
+
+    private void forEachEdge(Consumer<Edge> consumer) {
+        if (graphPath != null) {
+            readGraph(graphPath, null, consumer);
+        } else {
+            graph.allEdges().forEach(consumer);
+        }
+    }
+
+    /**
+     * Returns the graph, loading it when it is streamed from a file.
+     * Needed only when not building in bulk.
+     */
+    private Graph graph() {
+        if (graph == null) {
+            log.info("Loading graph {} into memory", graphPath);
+            graph = GraphLoader.loadGraph(graphPath);
+        }
+        return graph;
     }
 
     public void build(ZoneClient client, BulkOption... options) {
@@ -48,21 +130,25 @@ public class RemoteGraphBuilder {
         log.info("Building graph");
         Instant start = Instant.now();
 
-        Collection<ZoneId> allZones = graph.allZones();
-
         log.info("Checking all zones if they are healthy: {}", allZones);
         while (!healthy(allZones)) {
             sleep();
         }
 
         Supervisor supervisor = new Supervisor(
-                () -> (double) verticesBuilt.get() / graph.allVertices().size(),
-                () -> (double) edgesBuilt.get() / graph.allEdges().size(),
+                () -> (double) verticesBuilt.get() / vertexCount,
+                () -> (double) edgesBuilt.get() / edgeCount,
                 new EventStatsGatherer(allZones));
         supervisor.start();
+        boolean bulkIndex = !optionsSet.contains(BulkOption.NO_BULK_EDGES) &&
+                !optionsSet.contains(BulkOption.NO_BULK_INDEX);
         try {
             log.info("Disabling instrumentation");
             allZones.forEach(z -> client.setInstrumentationEnabled(z, false));
+            if (bulkIndex) {
+                log.info("Suspending propagation of the index");
+                allZones.forEach(client::suspendPropagation);
+            }
 
             if (!optionsSet.contains(BulkOption.NO_BULK_VERTICES)) {
                 buildVerticesBulk(client);
@@ -77,11 +163,22 @@ public class RemoteGraphBuilder {
             }
 
             log.debug("Waiting for index to be built: {}", allZones);
-            while (!indexReady(allZones)) {
-                sleep();
+            ZoneId coordinator = allZones.iterator().next();
+            while (!client.awaitQuiescence(coordinator, allZones, QUIESCENCE_TIMEOUT_MILLIS)) {
+                log.debug("Zones not quiescent yet: {}", allZones);
+            }
+
+            if (bulkIndex) {
+                log.info("Building index in bulk");
+                int rounds = client.buildIndex(coordinator, allZones);
+                log.info("Index built in {} rounds", rounds);
             }
         } finally {
             supervisor.interrupt();
+            if (bulkIndex) {
+                log.info("Resuming propagation of the index");
+                allZones.forEach(client::resumePropagation);
+            }
             log.info("Enabling instrumentation");
             allZones.forEach(z -> client.setInstrumentationEnabled(z, true));
         }
@@ -103,18 +200,6 @@ public class RemoteGraphBuilder {
         }
     }
 
-    private boolean indexReady(Collection<ZoneId> allZones) {
-        List<ZoneId> notReady = allZones.stream()
-                .filter(zone -> !client.indexReady(zone))
-                .collect(Collectors.toList());
-        if (notReady.isEmpty()) {
-            return true;
-        } else {
-            log.debug("Zones not ready: {}", notReady);
-            return false;
-        }
-    }
-
     private boolean healthy(Collection<ZoneId> allZones) {
         List<ZoneId> notHealthy = allZones.stream()
                 .filter(zone -> !client.healthcheck(zone))
@@ -128,27 +213,33 @@ public class RemoteGraphBuilder {
     }
 
     private void buildVerticesBulk(ZoneClient client) {
-        Map<ZoneId, List<Vertex>> groupedByOwner = graph.allVertices()
-                .stream()
-                .collect(Collectors.groupingBy(v -> v.id().owner()));
-
-        for (ZoneId owner : groupedByOwner.keySet()) {
-            log.debug("Sending batches of vertices to {}", owner);
-            List<Vertex> vertices = groupedByOwner.get(owner);
-            for (List<Vertex> bulk : Lists.partition(vertices, BULK_SIZE)) {
-                List<VertexCreationRequestDto> requests = bulk.stream()
-                        .map(v -> new VertexCreationRequestDto(v.id().name(), v.type()))
-                        .collect(Collectors.toList());
-                log.debug("Sending a batch of {} vertices to {}", requests.size(), owner);
-                client.addVertices(owner, new BulkVertexCreationRequestDto(requests));
-                verticesBuilt.addAndGet(requests.size());
+        Map<ZoneId, List<VertexCreationRequestDto>> bulks = new HashMap<>();
+        forEachVertex(v -> {
+            ZoneId owner = v.id().owner();
+            List<VertexCreationRequestDto> bulk = bulks.computeIfAbsent(owner, o -> new ArrayList<>());
+            bulk.add(new VertexCreationRequestDto(v.id().name(), v.type()));
+            if (bulk.size() >= BULK_SIZE) {
+                sendVertices(client, owner, bulk);
+                bulk.clear();
+            }
+        });
+
+        bulks.forEach((owner, bulk) -> {
+            if (!bulk.isEmpty()) {
+                sendVertices(client, owner, bulk);
             }
             log.debug("Finished sending batches of vertices to {}", owner);
-        }
+        });
+    }
+
+    private void sendVertices(ZoneClient client, ZoneId owner, List<VertexCreationRequestDto> requests) {
+        log.debug("Sending a batch of {} vertices to {}", requests.size(), owner);
+        client.addVertices(owner, new BulkVertexCreationRequestDto(new ArrayList<>(requests)));
+        verticesBuilt.addAndGet(requests.size());
     }
 
     private void buildVertices(ZoneClient client) {
-        graph.allVertices()
+        graph().allVertices()
                 .stream()
                 .parallel()
                 .forEach(v -> {
@@ -158,34 +249,39 @@ public class RemoteGraphBuilder {
     }
 
     private void buildEdgesBulk(ZoneClient client) {
-        Map<Pair<ZoneId, ZoneId>, List<Edge>> grouped = graph.allEdges()
-                .stream()
-                .collect(Collectors.groupingBy(e -> Pair.of(e.src().owner(), e.dst().owner())));
+        Map<Pair<ZoneId, ZoneId>, List<EdgeCreationRequestDto>> bulks = new HashMap<>();
+        forEachEdge(e -> {
+            Pair<ZoneId, ZoneId> pair = Pair.of(e.src().owner(), e.dst().owner());
+            List<EdgeCreationRequestDto> bulk = bulks.computeIfAbsent(pair, p -> new ArrayList<>());
+            bulk.add(EdgeCreationRequestDto.fromEdge(e, null));
+            if (bulk.size() >= BULK_SIZE) {
+                sendEdges(client, pair, bulk);
+                bulk.clear();
+            }
+        });
 
-        for (Pair<ZoneId, ZoneId> pair : grouped.keySet()) {
-            log.debug("Sending batches of edges between {} and {}",
-                    pair.getLeft(), pair.getRight());
-            List<Edge> edges = grouped.get(pair);
-            for (List<Edge> bulk : Lists.partition(edges, BULK_SIZE)) {
-                List<EdgeCreationRequestDto> requests = bulk.stream()
-                        .map(e -> EdgeCreationRequestDto.fromEdge(e, null))
-                        .collect(Collectors.toList());
-                log.debug("Sending a batch of {} edges between {} and {}", requests.size(), pair.getLeft(), pair.getRight());
-                client.addEdges(pair.getLeft(), BulkEdgeCreationRequestDto.builder()
-                        .sourceZone(pair.getLeft())
-                        .destinationZone(pair.getRight())
-                        .successive(false)
-                        .edges(requests)
-                        .build());
-                edgesBuilt.addAndGet(requests.size());
+        bulks.forEach((pair, bulk) -> {
+            if (!bulk.isEmpty()) {
+                sendEdges(client, pair, bulk);
             }
             log.debug("Finished sending batches of edges between {} and {}",
                     pair.getLeft(), pair.getRight());
-        }
+        });
+    }
+
+    private void sendEdges(ZoneClient client, Pair<ZoneId, ZoneId> pair, List<EdgeCreationRequestDto> requests) {
+        log.debug("Sending a batch of {} edges between {} and {}", requests.size(), pair.getLeft(), pair.getRight());
+        client.addEdges(pair.getLeft(), BulkEdgeCreationRequestDto.builder()
+                .sourceZone(pair.getLeft())
+                .destinationZone(pair.getRight())
+                .successive(false)
+                .edges(new ArrayList<>(requests))
+                .build());
+        edgesBuilt.addAndGet(requests.size());
     }
 
     private void buildEdges(ZoneClient client) {
-        graph.allEdges()
+        graph().allEdges()
                 .stream()
                 .sorted(Comparator.comparing(Edge::src)
                         .thenComparing(Edge::dst))
@@ -197,8 +293,30 @@ public class RemoteGraphBuilder {
                 });
     }
 
+    private static class GraphSummary {
+        private final Set<ZoneId> zones = new HashSet<>();
+        private int vertices = 0;
+        private int edges = 0;
+
+        private void addVertex(Vertex v) {
+            zones.add(v.id().owner());
+            ++vertices;
+        }
+
+        private void addEdge(Edge e) {
+            zones.add(e.src().owner());
+            zones.add(e.dst().owner());
+            ++edges;
+        }
+    }
+
     public enum BulkOption {
         NO_BULK_EDGES,
         NO_BULK_VERTICES,
+        /**
+         * Propagate events of bulk edges instead of
+         * building the index in bulk afterwards.
+         */
+        NO_BULK_INDEX,
     }
 }
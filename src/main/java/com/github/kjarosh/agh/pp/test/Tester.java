@@ -26,7 +26,7 @@ public class Tester {
             String graphPath) {
         this.dynamicStrategy = new DynamicTestsStrategy(graphPath);
         this.context = TestContext.builder()
-                .zone(new ZoneId(zone))
+                .zone(ZoneId.of(zone))
                 .client(client)
                 .build();
     }
@@ -35,7 +35,7 @@ public class Tester {
         LoggerUtils.setLoggingLevel("org.springframework.web", Level.INFO);
 
         String graphPath = System.getenv("GRAPH_PATH");
-        new Tester(new ZoneClient(), zone, graphPath).test();
+        new Tester(ZoneClient.getInstance(), zone, graphPath).test();
     }
 
     @SneakyThrows
@@ -0,0 +1,72 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class CheckpointBarrierTest {
+    private final CheckpointBarrier barrier = new CheckpointBarrier();
+
+    @Test
+    void exclusiveWaitsForShared() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean sharedFinished = new AtomicBoolean();
+        CompletableFuture<Void> shared = CompletableFuture.runAsync(() -> barrier.shared(() -> {
+            entered.countDown();
+            await(release);
+            sharedFinished.set(true);
+        }));
+        assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Boolean> exclusive = CompletableFuture.supplyAsync(
+                () -> barrier.exclusive(sharedFinished::get));
+        Thread.sleep(50);
+        assertThat(exclusive).isNotDone();
+
+        release.countDown();
+        assertThat(exclusive.get(10, TimeUnit.SECONDS)).isTrue();
+        shared.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void sharedWaitsForExclusive() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean exclusiveFinished = new AtomicBoolean();
+        CompletableFuture<Void> exclusive = CompletableFuture.runAsync(() -> barrier.exclusive(() -> {
+            entered.countDown();
+            await(release);
+            exclusiveFinished.set(true);
+            return null;
+        }));
+        assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+
+        AtomicBoolean seen = new AtomicBoolean();
+        CompletableFuture<Void> shared = CompletableFuture.runAsync(
+                () -> barrier.shared(() -> seen.set(exclusiveFinished.get())));
+        Thread.sleep(50);
+        assertThat(shared).isNotDone();
+
+        release.countDown();
+        shared.get(10, TimeUnit.SECONDS);
+        exclusive.get(10, TimeUnit.SECONDS);
+        assertThat(seen).isTrue();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.EffectiveVertex;
+import com.github.kjarosh.agh.pp.index.EffectiveVertex.RecalculationResult;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class CheckpointCodecTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+    private static final VertexId a = VertexId.of(zone, "a");
+    private static final VertexId b = VertexId.of(zone, "b");
+    private static final VertexId c = VertexId.of(zone, "c");
+
+    @Test
+    void numbersAndIds() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CheckpointOutput out = new CheckpointOutput(bytes);
+        out.writeVarInt(0);
+        out.writeVarInt(300);
+        out.writeVarInt(-1);
+        out.writeVarLong(Long.MAX_VALUE);
+        out.writeVertexId(a);
+        out.writeVertexId(b);
+        out.writeVertexId(a);
+        out.writeNullableString(null);
+        out.flush();
+
+        CheckpointInput in = new CheckpointInput(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThat(in.readVarInt()).isEqualTo(0);
+        assertThat(in.readVarInt()).isEqualTo(300);
+        assertThat(in.readVarInt()).isEqualTo(-1);
+        assertThat(in.readVarLong()).isEqualTo(Long.MAX_VALUE);
+        assertThat(in.readVertexId()).isSameAs(a);
+        assertThat(in.readVertexId()).isSameAs(b);
+        assertThat(in.readVertexId()).isSameAs(a);
+        assertThat(in.readNullableString()).isNull();
+    }
+
+    @Test
+    void effectiveVertex() throws IOException {
+        EffectiveVertex ev = new EffectiveVertex();
+        ev.addIntermediateVertices(Set.of(a, b, c), () -> {});
+        ev.recalculatePermissions(a, Permissions.valueOf("10010"));
+        ev.recalculatePermissions(b, null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CheckpointOutput out = new CheckpointOutput(bytes);
+        ev.encode(out);
+        out.flush();
+        EffectiveVertex decoded = EffectiveVertex.decode(
+                new CheckpointInput(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(decoded.getIntermediateVertices()).containsExactlyInAnyOrder(a, b, c);
+        assertThat(decoded.getEffectivePermissions()).isEqualTo(Permissions.valueOf("10010"));
+        assertThat(decoded.isDirty()).isTrue();
+        assertThat(decoded.recalculatePermissions(b, Permissions.valueOf("00001")))
+                .isEqualTo(RecalculationResult.CLEANED);
+        assertThat(decoded.getEffectivePermissions()).isEqualTo(Permissions.valueOf("10011"));
+    }
+
+    @Test
+    void event() throws IOException {
+        Event event = new Event(EventType.CHILD_CHANGE, "trace", a, b, Set.of(b, c));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CheckpointOutput out = new CheckpointOutput(bytes);
+        out.writeEvent(event);
+        out.flush();
+        Event decoded = new CheckpointInput(new ByteArrayInputStream(bytes.toByteArray()))
+                .readEvent();
+
+        assertThat(decoded.getType()).isEqualTo(EventType.CHILD_CHANGE);
+        assertThat(decoded.getTrace()).isEqualTo("trace");
+        assertThat(decoded.getSender()).isSameAs(a);
+        assertThat(decoded.getOriginalSender()).isSameAs(b);
+        assertThat(decoded.getEffectiveVertices()).containsExactlyInAnyOrder(b, c);
+    }
+
+    @Test
+    void chunkedOutputStream() throws IOException {
+        ChunkedOutputStream os = new ChunkedOutputStream();
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte) i;
+        }
+        os.write(data, 0, 100);
+        os.write(data[100]);
+        os.write(data, 101, data.length - 101);
+        assertThat(os.size()).isEqualTo(data.length);
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        os.writeTo(copy);
+        assertThat(copy.toByteArray()).isEqualTo(data);
+    }
+}
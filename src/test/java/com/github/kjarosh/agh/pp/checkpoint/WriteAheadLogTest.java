@@ -0,0 +1,203 @@
+package com.github.kjarosh.agh.pp.checkpoint;
+
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.graph.model.EdgeId;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Kamil Jarosz
+ */
+class WriteAheadLogTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+    private static final VertexId a = VertexId.of(zone, "a");
+    private static final VertexId b = VertexId.of(zone, "b");
+
+    @TempDir
+    Path dir;
+
+    private WriteAheadLog wal;
+
+    @BeforeEach
+    void setUp() {
+        Config config = new Config();
+        config.setWalEnabled(true);
+        config.setWalPath(dir.resolve("wal").toString());
+        Path configPath = dir.resolve("config.json");
+        config.saveConfig(configPath);
+        ConfigLoader.reloadConfig(configPath);
+
+        wal = new WriteAheadLog();
+        wal.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        wal.close();
+    }
+
+    @Test
+    void replay() {
+        wal.start(0);
+        wal.log(List.of(
+                WalRecord.addVertex(a, Vertex.Type.USER),
+                WalRecord.addEdge(EdgeId.of(a, b), Permissions.valueOf("10100"), "trace", false)));
+        wal.log(Collections.singletonList(WalRecord.event(b,
+                new Event(EventType.CHILD_CHANGE, "trace", a, a, Set.of(a)))));
+
+        List<WalRecord> replayed = new ArrayList<>();
+        wal.replay(0, replayed::add);
+
+        assertThat(replayed).extracting(WalRecord::getType).containsExactly(
+                WalRecord.Type.ADD_VERTEX,
+                WalRecord.Type.ADD_EDGE,
+                WalRecord.Type.EVENT);
+        assertThat(replayed.get(0).getVertexType()).isEqualTo(Vertex.Type.USER);
+        assertThat(replayed.get(1).getEdgeId()).isEqualTo(EdgeId.of(a, b));
+        assertThat(replayed.get(1).getPermissions()).isEqualTo(Permissions.valueOf("10100"));
+        assertThat(replayed.get(2).getEvent().getEffectiveVertices()).containsExactly(a);
+    }
+
+    @Test
+    void groupCommit() throws Exception {
+        CountDownLatch syncing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        wal = new WriteAheadLog() {
+            private boolean first = true;
+
+            @Override
+            void force(FileChannel target) throws IOException {
+                if (first) {
+                    first = false;
+                    syncing.countDown();
+                    await(release);
+                }
+                super.force(target);
+            }
+        };
+        wal.init();
+        wal.start(0);
+
+        int records = 100;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < records; ++i) {
+            VertexId id = VertexId.of(zone, "v" + i);
+            Thread thread = new Thread(() -> wal.log(Collections.singletonList(
+                    WalRecord.addVertex(id, Vertex.Type.GROUP))));
+            threads.add(thread);
+            thread.start();
+            if (i == 0) {
+                // the first record is being synced, the others have to wait
+                assertThat(syncing.await(10, TimeUnit.SECONDS)).isTrue();
+            }
+        }
+
+        // all threads have appended their records and wait for the commit
+        for (Thread thread : threads.subList(1, records)) {
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<WalRecord> replayed = new ArrayList<>();
+        wal.replay(0, replayed::add);
+        assertThat(replayed.stream().map(r -> r.getId().name()).collect(Collectors.toSet()))
+                .hasSize(records);
+        assertThat(wal.stats().getCommits()).isEqualTo(2);
+    }
+
+    @Test
+    void close() {
+        wal.start(0);
+        wal.log(Collections.singletonList(WalRecord.addVertex(a, Vertex.Type.USER)));
+        wal.close();
+
+        assertThatThrownBy(() -> wal.log(Collections.singletonList(WalRecord.addVertex(b, Vertex.Type.USER))))
+                .isInstanceOf(IllegalStateException.class);
+        List<WalRecord> replayed = new ArrayList<>();
+        wal.replay(0, replayed::add);
+        assertThat(replayed).extracting(WalRecord::getId).containsExactly(a);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void rotateAndTornTail() throws IOException {
+        wal.start(0);
+        wal.log(Collections.singletonList(WalRecord.addVertex(a, Vertex.Type.USER)));
+        assertThat(wal.rotate()).isEqualTo(1);
+        wal.log(Collections.singletonList(WalRecord.addVertex(b, Vertex.Type.USER)));
+        assertThat(wal.segments()).containsExactly(0, 1);
+
+        Path last = dir.resolve("wal").resolve("wal-00000001.log");
+        Files.write(last, new byte[]{0, 0, 0, 100, 1, 2}, StandardOpenOption.APPEND);
+
+        List<WalRecord> replayed = new ArrayList<>();
+        wal.replay(1, replayed::add);
+        assertThat(replayed).extracting(WalRecord::getId).containsExactly(b);
+
+        wal.deleteSegmentsBefore(1);
+        assertThat(wal.segments()).containsExactly(1);
+    }
+
+    @Test
+    void corruptLength() throws IOException {
+        byte[][] tails = {
+                // truncated length prefix
+                {0, 0},
+                // length beyond the end of the segment
+                {0x7f, -1, -1, -1, 0, 0, 0, 0, 1, 2},
+                // negative length
+                {-1, -1, -1, -1, 0, 0, 0, 0},
+        };
+
+        wal.start(0);
+        for (int i = 0; i < tails.length; ++i) {
+            if (i > 0) {
+                wal.rotate();
+            }
+            wal.log(Collections.singletonList(WalRecord.addVertex(a, Vertex.Type.USER)));
+            Path segment = dir.resolve("wal").resolve(String.format("wal-%08d.log", i));
+            Files.write(segment, tails[i], StandardOpenOption.APPEND);
+        }
+
+        List<WalRecord> replayed = new ArrayList<>();
+        wal.replay(0, replayed::add);
+        assertThat(replayed).extracting(WalRecord::getId).containsExactly(a, a, a);
+    }
+}
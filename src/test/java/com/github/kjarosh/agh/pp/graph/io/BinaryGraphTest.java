@@ -0,0 +1,70 @@
+package com.github.kjarosh.agh.pp.graph.io;
+
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Kamil Jarosz
+ */
+class BinaryGraphTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTrip() throws IOException {
+        Graph graph = GraphFiles.readGraph("example_graph.json");
+        Path path = dir.resolve("graph.bin");
+        BinaryGraphWriter.write(graph, path);
+
+        assertThat(BinaryGraphFormat.isBinary(path.toString())).isTrue();
+        Graph read = GraphFiles.readGraph(path.toString());
+        assertThat(ids(read)).containsExactlyInAnyOrderElementsOf(ids(graph));
+        assertThat(read.allEdges()).containsExactlyInAnyOrderElementsOf(graph.allEdges());
+        for (Edge edge : graph.allEdges()) {
+            assertThat(read.getEdge(edge.id()).permissions()).isEqualTo(edge.permissions());
+        }
+    }
+
+    @Test
+    void records() throws IOException {
+        Graph graph = GraphFiles.readGraph("example_graph.json");
+        Path path = dir.resolve("graph.bin");
+        BinaryGraphWriter.write(graph, path);
+
+        try (BinaryGraphReader reader = BinaryGraphReader.open(path)) {
+            assertThat(reader.vertexCount()).isEqualTo(graph.allVertices().size());
+            assertThat(reader.edgeCount()).isEqualTo(graph.allEdges().size());
+            Vertex vertex = reader.vertex(0);
+            assertThat(graph.getVertex(vertex.id()).type()).isEqualTo(vertex.type());
+        }
+    }
+
+    @Test
+    void notBinary() throws IOException {
+        Path path = dir.resolve("graph.json");
+        Files.writeString(path, "{\"vertices\":[],\"edges\":[]}");
+
+        assertThat(BinaryGraphFormat.isBinary(path.toString())).isFalse();
+        assertThat(BinaryGraphFormat.isBinary("example_graph.json")).isFalse();
+        assertThatThrownBy(() -> BinaryGraphReader.open(path))
+                .isInstanceOf(IOException.class);
+    }
+
+    private List<String> ids(Graph graph) {
+        return graph.allVertices().stream()
+                .map(v -> v.id() + " " + v.type())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.kjarosh.agh.pp.graph.io;
+
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class GraphReaderWriterTest {
+    private Graph graph;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (GraphReader reader = GraphReader.open("example_graph.json")) {
+            graph = reader.readGraph();
+        }
+    }
+
+    @Test
+    void roundTrip(@TempDir Path dir) throws IOException {
+        assertRoundTrip(dir.resolve("graph.json"));
+    }
+
+    @Test
+    void roundTripCompressed(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("graph.json.gz");
+        assertRoundTrip(path);
+
+        byte[] header = Files.readAllBytes(path);
+        assertThat(header[0]).isEqualTo((byte) 0x1f);
+        assertThat(header[1]).isEqualTo((byte) 0x8b);
+    }
+
+    private void assertRoundTrip(Path path) throws IOException {
+        try (GraphWriter writer = GraphWriter.open(path)) {
+            writer.write(graph);
+        }
+
+        Graph read;
+        try (GraphReader reader = GraphReader.open(path.toString())) {
+            read = reader.readGraph();
+        }
+        assertThat(ids(read.allVertices())).containsExactlyInAnyOrderElementsOf(ids(graph.allVertices()));
+        assertThat(read.allEdges()).containsExactlyInAnyOrderElementsOf(graph.allEdges());
+        for (Edge edge : graph.allEdges()) {
+            assertThat(read.getEdge(edge.id()).permissions()).isEqualTo(edge.permissions());
+        }
+    }
+
+    @Test
+    void serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedOutputStream os = new BufferedOutputStream(bytes, 1 << 20);
+        graph.serialize(os);
+
+        Graph read = Graph.deserialize(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThat(read.allEdges()).containsExactlyInAnyOrderElementsOf(graph.allEdges());
+
+        // the stream is left open
+        os.write('\n');
+        os.flush();
+    }
+
+    @Test
+    void edgesBeforeVertices() throws IOException {
+        String json = "{\"edges\":[{\"src\":\"z:a\",\"dst\":\"z:b\",\"perms\":\"10000\"}]," +
+                "\"unknown\":{\"x\":[1]}," +
+                "\"vertices\":[{\"id\":\"z:a\",\"type\":\"user\"},{\"id\":\"z:b\",\"type\":\"group\"}]}";
+        Graph read = new GraphReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))
+                .readGraph();
+        assertThat(read.allVertices()).hasSize(2);
+        assertThat(read.allEdges()).hasSize(1);
+    }
+
+    @Test
+    void skipEdges() throws IOException {
+        List<Vertex> vertices = new ArrayList<>();
+        try (GraphReader reader = GraphReader.open("example_graph.json")) {
+            reader.read(vertices::add, null);
+        }
+        assertThat(ids(vertices)).containsExactlyInAnyOrderElementsOf(ids(graph.allVertices()));
+    }
+
+    private List<String> ids(Collection<Vertex> vertices) {
+        return vertices.stream()
+                .map(v -> v.id() + " " + v.type())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.kjarosh.agh.pp.graph.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class AdjacencyTest {
+    private final VertexId hub = VertexId.of("zone0:hub");
+
+    private static List<VertexId> neighbours(int count) {
+        List<VertexId> neighbours = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            neighbours.add(VertexId.of("zone0:adjacency-" + i));
+        }
+        return neighbours;
+    }
+
+    @Test
+    void hub() {
+        List<VertexId> neighbours = neighbours(1000);
+        Adjacency adjacency = new Adjacency();
+        for (VertexId neighbour : neighbours) {
+            assertThat(adjacency.putIfAbsent(neighbour, new Edge(neighbour, hub, Permissions.NONE))).isNull();
+        }
+
+        assertThat(adjacency.size()).isEqualTo(1000);
+        for (VertexId neighbour : neighbours) {
+            assertThat(adjacency.get(neighbour).src()).isEqualTo(neighbour);
+            assertThat(adjacency.putIfAbsent(neighbour, new Edge(neighbour, hub, Permissions.NONE)))
+                    .isSameAs(adjacency.get(neighbour));
+        }
+
+        for (int i = 0; i < 1000; i += 2) {
+            assertThat(adjacency.remove(neighbours.get(i))).isNotNull();
+        }
+
+        assertThat(adjacency.size()).isEqualTo(500);
+        for (int i = 0; i < 1000; ++i) {
+            assertThat(adjacency.get(neighbours.get(i)) != null).isEqualTo(i % 2 == 1);
+        }
+        assertThat(adjacency.get(hub)).isNull();
+    }
+
+    @Test
+    void snapshotsIgnoreAddedEdges() {
+        List<VertexId> neighbours = neighbours(100);
+        Adjacency adjacency = new Adjacency();
+        for (VertexId neighbour : neighbours.subList(0, 50)) {
+            adjacency.putIfAbsent(neighbour, new Edge(neighbour, hub, Permissions.NONE));
+        }
+
+        Adjacency.EdgeView view = adjacency.edges();
+        for (VertexId neighbour : neighbours.subList(50, 100)) {
+            adjacency.putIfAbsent(neighbour, new Edge(neighbour, hub, Permissions.NONE));
+        }
+
+        assertThat(view).hasSize(50);
+        assertThat(adjacency.edges()).hasSize(100);
+        assertThat(adjacency.get(neighbours.get(99))).isNotNull();
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.kjarosh.agh.pp.graph.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class GraphSnapshotTest {
+    private final VertexId alice = VertexId.of("zone0:alice");
+    private final VertexId bob = VertexId.of("zone0:bob");
+    private final VertexId group = VertexId.of("zone0:group");
+    private final VertexId space = VertexId.of("zone1:space");
+
+    @Test
+    void snapshot() {
+        Graph graph = new Graph();
+        graph.addVertex(new Vertex(alice, Vertex.Type.USER));
+        graph.addVertex(new Vertex(bob, Vertex.Type.USER));
+        graph.addVertex(new Vertex(group, Vertex.Type.GROUP));
+        graph.addEdge(new Edge(alice, group, Permissions.valueOf("10000")));
+        graph.addEdge(new Edge(bob, group, Permissions.valueOf("01000")));
+        graph.addEdge(new Edge(group, space, Permissions.valueOf("00100")));
+
+        GraphSnapshot snapshot = graph.snapshot();
+        assertThat(snapshot.size()).isEqualTo(4);
+        assertThat(snapshot.edgeCount()).isEqualTo(3);
+        assertThat(snapshot.indexOf(VertexId.of("zone0:nobody"))).isEqualTo(-1);
+
+        int g = snapshot.indexOf(group);
+        assertThat(snapshot.vertex(g)).isEqualTo(group);
+        assertThat(outNeighbours(snapshot, g)).containsExactly(space);
+        assertThat(inNeighbours(snapshot, g)).containsExactlyInAnyOrder(alice, bob);
+        int e = snapshot.outBegin(snapshot.indexOf(alice));
+        assertThat(snapshot.outPermissions(e)).isEqualTo(Permissions.valueOf("10000"));
+
+        assertThat(graph.snapshot()).isSameAs(snapshot);
+        graph.removeEdge(graph.getEdge(EdgeId.of(alice, group)));
+        GraphSnapshot modified = graph.snapshot();
+        assertThat(modified).isNotSameAs(snapshot);
+        assertThat(inNeighbours(modified, modified.indexOf(group))).containsExactly(bob);
+    }
+
+    @Test
+    void outdatedSnapshot() throws InterruptedException {
+        Graph graph = new Graph();
+        graph.addVertex(new Vertex(alice, Vertex.Type.USER));
+        graph.addVertex(new Vertex(group, Vertex.Type.GROUP));
+        GraphSnapshot snapshot = graph.snapshot(60_000);
+
+        graph.addEdge(new Edge(alice, group, Permissions.valueOf("10000")));
+        assertThat(graph.snapshot(60_000)).isSameAs(snapshot);
+
+        Thread.sleep(2);
+        GraphSnapshot rebuilt = graph.snapshot(1);
+        assertThat(rebuilt).isNotSameAs(snapshot);
+        assertThat(rebuilt.edgeCount()).isEqualTo(1);
+        assertThat(graph.snapshot()).isSameAs(rebuilt);
+    }
+
+    private List<VertexId> outNeighbours(GraphSnapshot snapshot, int v) {
+        List<VertexId> result = new ArrayList<>();
+        for (int e = snapshot.outBegin(v); e < snapshot.outEnd(v); ++e) {
+            result.add(snapshot.vertex(snapshot.outTarget(e)));
+        }
+        return result;
+    }
+
+    private List<VertexId> inNeighbours(GraphSnapshot snapshot, int v) {
+        List<VertexId> result = new ArrayList<>();
+        for (int e = snapshot.inBegin(v); e < snapshot.inEnd(v); ++e) {
+            result.add(snapshot.vertex(snapshot.inSource(e)));
+        }
+        return result;
+    }
+}
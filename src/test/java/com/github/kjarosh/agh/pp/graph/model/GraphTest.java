@@ -0,0 +1,66 @@
+package com.github.kjarosh.agh.pp.graph.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class GraphTest {
+    private final VertexId alice = VertexId.of("zone0:alice");
+    private final VertexId bob = VertexId.of("zone0:bob");
+    private final VertexId group = VertexId.of("zone0:group");
+    private Graph graph;
+
+    @BeforeEach
+    void setUp() {
+        graph = new Graph();
+        graph.addVertex(new Vertex(alice, Vertex.Type.USER));
+        graph.addVertex(new Vertex(bob, Vertex.Type.USER));
+        graph.addVertex(new Vertex(group, Vertex.Type.GROUP));
+        graph.addEdge(new Edge(alice, group, Permissions.valueOf("10000")));
+        graph.addEdge(new Edge(bob, group, Permissions.valueOf("01000")));
+    }
+
+    @Test
+    void edges() {
+        assertThat(graph.allEdges()).hasSize(2);
+        assertThat(graph.getEdge(EdgeId.of(alice, group)).permissions())
+                .isEqualTo(Permissions.valueOf("10000"));
+        assertThat(graph.getEdge(EdgeId.of(group, alice))).isNull();
+        assertThat(graph.getEdgesBySource(alice))
+                .extracting(Edge::dst)
+                .containsExactly(group);
+        assertThat(graph.getEdgesByDestination(group))
+                .extracting(Edge::src)
+                .containsExactlyInAnyOrder(alice, bob);
+    }
+
+    @Test
+    void setPermissions() {
+        Edge edge = graph.getEdge(EdgeId.of(bob, group));
+        graph.setPermissions(EdgeId.of(bob, group), Permissions.valueOf("00011"));
+
+        assertThat(graph.getEdge(EdgeId.of(bob, group))).isSameAs(edge);
+        assertThat(edge.permissions()).isEqualTo(Permissions.valueOf("00011"));
+
+        assertThat(graph.getEdgesByDestination(group))
+                .extracting(Edge::permissions)
+                .containsExactlyInAnyOrder(Permissions.valueOf("10000"), Permissions.valueOf("00011"));
+        assertThat(graph.allEdges()).hasSize(2);
+    }
+
+    @Test
+    void removeEdge() {
+        graph.removeEdge(graph.getEdge(EdgeId.of(alice, group)));
+
+        assertThat(graph.hasEdge(EdgeId.of(alice, group))).isFalse();
+        assertThat(graph.getEdgesBySource(alice)).isEmpty();
+        assertThat(graph.getEdgesByDestination(group))
+                .extracting(Edge::src)
+                .containsExactly(bob);
+        assertThat(graph.allEdges()).hasSize(1);
+    }
+}
@@ -2,6 +2,8 @@ package com.github.kjarosh.agh.pp.graph.model;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -40,4 +42,34 @@ class PermissionsTest {
                 new Permissions("00111")))
                 .isEqualTo(new Permissions("10111"));
     }
+
+    @Test
+    void mask() {
+        assertThat(new Permissions("10010").mask()).isEqualTo(0b10010L);
+        assertThat(Permissions.fromMask(0b01101)).isEqualTo(new Permissions("01101"));
+        assertThat(Permissions.fromMask(0)).isEqualTo(Permissions.NONE);
+    }
+
+    @Test
+    void interned() {
+        assertThat(Permissions.valueOf("10110")).isSameAs(Permissions.valueOf("10110"));
+        assertThat(Permissions.combine(
+                Permissions.valueOf("10000"),
+                Permissions.valueOf("00110")))
+                .isSameAs(Permissions.valueOf("10110"));
+        assertThat(Permissions.valueOf("01011").toString()).isEqualTo("01011");
+    }
+
+    @Test
+    void randomDrawsEachPermissionInOrder() {
+        Random random = new Random(42);
+        Random expected = new Random(42);
+        for (int i = 0; i < 100; ++i) {
+            StringBuilder value = new StringBuilder();
+            for (int j = 0; j < Permissions.BITS; ++j) {
+                value.append(expected.nextBoolean() ? '1' : '0');
+            }
+            assertThat(Permissions.random(random)).isEqualTo(Permissions.valueOf(value.toString()));
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package com.github.kjarosh.agh.pp.graph.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Kamil Jarosz
+ */
+class VertexIdTest {
+    @Test
+    void interned() {
+        VertexId id = VertexId.of("zone0:alice");
+
+        assertThat(VertexId.of("zone0:alice")).isSameAs(id);
+        assertThat(VertexId.of(ZoneId.of("zone0"), "alice")).isSameAs(id);
+        assertThat(id.owner()).isSameAs(ZoneId.of("zone0"));
+        assertThat(id.name()).isEqualTo("alice");
+        assertThat(id.toString()).isEqualTo("zone0:alice");
+    }
+
+    @Test
+    void handles() {
+        VertexId a = VertexId.of("zone0:a");
+        VertexId b = VertexId.of("zone0:b");
+
+        assertThat(a.handle()).isNotEqualTo(b.handle());
+        assertThat(VertexId.forHandle(a.handle())).isSameAs(a);
+        assertThat(VertexId.forHandle(b.handle())).isSameAs(b);
+    }
+
+    @Test
+    void lookup() {
+        VertexId known = VertexId.of("zone0:known");
+        assertThat(VertexId.lookup("zone0:known")).isSameAs(known);
+
+        VertexId unknown = VertexId.lookup("zone-unknown:unknown");
+        assertThat(unknown.handle()).isNegative();
+        assertThat(unknown).isEqualTo(VertexId.lookup("zone-unknown:unknown"));
+        assertThat(unknown).isNotEqualTo(VertexId.lookup("zone-unknown:other"));
+        assertThat(unknown).isNotEqualTo(known);
+        assertThat(unknown.owner().getId()).isEqualTo("zone-unknown");
+        assertThat(VertexId.lookup("zone-unknown:unknown")).isNotSameAs(unknown);
+    }
+
+    @Test
+    void invalid() {
+        assertThatThrownBy(() -> VertexId.of("alice"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
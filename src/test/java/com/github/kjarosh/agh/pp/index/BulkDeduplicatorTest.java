@@ -0,0 +1,68 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Kamil Jarosz
+ */
+class BulkDeduplicatorTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+
+    private final BulkDeduplicator deduplicator = new BulkDeduplicator();
+    private final List<Long> delivered = new ArrayList<>();
+
+    private static BulkMessagesDto bulk(long epoch, int lane, long sequence) {
+        return BulkMessagesDto.builder()
+                .sender(zone)
+                .epoch(epoch)
+                .lane(lane)
+                .sequence(sequence)
+                .messages(List.of())
+                .build();
+    }
+
+    private boolean deliver(BulkMessagesDto bulk) {
+        return deduplicator.deliver(bulk, () -> delivered.add(bulk.getSequence()));
+    }
+
+    @Test
+    void dropsRetries() {
+        assertThat(deliver(bulk(1, 0, 1))).isTrue();
+        assertThat(deliver(bulk(1, 0, 1))).isFalse();
+        assertThat(deliver(bulk(1, 1, 1))).isTrue();
+        assertThat(deliver(bulk(1, 0, 2))).isTrue();
+        assertThat(deliver(bulk(1, 0, 1))).isFalse();
+
+        assertThat(delivered).containsExactly(1L, 1L, 2L);
+        assertThat(deduplicator.duplicates()).isEqualTo(2);
+    }
+
+    @Test
+    void startsOverInNewEpoch() {
+        assertThat(deliver(bulk(1, 0, 5))).isTrue();
+        assertThat(deliver(bulk(2, 0, 1))).isTrue();
+        assertThat(deliver(bulk(2, 0, 1))).isFalse();
+        assertThat(deliver(bulk(1, 0, 6))).isTrue();
+        assertThat(deliver(bulk(2, 0, 2))).isTrue();
+
+        assertThat(delivered).containsExactly(5L, 1L, 6L, 2L);
+    }
+
+    @Test
+    void failedDeliveryIsRetried() {
+        assertThatThrownBy(() -> deduplicator.deliver(bulk(1, 0, 1), () -> {
+            throw new IllegalStateException();
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(deliver(bulk(1, 0, 1))).isTrue();
+        assertThat(delivered).containsExactly(1L);
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointBarrier;
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import com.github.kjarosh.agh.pp.rest.dto.BulkIndexExchangeDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class BulkIndexBuilderTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+    private static final VertexId u1 = VertexId.of(zone, "u1");
+    private static final VertexId u2 = VertexId.of(zone, "u2");
+    private static final VertexId g1 = VertexId.of(zone, "g1");
+    private static final VertexId g2 = VertexId.of(zone, "g2");
+    private static final VertexId g3 = VertexId.of(zone, "g3");
+    private static final VertexId g4 = VertexId.of(zone, "g4");
+    private static final VertexId s = VertexId.of(zone, "s");
+
+    /**
+     * Edges of a graph with many paths between vertices
+     * and a cycle g2 -> g3 -> g4 -> g2.
+     */
+    private static final List<Edge> edges = List.of(
+            new Edge(u1, g1, Permissions.valueOf("10000")),
+            new Edge(u2, g2, Permissions.valueOf("01000")),
+            new Edge(g1, g3, Permissions.valueOf("00100")),
+            new Edge(g2, g3, Permissions.valueOf("00010")),
+            new Edge(g1, g4, Permissions.valueOf("00001")),
+            new Edge(g3, g4, Permissions.valueOf("11000")),
+            new Edge(g4, g2, Permissions.valueOf("00110")),
+            new Edge(g3, s, Permissions.valueOf("10100")),
+            new Edge(g4, s, Permissions.valueOf("01001")));
+
+    /**
+     * Number of edges added with events before the index is built in bulk.
+     */
+    private static final int incrementalEdges = 3;
+
+    private final Deque<Map.Entry<VertexId, Event>> inboxEvents = new ArrayDeque<>();
+    private ZoneId previousZoneId;
+
+    @Mock
+    private GraphLoader graphLoader;
+
+    @Mock
+    private Inbox inbox;
+
+    @Mock
+    private TraceTracker traceTracker;
+
+    @Spy
+    private CheckpointBarrier barrier = new CheckpointBarrier();
+
+    @InjectMocks
+    private EventProcessor processor;
+
+    @InjectMocks
+    private BulkIndexBuilder builder;
+
+    @BeforeEach
+    void setUp(@TempDir Path dir) {
+        Path configPath = dir.resolve("config.json");
+        new Config().saveConfig(configPath);
+        ConfigLoader.reloadConfig(configPath);
+        previousZoneId = Config.ZONE_ID;
+        Config.ZONE_ID = zone;
+        MockitoAnnotations.initMocks(this);
+
+        Mockito.doAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            inboxEvents.add(Map.entry((VertexId) args[0], (Event) args[1]));
+            return null;
+        }).when(inbox).post(Mockito.any(), Mockito.any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        Config.ZONE_ID = previousZoneId;
+    }
+
+    private Graph newGraph() {
+        Graph graph = new Graph();
+        for (VertexId id : List.of(u1, u2)) {
+            graph.addVertex(new Vertex(id, Vertex.Type.USER));
+        }
+        for (VertexId id : List.of(g1, g2, g3, g4)) {
+            graph.addVertex(new Vertex(id, Vertex.Type.GROUP));
+        }
+        graph.addVertex(new Vertex(s, Vertex.Type.SPACE));
+        Mockito.when(graphLoader.getGraph()).thenReturn(graph);
+        return graph;
+    }
+
+    /**
+     * Adds an edge and processes events it causes,
+     * as {@link com.github.kjarosh.agh.pp.graph.GraphModifier} does.
+     */
+    private void addEdge(Graph graph, Edge edge) {
+        graph.addEdge(new Edge(edge.src(), edge.dst(), edge.permissions()));
+        VertexIndex from = graph.getVertex(edge.src()).index();
+        VertexIndex to = graph.getVertex(edge.dst()).index();
+        processor.process(edge.dst(), new Event(EventType.CHILD_CHANGE, "trace",
+                edge.src(), edge.src(), from.getEffectiveChildren().keySet()));
+        processor.process(edge.src(), new Event(EventType.PARENT_CHANGE, "trace",
+                edge.dst(), edge.dst(), to.getEffectiveParents().keySet()));
+        while (!inboxEvents.isEmpty()) {
+            Map.Entry<VertexId, Event> entry = inboxEvents.poll();
+            processor.process(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Graph buildIncrementally() {
+        Graph graph = newGraph();
+        edges.forEach(edge -> addEdge(graph, edge));
+        return graph;
+    }
+
+    private Graph buildInBulk() {
+        Graph graph = newGraph();
+        for (int i = 0; i < edges.size(); ++i) {
+            Edge edge = edges.get(i);
+            if (i < incrementalEdges) {
+                addEdge(graph, edge);
+            } else {
+                graph.addEdge(new Edge(edge.src(), edge.dst(), edge.permissions()));
+            }
+        }
+        assertThat(builder.build(Set.of(zone))).isGreaterThan(1);
+        assertThat(inboxEvents).isEmpty();
+        return graph;
+    }
+
+    private static Map<VertexId, Map<VertexId, Set<VertexId>>> intermediateVertices(
+            Graph graph, boolean children) {
+        Map<VertexId, Map<VertexId, Set<VertexId>>> vertices = new HashMap<>();
+        for (Vertex vertex : graph.allVertices()) {
+            VertexIndex index = vertex.index();
+            Map<VertexId, EffectiveVertex> effective = children ?
+                    index.getEffectiveChildren() : index.getEffectiveParents();
+            Map<VertexId, Set<VertexId>> intermediate = new HashMap<>();
+            effective.forEach((id, ev) -> intermediate.put(id, ev.getIntermediateVertices()));
+            vertices.put(vertex.id(), intermediate);
+        }
+        return vertices;
+    }
+
+    private static Map<VertexId, Map<VertexId, Permissions>> permissions(Graph graph) {
+        Map<VertexId, Map<VertexId, Permissions>> permissions = new HashMap<>();
+        for (Vertex vertex : graph.allVertices()) {
+            Map<VertexId, Permissions> effective = new HashMap<>();
+            vertex.index().getEffectiveChildren()
+                    .forEach((id, ev) -> effective.put(id, ev.getEffectivePermissions()));
+            permissions.put(vertex.id(), effective);
+        }
+        return permissions;
+    }
+
+    private static void assertSameIndex(Graph actual, Graph expected) {
+        assertThat(intermediateVertices(actual, true))
+                .isEqualTo(intermediateVertices(expected, true));
+        assertThat(intermediateVertices(actual, false))
+                .isEqualTo(intermediateVertices(expected, false));
+        assertThat(permissions(actual))
+                .isEqualTo(permissions(expected));
+    }
+
+    @Test
+    void buildsSameIndexAsEvents() {
+        Graph expected = buildIncrementally();
+        assertThat(expected.getVertex(s).index().getEffectiveChildren().keySet())
+                .containsExactlyInAnyOrder(u1, u2, g1, g2, g3, g4);
+        assertThat(expected.getVertex(g2).index().getEffectiveChildren().keySet())
+                .contains(g2);
+        assertThat(expected.getVertex(g4).index().getEffectiveChild(u1)
+                .map(EffectiveVertex::getIntermediateVertices))
+                .contains(Set.of(g1, g3));
+
+        Graph actual = buildInBulk();
+        assertSameIndex(actual, expected);
+    }
+
+    @Test
+    void dropsExchangesOfPreviousBuilds() {
+        Graph expected = buildIncrementally();
+
+        Map<String, List<String>> stale = Map.of(u2.toString(), List.of(u2.toString()));
+        builder.receive(BulkIndexExchangeDto.builder()
+                .round(1)
+                .children(Map.of(g1.toString(), stale))
+                .build());
+
+        Graph actual = buildInBulk();
+        assertThat(actual.getVertex(g1).index().getEffectiveChild(u2)).isEmpty();
+        assertSameIndex(actual, expected);
+    }
+}
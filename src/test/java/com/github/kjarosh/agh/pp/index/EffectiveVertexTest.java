@@ -0,0 +1,70 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.EffectiveVertex.RecalculationResult;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class EffectiveVertexTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+    private static final VertexId a = VertexId.of(zone, "a");
+    private static final VertexId b = VertexId.of(zone, "b");
+
+    @Test
+    void permissions() {
+        EffectiveVertex ev = new EffectiveVertex();
+        ev.addIntermediateVertex(a, () -> {});
+        ev.addIntermediateVertex(b, () -> {});
+
+        assertThat(ev.recalculatePermissions(a, new Permissions("10010")))
+                .isEqualTo(RecalculationResult.CLEAN);
+        assertThat(ev.recalculatePermissions(b, new Permissions("00011")))
+                .isEqualTo(RecalculationResult.CLEAN);
+        assertThat(ev.getEffectivePermissions()).isEqualTo(new Permissions("10011"));
+
+        ev.recalculatePermissions(a, new Permissions("00001"));
+        assertThat(ev.getEffectivePermissions()).isEqualTo(new Permissions("00011"));
+
+        ev.removeIntermediateVertex(b, () -> {});
+        assertThat(ev.getEffectivePermissions()).isEqualTo(new Permissions("00001"));
+    }
+
+    @Test
+    void dirty() {
+        EffectiveVertex ev = new EffectiveVertex();
+        ev.addIntermediateVertex(a, () -> {});
+
+        assertThat(ev.recalculatePermissions(a, null))
+                .isEqualTo(RecalculationResult.DIRTY);
+        assertThat(ev.isDirty()).isTrue();
+        assertThat(ev.recalculatePermissions(a, new Permissions("01000")))
+                .isEqualTo(RecalculationResult.CLEANED);
+        assertThat(ev.isDirty()).isFalse();
+        assertThat(ev.getEffectivePermissions()).isEqualTo(new Permissions("01000"));
+    }
+
+    @Test
+    void copy() {
+        EffectiveVertex ev = new EffectiveVertex();
+        ev.addIntermediateVertex(a, () -> {});
+        ev.recalculatePermissions(a, new Permissions("10000"));
+        EffectiveVertex copy = ev.copy();
+
+        ev.recalculatePermissions(a, new Permissions("01000"));
+        ev.recalculatePermissions(b, null);
+        assertThat(copy.getIntermediateVertices()).containsExactly(a);
+        assertThat(copy.getEffectivePermissions()).isEqualTo(new Permissions("10000"));
+        assertThat(copy.isDirty()).isFalse();
+
+        copy.addIntermediateVertex(b, () -> {});
+        assertThat(copy.recalculatePermissions(b, new Permissions("00001")))
+                .isEqualTo(RecalculationResult.CLEAN);
+        assertThat(copy.getEffectivePermissions()).isEqualTo(new Permissions("10001"));
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class EventProcessorTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+    private static final VertexId c1 = VertexId.of(zone, "c1");
+    private static final VertexId c2 = VertexId.of(zone, "c2");
+    private static final VertexId u1 = VertexId.of(zone, "u1");
+    private static final VertexId u2 = VertexId.of(zone, "u2");
+    private static final VertexId v = VertexId.of(zone, "v");
+    private static final VertexId p = VertexId.of(zone, "p");
+
+    @Mock
+    private GraphLoader graphLoader;
+
+    @Mock
+    private Inbox inbox;
+
+    @Mock
+    private TraceTracker traceTracker;
+
+    @InjectMocks
+    private EventProcessor processor;
+
+    @BeforeEach
+    void setUp(@TempDir Path dir) {
+        Path configPath = dir.resolve("config.json");
+        new Config().saveConfig(configPath);
+        ConfigLoader.reloadConfig(configPath);
+        MockitoAnnotations.initMocks(this);
+
+        Graph graph = new Graph();
+        for (VertexId id : List.of(c1, c2, u1, u2, v, p)) {
+            graph.addVertex(new Vertex(id, Vertex.Type.GROUP));
+        }
+        graph.addEdge(new Edge(c1, v, Permissions.valueOf("10000")));
+        graph.addEdge(new Edge(c2, v, Permissions.valueOf("01000")));
+        graph.addEdge(new Edge(v, p, Permissions.valueOf("00100")));
+        Mockito.when(graphLoader.getGraph()).thenReturn(graph);
+    }
+
+    private static Event childChange(String trace, VertexId sender, VertexId subject) {
+        return new Event(EventType.CHILD_CHANGE, trace, sender, sender, Set.of(subject));
+    }
+
+    private Map<String, Set<VertexId>> propagated() {
+        ArgumentCaptor<Event> captor = ArgumentCaptor.forClass(Event.class);
+        Mockito.verify(inbox, Mockito.atLeast(0)).post(Mockito.eq(p), captor.capture());
+        Map<String, Set<VertexId>> propagated = new HashMap<>();
+        for (Event event : captor.getAllValues()) {
+            assertThat(propagated).doesNotContainKey(event.getTrace());
+            propagated.put(event.getTrace(), event.getEffectiveVertices());
+        }
+        return propagated;
+    }
+
+    @Test
+    void keepsTracesOfMergedEvents() {
+        processor.process(v, List.of(
+                childChange("a", c1, u1),
+                childChange("b", c2, u2),
+                childChange("c", c2, u1)));
+
+        assertThat(propagated()).isEqualTo(Map.of(
+                "a", Set.of(c1, u1),
+                "b", Set.of(c2, u2)));
+        assertThat(graphLoader.getGraph().getVertex(v).index()
+                .getEffectiveChild(u1)
+                .map(EffectiveVertex::getIntermediateVertices))
+                .contains(Set.of(c1, c2));
+    }
+
+    @Test
+    void tracksEachTraceOfMergedEvents() {
+        processor.process(v, List.of(
+                childChange("a", c1, u1),
+                childChange("b", c2, u2),
+                childChange("c", c2, u1)));
+
+        InOrder inOrder = Mockito.inOrder(traceTracker);
+        inOrder.verify(traceTracker).posted("a", 1);
+        inOrder.verify(traceTracker).posted("b", 1);
+        inOrder.verify(traceTracker).completed("a");
+        inOrder.verify(traceTracker).completed("b");
+        inOrder.verify(traceTracker).completed("c");
+        Mockito.verify(traceTracker, Mockito.never()).posted(Mockito.eq("c"), Mockito.anyInt());
+        Mockito.verifyNoMoreInteractions(traceTracker);
+    }
+}
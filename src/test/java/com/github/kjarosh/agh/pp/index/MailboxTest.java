@@ -0,0 +1,56 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.index.events.Event;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class MailboxTest {
+    @Test
+    void scheduling() {
+        Mailbox mailbox = new Mailbox();
+        Event e1 = new Event();
+        Event e2 = new Event();
+
+        assertThat(mailbox.post(e1)).isEqualTo(0);
+        assertThat(mailbox.post(e2)).isEqualTo(1);
+
+        assertThat(mailbox.receive()).isSameAs(e1);
+        assertThat(mailbox.release()).isTrue();
+        assertThat(mailbox.receive()).isSameAs(e2);
+        assertThat(mailbox.release()).isFalse();
+    }
+
+    @Test
+    void batch() {
+        Mailbox mailbox = new Mailbox();
+        Event e1 = new Event();
+        Event e2 = new Event();
+        Event e3 = new Event();
+
+        assertThat(mailbox.post(e1)).isEqualTo(0);
+        assertThat(mailbox.post(e2)).isEqualTo(1);
+        assertThat(mailbox.post(e3)).isEqualTo(2);
+
+        assertThat(mailbox.receiveBatch(2)).containsExactly(e1, e2);
+        assertThat(mailbox.release(2)).isTrue();
+        assertThat(mailbox.receiveBatch(2)).containsExactly(e3);
+        assertThat(mailbox.release(1)).isFalse();
+        assertThat(mailbox.isRetired()).isTrue();
+    }
+
+    @Test
+    void retirement() {
+        Mailbox mailbox = new Mailbox();
+
+        assertThat(mailbox.post(new Event())).isEqualTo(0);
+        mailbox.receive();
+        assertThat(mailbox.release()).isFalse();
+
+        assertThat(mailbox.isRetired()).isTrue();
+        assertThat(mailbox.post(new Event())).isEqualTo(Mailbox.RETIRED);
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.rest.dto.IndexStorageStatsDto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class MappedIndexStorageTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void pagesOutAndIn() {
+        MappedIndexStorage storage = new MappedIndexStorage(directory, 2);
+        VertexId intermediate = VertexId.of(zone, "intermediate");
+        List<VertexIndex> indexes = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            VertexIndex index = new VertexIndex(storage);
+            index.getOrAddEffectiveChild(VertexId.of(zone, "child" + i), () -> {})
+                    .recalculatePermissions(intermediate, Permissions.valueOf("10100"));
+            index.getOrAddEffectiveParent(VertexId.of(zone, "parent" + i), () -> {});
+            indexes.add(index);
+        }
+
+        IndexStorageStatsDto stats = storage.stats();
+        assertThat(stats.getResident()).isLessThanOrEqualTo(3);
+        assertThat(stats.getPagedOut()).isGreaterThanOrEqualTo(7);
+
+        for (int i = 0; i < 10; ++i) {
+            VertexIndex index = indexes.get(i);
+            assertThat(index.getEffectiveChild(VertexId.of(zone, "child" + i)))
+                    .hasValueSatisfying(ev -> {
+                        assertThat(ev.getEffectivePermissions()).isEqualTo(Permissions.valueOf("10100"));
+                        assertThat(ev.getIntermediateVertices()).containsExactly(intermediate);
+                    });
+            assertThat(index.getEffectiveParents()).containsOnlyKeys(VertexId.of(zone, "parent" + i));
+        }
+
+        stats = storage.stats();
+        assertThat(stats.getPageIns()).isGreaterThanOrEqualTo(7);
+        assertThat(stats.getMisses()).isGreaterThan(0);
+        assertThat(stats.getHits()).isGreaterThan(0);
+    }
+
+    @Test
+    void pinnedIndexIsNotEvicted() {
+        MappedIndexStorage storage = new MappedIndexStorage(directory, 1);
+        VertexIndex pinned = new VertexIndex(storage);
+        pinned.pin();
+        pinned.getOrAddEffectiveChild(VertexId.of(zone, "child"), () -> {});
+        VertexIndex.Entries entries = pinned.entries;
+
+        for (int i = 0; i < 5; ++i) {
+            new VertexIndex(storage).getOrAddEffectiveChild(VertexId.of(zone, "other" + i), () -> {});
+        }
+
+        assertThat(pinned.entries).isSameAs(entries);
+        pinned.unpin();
+    }
+
+    @Test
+    void emptySegmentsAreDeleted() {
+        MappedIndexStorage storage = new MappedIndexStorage(directory, 1);
+        VertexIndex a = new VertexIndex(storage);
+        a.getOrAddEffectiveChild(VertexId.of(zone, "child"), () -> {});
+        VertexIndex b = new VertexIndex(storage);
+        b.getEffectiveChildren();
+        b.getEffectiveChildren();
+        a.getEffectiveChildren();
+
+        assertThat(storage.stats().getPageBytes()).isZero();
+    }
+
+    @Test
+    void freedPagesAreReused() {
+        MappedIndexStorage storage = new MappedIndexStorage(directory, 1, 4096);
+        VertexIndex a = new VertexIndex(storage);
+        a.getOrAddEffectiveChild(VertexId.of(zone, "a"), () -> {});
+        VertexIndex b = new VertexIndex(storage);
+        b.getOrAddEffectiveChild(VertexId.of(zone, "b"), () -> {});
+
+        // each round leaves a page which is never freed
+        List<VertexIndex> paged = new ArrayList<>();
+        for (int round = 0; round < 100; ++round) {
+            VertexIndex index = new VertexIndex(storage);
+            index.getOrAddEffectiveChild(VertexId.of(zone, "paged" + round), () -> {});
+            paged.add(index);
+            for (int i = 0; i < 100; ++i) {
+                a.getEffectiveChildren();
+                b.getEffectiveChildren();
+            }
+        }
+
+        IndexStorageStatsDto stats = storage.stats();
+        assertThat(stats.getPageOuts()).isGreaterThan(19_000);
+        assertThat(stats.getSegments()).isEqualTo(1);
+        for (int round = 0; round < 100; ++round) {
+            assertThat(paged.get(round).getEffectiveChildren())
+                    .containsOnlyKeys(VertexId.of(zone, "paged" + round));
+        }
+    }
+
+    @Test
+    void concurrentPaging() throws Exception {
+        MappedIndexStorage storage = new MappedIndexStorage(directory, 4);
+        int count = 64;
+        List<VertexIndex> indexes = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            VertexIndex index = new VertexIndex(storage);
+            index.getOrAddEffectiveChild(VertexId.of(zone, "child" + i), () -> {});
+            indexes.add(index);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < 4; ++t) {
+            int seed = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 2000; ++j) {
+                        int i = (j * 31 + seed * 7) % count;
+                        assertThat(indexes.get(i).getEffectiveChildren())
+                                .containsOnlyKeys(VertexId.of(zone, "child" + i));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(failures).isEmpty();
+        assertThat(storage.stats().getPageIns()).isGreaterThan(0);
+    }
+
+    @Test
+    void snapshotDoesNotPageIn() {
+        MappedIndexStorage storage = new MappedIndexStorage(directory, 1);
+        VertexId intermediate = VertexId.of(zone, "intermediate");
+        VertexIndex pagedOut = new VertexIndex(storage);
+        pagedOut.getOrAddEffectiveChild(VertexId.of(zone, "child"), () -> {})
+                .recalculatePermissions(intermediate, Permissions.valueOf("01000"));
+        pagedOut.getOrAddEffectiveParent(VertexId.of(zone, "parent"), () -> {});
+        VertexIndex resident = new VertexIndex(storage);
+        resident.getOrAddEffectiveChild(VertexId.of(zone, "other"), () -> {});
+        assertThat(pagedOut.entries).isNull();
+
+        VertexIndex.Snapshot snapshot = pagedOut.snapshot();
+        VertexIndex.Snapshot residentSnapshot = resident.snapshot();
+        IndexStorageStatsDto stats = storage.stats();
+        assertThat(pagedOut.entries).isNull();
+        assertThat(stats.getPageIns()).isEqualTo(0);
+        assertThat(stats.getResident()).isEqualTo(1);
+
+        resident.getOrAddEffectiveChild(VertexId.of(zone, "added"), () -> {});
+        assertThat(residentSnapshot.getEffectiveChildren()).containsOnlyKeys(VertexId.of(zone, "other"));
+        assertThat(snapshot.getEffectiveParents()).containsOnlyKeys(VertexId.of(zone, "parent"));
+        assertThat(snapshot.getEffectiveChildren().get(VertexId.of(zone, "child")))
+                .satisfies(ev -> {
+                    assertThat(ev.getEffectivePermissions()).isEqualTo(Permissions.valueOf("01000"));
+                    assertThat(ev.getIntermediateVertices()).containsExactly(intermediate);
+                });
+    }
+}
@@ -0,0 +1,258 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.config.ZoneConfig;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesCodec;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesDto;
+import com.github.kjarosh.agh.pp.rest.dto.MessageDto;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class OutboxTest {
+    private static final AtomicInteger zones = new AtomicInteger();
+
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private HttpServer server;
+    private ZoneId previousZoneId;
+    private ZoneId zone;
+    private VertexId v;
+
+    /**
+     * Whether a request, by its number starting from 0, fails.
+     */
+    private IntPredicate failing = i -> false;
+    private int grantedCredits = 1000;
+    private CountDownLatch firstResponse = new CountDownLatch(0);
+
+    private static class Request {
+        private final BulkMessagesDto bulk;
+        private final boolean success;
+
+        private Request(BulkMessagesDto bulk, boolean success) {
+            this.bulk = bulk;
+            this.success = success;
+        }
+
+        private List<String> traces() {
+            return bulk.getMessages()
+                    .stream()
+                    .map(MessageDto::getEvent)
+                    .map(Event::getTrace)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @BeforeEach
+    void setUp(@TempDir Path dir) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/events/bulk", exchange -> {
+            BulkMessagesDto bulk = BulkMessagesCodec.decode(exchange.getRequestBody());
+            int i = requestCount.getAndIncrement();
+            if (i == 0) {
+                try {
+                    firstResponse.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            boolean success = !failing.test(i);
+            requests.add(new Request(bulk, success));
+            if (success) {
+                respond(exchange, 200, "{\"credits\":" + grantedCredits + "}");
+            } else {
+                respond(exchange, 500, "");
+            }
+        });
+        server.start();
+
+        // outboxes are cached by the zone, so that each test uses a new one
+        zone = ZoneId.of("outbox-test-" + zones.incrementAndGet());
+        v = VertexId.of(zone, "v");
+
+        Config config = new Config();
+        config.setZones(Map.of(zone.getId(), new ZoneConfig("localhost:" + server.getAddress().getPort())));
+        config.setSpillPath(dir.resolve("spill").toString());
+        config.setOutboxLingerMillis(50);
+        Path configPath = dir.resolve("config.json");
+        config.saveConfig(configPath);
+        ConfigLoader.reloadConfig(configPath);
+        // bulks are sequenced only when they have a sender
+        previousZoneId = Config.ZONE_ID;
+        Config.ZONE_ID = ZoneId.of("sender");
+    }
+
+    @AfterEach
+    void tearDown() {
+        Config.ZONE_ID = previousZoneId;
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static Event event(int trace) {
+        VertexId sender = VertexId.of(ZoneId.of("sender"), "s");
+        return new Event(EventType.CHILD_CHANGE, Integer.toString(trace), sender, sender, Set.of(sender));
+    }
+
+    private static List<String> traces(int from, int to) {
+        return IntStream.range(from, to)
+                .mapToObj(Integer::toString)
+                .collect(Collectors.toList());
+    }
+
+    private void post(Outbox outbox, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            outbox.postEvent(v, event(i));
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private List<Request> successful() {
+        return requests.stream()
+                .filter(r -> r.success)
+                .collect(Collectors.toList());
+    }
+
+    private List<String> delivered() {
+        List<String> traces = new ArrayList<>();
+        successful().forEach(r -> traces.addAll(r.traces()));
+        return traces;
+    }
+
+    @Test
+    void keepsOrderOfVertexEvents() throws InterruptedException {
+        Outbox outbox = Outbox.forZone(zone);
+        grantedCredits = 7;
+        failing = i -> i % 3 == 2;
+
+        post(outbox, 0, 1);
+        await(outbox::isEmpty);
+        post(outbox, 1, 200);
+        await(outbox::isEmpty);
+
+        assertThat(requests.size()).isGreaterThan(10);
+        assertThat(delivered()).isEqualTo(traces(0, 200));
+    }
+
+    @Test
+    void retriesWithSameSequence() throws InterruptedException {
+        Outbox outbox = Outbox.forZone(zone);
+        failing = i -> i == 0;
+
+        post(outbox, 0, 3);
+        await(outbox::isEmpty);
+
+        assertThat(requests).hasSize(2);
+        BulkMessagesDto failed = requests.get(0).bulk;
+        BulkMessagesDto retried = requests.get(1).bulk;
+        assertThat(requests.get(0).success).isFalse();
+        assertThat(requests.get(1).success).isTrue();
+        assertThat(failed.getSender()).isEqualTo(ZoneId.of("sender"));
+        assertThat(retried.getSequence()).isEqualTo(failed.getSequence());
+        assertThat(retried.getEpoch()).isEqualTo(failed.getEpoch());
+        assertThat(retried.getLane()).isEqualTo(failed.getLane());
+        assertThat(retried.getMessages()).isEqualTo(failed.getMessages());
+    }
+
+    @Test
+    void requeuesFailedEventsAheadOfNewer() throws InterruptedException {
+        Outbox outbox = Outbox.forZone(zone);
+        failing = i -> i == 0;
+        firstResponse = new CountDownLatch(1);
+
+        post(outbox, 0, 3);
+        await(() -> requestCount.get() == 1);
+        // posted while the first bulk is in flight and about to fail
+        post(outbox, 3, 6);
+        firstResponse.countDown();
+        await(outbox::isEmpty);
+
+        assertThat(requests.get(0).traces()).isEqualTo(traces(0, 3));
+        assertThat(requests.get(1).traces()).isEqualTo(traces(0, 3));
+        assertThat(requests.get(1).bulk.getSequence()).isEqualTo(requests.get(0).bulk.getSequence());
+        assertThat(delivered()).isEqualTo(traces(0, 6));
+    }
+
+    @Test
+    void limitsBulksByCredits() throws InterruptedException {
+        Outbox outbox = Outbox.forZone(zone);
+        grantedCredits = 30;
+
+        post(outbox, 0, 1);
+        await(outbox::isEmpty);
+        post(outbox, 1, 200);
+        await(outbox::isEmpty);
+
+        List<Request> successful = successful();
+        assertThat(successful.size()).isGreaterThan(6);
+        successful.subList(1, successful.size())
+                .forEach(r -> assertThat(r.bulk.getMessages().size()).isLessThanOrEqualTo(30));
+        assertThat(delivered()).isEqualTo(traces(0, 200));
+    }
+
+    @Test
+    void stopsFlushingWithoutCredits() throws InterruptedException {
+        Outbox outbox = Outbox.forZone(zone);
+        grantedCredits = 0;
+
+        post(outbox, 0, 1);
+        await(outbox::isEmpty);
+        assertThat(outbox.stats().getCredits()).isEqualTo(0);
+
+        // without credits, the lane only probes the zone with small bulks after a delay
+        post(outbox, 1, 251);
+        await(outbox::isEmpty);
+
+        List<Request> successful = successful();
+        assertThat(successful.size()).isGreaterThanOrEqualTo(4);
+        successful.subList(1, successful.size())
+                .forEach(r -> assertThat(r.bulk.getMessages().size()).isLessThanOrEqualTo(100));
+        assertThat(delivered()).isEqualTo(traces(0, 251));
+    }
+}
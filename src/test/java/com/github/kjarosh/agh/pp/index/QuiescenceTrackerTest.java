@@ -0,0 +1,45 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.rest.dto.QuiescenceStateDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class QuiescenceTrackerTest {
+    private static final ZoneId a = ZoneId.of("a");
+    private static final ZoneId b = ZoneId.of("b");
+
+    private static QuiescenceStateDto state(Map<String, Long> sent, Map<String, Long> received) {
+        return QuiescenceStateDto.builder()
+                .idle(true)
+                .sent(sent)
+                .received(received)
+                .build();
+    }
+
+    @Test
+    void balanced() {
+        assertThat(QuiescenceTracker.balanced(Map.of(
+                a, state(Map.of("b", 5L), Map.of("b", 2L)),
+                b, state(Map.of("a", 2L), Map.of("a", 5L))))).isTrue();
+        assertThat(QuiescenceTracker.balanced(Map.of(
+                a, state(Map.of(), Map.of()),
+                b, state(Map.of(), Map.of())))).isTrue();
+    }
+
+    @Test
+    void eventsInFlight() {
+        assertThat(QuiescenceTracker.balanced(Map.of(
+                a, state(Map.of("b", 5L), Map.of()),
+                b, state(Map.of(), Map.of("a", 4L))))).isFalse();
+        assertThat(QuiescenceTracker.balanced(Map.of(
+                a, state(Map.of("b", 1L), Map.of()),
+                b, state(Map.of(), Map.of())))).isFalse();
+    }
+}
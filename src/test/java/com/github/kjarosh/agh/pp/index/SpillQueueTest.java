@@ -0,0 +1,82 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class SpillQueueTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+    private static final VertexId a = VertexId.of(zone, "a");
+    private static final VertexId b = VertexId.of(zone, "b");
+
+    @TempDir
+    Path directory;
+
+    private static Message message(int i) {
+        return new Message(a, new Event(EventType.CHILD_CHANGE, "trace" + i, b, b, Set.of(a)));
+    }
+
+    @Test
+    void preservesOrder() throws IOException {
+        SpillQueue queue = new SpillQueue(directory, "test", 5, 4);
+        for (int i = 0; i < 20; ++i) {
+            queue.addLast(message(i));
+        }
+
+        assertThat(queue.size()).isEqualTo(20);
+        assertThat(queue.spilled()).isEqualTo(15);
+        assertThat(Files.list(directory).count()).isEqualTo(4);
+
+        List<String> traces = new ArrayList<>();
+        queue.forEach((id, event) -> traces.add(event.getTrace()));
+        assertThat(traces).hasSize(20);
+
+        List<Message> polled = new ArrayList<>(queue.poll(7));
+        queue.addFirst(polled.subList(5, 7));
+        polled = new ArrayList<>(polled.subList(0, 5));
+        Message message;
+        while ((message = queue.poll()) != null) {
+            polled.add(message);
+            if (polled.size() == 10) {
+                queue.addLast(message(20));
+            }
+        }
+
+        assertThat(polled).hasSize(21);
+        for (int i = 0; i < polled.size(); ++i) {
+            assertThat(polled.get(i).getEvent().getTrace()).isEqualTo("trace" + i);
+            assertThat(polled.get(i).getId()).isSameAs(a);
+        }
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.spilledTotal()).isEqualTo(16);
+        assertThat(Files.list(directory).count()).isZero();
+    }
+
+    @Test
+    void spillsEverythingWithoutMemory() {
+        SpillQueue queue = new SpillQueue(directory, "test", 0, 10);
+        queue.addLast(message(0));
+        queue.addLast(message(1));
+
+        assertThat(queue.spilled()).isEqualTo(2);
+        assertThat(queue.poll().getEvent().getTrace()).isEqualTo("trace0");
+        assertThat(queue.spilled()).isZero();
+        assertThat(queue.poll().getEvent().getTrace()).isEqualTo("trace1");
+        assertThat(queue.poll()).isNull();
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.kjarosh.agh.pp.index;
+
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.config.ZoneConfig;
+import com.github.kjarosh.agh.pp.graph.GraphLoader;
+import com.github.kjarosh.agh.pp.graph.model.Edge;
+import com.github.kjarosh.agh.pp.graph.model.Graph;
+import com.github.kjarosh.agh.pp.graph.model.Permissions;
+import com.github.kjarosh.agh.pp.graph.model.Vertex;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.rest.dto.TraceStateDto;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Kamil Jarosz
+ */
+class TraceTrackerTest {
+    private static final ZoneId z1 = ZoneId.of("z1");
+    private static final ZoneId z2 = ZoneId.of("z2");
+    private static final ZoneId z3 = ZoneId.of("z3");
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private ZoneId previousZoneId = Config.ZONE_ID;
+
+    @Spy
+    private GraphLoader graphLoader = new GraphLoader();
+
+    @InjectMocks
+    private TraceTracker traceTracker;
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(server -> server.stop(0));
+        Config.ZONE_ID = previousZoneId;
+    }
+
+    /**
+     * Starts a zone which responds with the given state of every trace.
+     */
+    private String startZone(String state) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/traces/state", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] bytes = ("{\"t\":" + state + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    private static TraceStateDto state(long posted, long completed, long startMillis, long endMillis) {
+        return TraceStateDto.builder()
+                .posted(posted)
+                .completed(completed)
+                .startMillis(startMillis)
+                .endMillis(endMillis)
+                .build();
+    }
+
+    @Test
+    void combine() {
+        TraceStateDto state = state(3, 1, 100, 120)
+                .combine(state(0, 2, Long.MAX_VALUE, 150));
+        assertThat(state.getPosted()).isEqualTo(3);
+        assertThat(state.getCompleted()).isEqualTo(3);
+        assertThat(state.getDurationMillis()).isEqualTo(50);
+        assertThat(state.isComplete()).isFalse();
+    }
+
+    @Test
+    void balanced() {
+        assertThat(TraceTracker.balanced(state(3, 3, 100, 150), state(3, 3, 100, 140))).isTrue();
+    }
+
+    @Test
+    void eventsInFlight() {
+        assertThat(TraceTracker.balanced(state(3, 2, 100, 150), state(3, 2, 100, 150))).isFalse();
+    }
+
+    @Test
+    void eventsSincePreviousCollection() {
+        assertThat(TraceTracker.balanced(state(5, 5, 100, 150), state(3, 3, 100, 140))).isFalse();
+    }
+
+    @Test
+    void collectsFromZonesNotAdjacent(@TempDir Path dir) throws Exception {
+        // z1 -> z2 -> z3, z1 has no edges to z3
+        Map<String, ZoneConfig> zones = new HashMap<>();
+        zones.put(z2.getId(), new ZoneConfig(startZone(
+                "{\"posted\":1,\"completed\":1,\"startMillis\":100,\"endMillis\":120}")));
+        zones.put(z3.getId(), new ZoneConfig(startZone(
+                "{\"posted\":0,\"completed\":1,\"startMillis\":9223372036854775807,\"endMillis\":150}")));
+        Config config = new Config();
+        config.setZones(zones);
+        Path configPath = dir.resolve("config.json");
+        config.saveConfig(configPath);
+        ConfigLoader.reloadConfig(configPath);
+
+        Config.ZONE_ID = z1;
+        VertexId a = VertexId.of(z1, "a");
+        Graph graph = new Graph();
+        graph.addVertex(new Vertex(a, Vertex.Type.GROUP));
+        graph.addEdge(new Edge(a, VertexId.of(z2, "b"), Permissions.valueOf("10000")));
+        MockitoAnnotations.initMocks(this);
+        graphLoader.setGraph(graph);
+        traceTracker.init();
+        traceTracker.posted("t", 1);
+
+        assertThat(traceTracker.await("t", Set.of(z1, z2), 50).isComplete()).isFalse();
+
+        TraceStateDto state = traceTracker.await("t", graphLoader.allZones(), 10_000);
+        assertThat(state.isComplete()).isTrue();
+        assertThat(state.getPosted()).isEqualTo(2);
+        assertThat(state.getCompleted()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.kjarosh.agh.pp.rest.client;
+
+import com.github.kjarosh.agh.pp.config.Config;
+import com.github.kjarosh.agh.pp.config.ConfigLoader;
+import com.github.kjarosh.agh.pp.config.ZoneConfig;
+import com.github.kjarosh.agh.pp.graph.model.EdgeId;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesCodec;
+import com.github.kjarosh.agh.pp.rest.dto.BulkMessagesDto;
+import com.github.kjarosh.agh.pp.rest.dto.MessageDto;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Kamil Jarosz
+ */
+class ZoneClientTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+    private static final VertexId a = VertexId.of(zone, "a");
+    private static final VertexId b = VertexId.of(zone, "b");
+
+    private final List<String> contentTypes = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private ZoneClient client;
+
+    @BeforeEach
+    void setUp(@TempDir Path dir) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/events/bulk", exchange -> {
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            contentTypes.add(contentType);
+            exchange.getRequestBody().readAllBytes();
+            if (BulkMessagesCodec.MEDIA_TYPE.toString().equals(contentType)) {
+                respond(exchange, 415, "");
+            } else {
+                respond(exchange, 200, "{\"credits\":5}");
+            }
+        });
+        server.createContext("/is_adjacent", exchange -> respond(exchange, 200, "true"));
+        server.start();
+
+        Config config = new Config();
+        config.setZones(Map.of(zone.getId(), new ZoneConfig("localhost:" + server.getAddress().getPort())));
+        Path configPath = dir.resolve("config.json");
+        config.saveConfig(configPath);
+        ConfigLoader.reloadConfig(configPath);
+        client = new ZoneClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    @Test
+    void fallsBackToJson() {
+        BulkMessagesDto bulk = BulkMessagesDto.builder()
+                .messages(List.of(MessageDto.builder()
+                        .vertexName(a.name())
+                        .event(new Event(EventType.CHILD_CHANGE, "trace", b, b, Set.of(a)))
+                        .build()))
+                .build();
+
+        assertThat(client.postEvents(zone, bulk).getCredits()).isEqualTo(5);
+        assertThat(client.postEventsAsync(zone, bulk).join().getCredits()).isEqualTo(5);
+        assertThat(contentTypes).containsExactly(
+                BulkMessagesCodec.MEDIA_TYPE.toString(),
+                "application/json",
+                "application/json");
+    }
+
+    @Test
+    void parsesResponses() {
+        assertThat(client.isAdjacent(zone, EdgeId.of(a, b))).isTrue();
+        assertThat(client.healthcheck(zone)).isFalse();
+    }
+
+    @Test
+    void failsWithStatus() {
+        assertThatThrownBy(() -> client.naive().reaches(zone, EdgeId.of(a, b)))
+                .isInstanceOf(ZoneClientException.class)
+                .satisfies(e -> assertThat(((ZoneClientException) e).getStatus()).isEqualTo(404));
+    }
+}
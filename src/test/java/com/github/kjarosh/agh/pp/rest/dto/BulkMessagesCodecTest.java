@@ -0,0 +1,162 @@
+package com.github.kjarosh.agh.pp.rest.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kjarosh.agh.pp.checkpoint.CheckpointOutput;
+import com.github.kjarosh.agh.pp.graph.model.VertexId;
+import com.github.kjarosh.agh.pp.graph.model.ZoneId;
+import com.github.kjarosh.agh.pp.index.events.Event;
+import com.github.kjarosh.agh.pp.index.events.EventType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Kamil Jarosz
+ */
+class BulkMessagesCodecTest {
+    private static final ZoneId zone = ZoneId.of("zone");
+
+    private static BulkMessagesDto bulk() {
+        List<MessageDto> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            VertexId sender = VertexId.of(zone, "sender" + i % 10);
+            Event event = new Event(
+                    i % 2 == 0 ? EventType.CHILD_CHANGE : EventType.PARENT_REMOVE,
+                    i % 3 == 0 ? null : "trace" + i % 5,
+                    sender,
+                    VertexId.of(zone, "original"),
+                    Set.of(sender, VertexId.of(zone, "subject" + i % 20)));
+            messages.add(new MessageDto("recipient" + i % 7, event));
+        }
+        return BulkMessagesDto.builder()
+                .sender(zone)
+                .epoch(1234)
+                .lane(3)
+                .sequence(42)
+                .messages(messages)
+                .build();
+    }
+
+    private static byte[] encode(BulkMessagesDto bulk, boolean deflate) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BulkMessagesCodec.encode(bulk, os, deflate);
+        return os.toByteArray();
+    }
+
+    private static void assertSameMessages(BulkMessagesDto actual, BulkMessagesDto expected) {
+        assertThat(actual.getSender()).isEqualTo(expected.getSender());
+        assertThat(actual.getEpoch()).isEqualTo(expected.getEpoch());
+        assertThat(actual.getLane()).isEqualTo(expected.getLane());
+        assertThat(actual.getSequence()).isEqualTo(expected.getSequence());
+        assertThat(actual.getMessages()).hasSameSizeAs(expected.getMessages());
+        for (int i = 0; i < expected.getMessages().size(); ++i) {
+            MessageDto a = actual.getMessages().get(i);
+            MessageDto e = expected.getMessages().get(i);
+            assertThat(a.getVertexName()).isEqualTo(e.getVertexName());
+            assertThat(a.getEvent().getType()).isEqualTo(e.getEvent().getType());
+            assertThat(a.getEvent().getTrace()).isEqualTo(e.getEvent().getTrace());
+            assertThat(a.getEvent().getSender()).isEqualTo(e.getEvent().getSender());
+            assertThat(a.getEvent().getOriginalSender()).isEqualTo(e.getEvent().getOriginalSender());
+            assertThat(a.getEvent().getEffectiveVertices()).isEqualTo(e.getEvent().getEffectiveVertices());
+        }
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        BulkMessagesDto bulk = bulk();
+        for (boolean deflate : new boolean[]{false, true}) {
+            byte[] bytes = encode(bulk, deflate);
+            assertSameMessages(BulkMessagesCodec.decode(new ByteArrayInputStream(bytes)), bulk);
+        }
+    }
+
+    @Test
+    void unsequenced() throws IOException {
+        BulkMessagesDto bulk = bulk();
+        bulk.setSender(null);
+        bulk.setEpoch(0);
+        bulk.setLane(0);
+        bulk.setSequence(0);
+        assertSameMessages(BulkMessagesCodec.decode(new ByteArrayInputStream(encode(bulk, false))), bulk);
+    }
+
+    @Test
+    void smallerThanJson() throws IOException {
+        BulkMessagesDto bulk = bulk();
+        int json = new ObjectMapper().writeValueAsBytes(bulk).length;
+        int binary = encode(bulk, false).length;
+        int deflated = encode(bulk, true).length;
+
+        assertThat(binary).isLessThan(json / 4);
+        assertThat(deflated).isLessThan(binary);
+    }
+
+    @Test
+    void invalidMagic() {
+        assertThatThrownBy(() -> BulkMessagesCodec.decode(new ByteArrayInputStream("{\"messages\":[]}".getBytes())))
+                .isInstanceOf(IOException.class);
+    }
+
+    /**
+     * Writes a header of an uncompressed bulk without a sender,
+     * followed by the given body.
+     */
+    private static byte[] malformed(BodyWriter body) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(new byte[]{'A', 'G', 'H', 'E', 2, 0});
+        CheckpointOutput out = new CheckpointOutput(os);
+        out.writeNullableString(null);
+        body.write(out);
+        out.flush();
+        return os.toByteArray();
+    }
+
+    private interface BodyWriter {
+        void write(CheckpointOutput out) throws IOException;
+    }
+
+    @Test
+    void invalidCounts() throws IOException {
+        byte[] negative = malformed(out -> out.writeVarInt(-1));
+        assertThatThrownBy(() -> BulkMessagesCodec.decode(new ByteArrayInputStream(negative)))
+                .isInstanceOf(IOException.class);
+
+        byte[] huge = malformed(out -> out.writeVarInt(Integer.MAX_VALUE));
+        assertThatThrownBy(() -> BulkMessagesCodec.decode(new ByteArrayInputStream(huge)))
+                .isInstanceOf(IOException.class);
+
+        byte[] hugeVertices = malformed(out -> {
+            out.writeVarInt(1);
+            out.writeSharedString("recipient");
+            out.writeVarInt(EventType.CHILD_CHANGE.ordinal());
+            out.writeSharedString("trace");
+            out.writeVertexId(VertexId.of(zone, "sender"));
+            out.writeVertexId(VertexId.of(zone, "sender"));
+            out.writeVarInt(Integer.MAX_VALUE);
+        });
+        assertThatThrownBy(() -> BulkMessagesCodec.decode(new ByteArrayInputStream(hugeVertices)))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void invalidEventType() throws IOException {
+        for (int type : new int[]{-1, EventType.values().length}) {
+            byte[] bytes = malformed(out -> {
+                out.writeVarInt(1);
+                out.writeSharedString("recipient");
+                out.writeVarInt(type);
+            });
+            assertThatThrownBy(() -> BulkMessagesCodec.decode(new ByteArrayInputStream(bytes)))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("event type");
+        }
+    }
+}
@@ -13,7 +13,7 @@ import java.util.stream.Stream;
 public class GraphQueryClientArgumentsProvider implements ArgumentsProvider {
     @Override
     public Stream<? extends Arguments> provideArguments(ExtensionContext context) {
-        ZoneClient zc = new ZoneClient();
+        ZoneClient zc = ZoneClient.getInstance();
         return Stream.of(
                 Arguments.of(zc.naive()),
                 Arguments.of(zc.indexed())
@@ -31,8 +31,8 @@ import java.nio.file.Path;
 @Execution(ExecutionMode.CONCURRENT)
 public abstract class IntegrationTestBase {
     private static final Logger logger = LoggerFactory.getLogger(IntegrationTestBase.class);
-    public ZoneId zone = new ZoneId(System.getProperty("test.zoneId", ""));
-    public ZoneClient client = new ZoneClient();
+    public ZoneId zone = ZoneId.of(System.getProperty("test.zoneId", ""));
+    public ZoneClient client = ZoneClient.getInstance();
 
     @BeforeAll
     void setUp() {
@@ -51,7 +51,7 @@ public abstract class IntegrationTestBase {
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
-            zone = new ZoneId("zone0");
+            zone = ZoneId.of("zone0");
             logger.info("Configuration set up");
         }
 
@@ -84,10 +84,10 @@ public abstract class IntegrationTestBase {
     protected abstract String getGraphPath();
 
     public VertexId vid(String bob) {
-        return new VertexId(bob);
+        return VertexId.of(bob);
     }
 
     public EdgeId eid(String from, String to) {
-        return new EdgeId(new VertexId(from), new VertexId(to));
+        return new EdgeId(VertexId.of(from), VertexId.of(to));
     }
 }